@@ -0,0 +1,60 @@
+package info.tomfi.shabbat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the offline {@link ShabbatCalculator}, calculating the times and a full response of a
+ * location week, and a single sunset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+  private ShabbatCalculator calculator;
+  private APIRequest request;
+  private APIResponse.Location location;
+  private long epochDay;
+
+  @Setup
+  public void setup() throws IOException {
+    calculator = new ShabbatCalculator();
+    location =
+        new ObjectMapper()
+            .readValue(Fixtures.load("real_response"), APIResponse.class)
+            .location;
+    var date = LocalDate.of(2021, 1, 1);
+    request = APIRequest.builder().forGeoId(location.geonameid).withDate(date).build();
+    epochDay = date.toEpochDay();
+  }
+
+  @Benchmark
+  public ShabbatTimes calculateTimes() {
+    return calculator.calculateTimes(request, location);
+  }
+
+  @Benchmark
+  public APIResponse calculateResponse() {
+    return calculator.calculate(request, location);
+  }
+
+  @Benchmark
+  public long sunset() {
+    return SolarCalculator.sunset(location.latitude, location.longitude, epochDay);
+  }
+}
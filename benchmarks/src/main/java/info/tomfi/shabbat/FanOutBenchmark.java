@@ -0,0 +1,85 @@
+package info.tomfi.shabbat;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks sending a burst of concurrent requests to a stub client with a 20ms latency, with the
+ * futures of {@link ShabbatAPI#sendAsync(APIRequest)} and with the blocking fan-out of {@link
+ * ShabbatAPI#sendAll(java.util.Collection, ExecutorService)}. The fan-out runs on virtual threads
+ * when the runtime supports them, and on a cached thread pool otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark {
+  @Param({"1000", "10000"})
+  private int concurrency;
+
+  private ShabbatAPI api;
+  private List<APIRequest> requests;
+  private ExecutorService executor;
+
+  @Setup
+  public void setup() {
+    api = new ShabbatAPI(new StubHttpClient(Fixtures.load("real_response"), Duration.ofMillis(20)));
+    requests =
+        IntStream.rangeClosed(1, concurrency)
+            .mapToObj(id -> APIRequest.builder().forGeoId(id).build())
+            .collect(Collectors.toList());
+    executor = virtualThreadExecutor();
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public List<APIResponse> async() {
+    var futures = new ArrayList<CompletableFuture<APIResponse>>(requests.size());
+    for (var request : requests) {
+      futures.add(api.sendAsync(request));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public List<APIResponse> blocking() throws IOException, InterruptedException {
+    return api.sendAll(requests, executor);
+  }
+
+  /* the benchmarks compile for java 11, the virtual thread executor is looked up reflectively. */
+  private static ExecutorService virtualThreadExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (final ReflectiveOperationException exc) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+}
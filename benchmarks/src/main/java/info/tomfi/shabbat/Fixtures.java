@@ -0,0 +1,51 @@
+package info.tomfi.shabbat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/** Response bodies for the benchmarks, the unit test fixtures and generated large responses. */
+final class Fixtures {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String GENERATED_PREFIX = "generated_";
+
+  private Fixtures() {}
+
+  /**
+   * Load a response body by name, a fixture name or generated_N for a response with N items.
+   *
+   * @param name the fixture name, without the json extension.
+   * @return the response body.
+   */
+  static byte[] load(final String name) {
+    if (name.startsWith(GENERATED_PREFIX)) {
+      return generate(Integer.parseInt(name.substring(GENERATED_PREFIX.length())));
+    }
+    try (var stream = Fixtures.class.getResourceAsStream("/api-responses/" + name + ".json")) {
+      if (stream == null) {
+        throw new IllegalArgumentException("unknown fixture " + name);
+      }
+      return stream.readAllBytes();
+    } catch (final IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+  }
+
+  /* the rosh chodesh fixture with its items repeated, as if a long date range was requested. */
+  private static byte[] generate(final int count) {
+    try {
+      var response = (ObjectNode) MAPPER.readTree(load("real_response_rosh_chodesh"));
+      var items = (ArrayNode) response.get("items");
+      var template = items.deepCopy();
+      items.removeAll();
+      for (var i = 0; i < count; i++) {
+        items.add(template.get(i % template.size()).deepCopy());
+      }
+      return MAPPER.writeValueAsBytes(response);
+    } catch (final IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package info.tomfi.shabbat;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building an {@link APIRequest}, with the builder and from a template, and getting its
+ * API uri.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+  private static final int GEO_ID = 281184;
+
+  private LocalDate date;
+  private APIRequest request;
+  private APIRequest.Template template;
+  private ShabbatAPI api;
+
+  @Setup
+  public void setup() {
+    date = LocalDate.of(2021, 1, 1);
+    request = APIRequest.builder().forGeoId(GEO_ID).withDate(date).build();
+    template = APIRequest.builder().forGeoId(GEO_ID).template();
+    api = new ShabbatAPI();
+  }
+
+  @Benchmark
+  public APIRequest buildRequest() {
+    return APIRequest.builder().forGeoId(GEO_ID).withDate(date).build();
+  }
+
+  @Benchmark
+  public APIRequest templateForDate() {
+    return template.forDate(date);
+  }
+
+  @Benchmark
+  public URI encodeUri() {
+    return api.uri(request);
+  }
+}
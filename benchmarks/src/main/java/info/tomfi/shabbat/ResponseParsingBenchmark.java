@@ -0,0 +1,76 @@
+package info.tomfi.shabbat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks deserializing an {@link APIResponse}, with the non-blocking parser used for the http
+ * bodies and with a databind object reader for reference, and projecting {@link ShabbatTimes}.
+ * Decoding the {@link ResponseCodec} binary encoding of the same response is measured against
+ * them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+  @Param({"real_response", "real_response_rosh_chodesh", "generated_100", "generated_1000"})
+  private String fixture;
+
+  private JsonFactory factory;
+  private ObjectReader reader;
+  private byte[] body;
+  private ByteBuffer buffer;
+  private ByteBuffer encoded;
+
+  @Setup
+  public void setup() throws IOException {
+    var mapper = new ObjectMapper();
+    factory = mapper.getFactory();
+    reader =
+        mapper
+            .readerFor(APIResponse.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    body = Fixtures.load(fixture);
+    buffer = ByteBuffer.wrap(body);
+    encoded = ResponseCodec.encode(reader.readValue(body));
+  }
+
+  @Benchmark
+  public APIResponse nonBlocking() throws IOException {
+    return ResponseBodySubscriber.parse(factory, buffer);
+  }
+
+  @Benchmark
+  public ShabbatTimes projection() throws IOException {
+    return ResponseBodySubscriber.parse(factory, new ShabbatTimesReader(), buffer);
+  }
+
+  @Benchmark
+  public APIResponse objectReader() throws IOException {
+    return reader.readValue(body);
+  }
+
+  @Benchmark
+  public APIResponse decode() throws IOException {
+    return ResponseCodec.decode(encoded.duplicate());
+  }
+}
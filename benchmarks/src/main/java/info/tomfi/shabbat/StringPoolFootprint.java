@@ -0,0 +1,96 @@
+package info.tomfi.shabbat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap retained by a year of responses for 10000 locations, decoded with and without
+ * a {@link StringPool}. The responses are calculated by the offline {@link ShabbatCalculator} for
+ * synthetic locations, and decoded from their {@link ResponseCodec} encoding one at a time.
+ *
+ * <p>Run with {@code java -Xmx3g -cp target/benchmarks.jar info.tomfi.shabbat.StringPoolFootprint
+ * [locations] [weeks]}.
+ */
+public final class StringPoolFootprint {
+  private static final String[][] ZONES = {
+    {"Israel", "IL", "Asia/Jerusalem", "31.7", "35.2"},
+    {"United States", "US", "America/New_York", "40.7", "-74.0"},
+    {"United States", "US", "America/Chicago", "41.8", "-87.6"},
+    {"United States", "US", "America/Los_Angeles", "34.0", "-118.2"},
+    {"United Kingdom", "GB", "Europe/London", "51.5", "-0.1"},
+    {"France", "FR", "Europe/Paris", "48.8", "2.3"},
+    {"Argentina", "AR", "America/Argentina/Buenos_Aires", "-34.6", "-58.4"},
+    {"Australia", "AU", "Australia/Sydney", "-33.8", "151.2"},
+    {"South Africa", "ZA", "Africa/Johannesburg", "-26.2", "28.0"},
+    {"Canada", "CA", "America/Toronto", "43.6", "-79.3"}
+  };
+
+  private StringPoolFootprint() {}
+
+  public static void main(final String[] args) throws IOException {
+    var locations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    var weeks = args.length > 1 ? Integer.parseInt(args[1]) : 52;
+
+    var plain = retained(locations, weeks, null);
+    var pooled = retained(locations, weeks, StringPool.builder().build());
+
+    System.out.printf(
+        "%d locations x %d weeks: plain %d MiB, pooled %d MiB, saved %.1f%%%n",
+        locations,
+        weeks,
+        plain >> 20,
+        pooled >> 20,
+        100.0 * (plain - pooled) / plain);
+  }
+
+  private static long retained(final int locations, final int weeks, final StringPool pool)
+      throws IOException {
+    var calculator = new ShabbatCalculator();
+    var friday = LocalDate.of(2021, 1, 1);
+    var before = usedHeap();
+    List<APIResponse> responses = new ArrayList<>(locations * weeks);
+    for (var geonameid = 1; geonameid <= locations; geonameid++) {
+      var location = location(geonameid);
+      var template = APIRequest.builder().forGeoId(geonameid).template();
+      for (var week = 0; week < weeks; week++) {
+        var response = calculator.calculate(template.forDate(friday.plusWeeks(week)), location);
+        responses.add(ResponseCodec.decode(ResponseCodec.encode(response), pool));
+      }
+    }
+    var retained = usedHeap() - before;
+    if (responses.size() != locations * weeks) {
+      throw new IllegalStateException("unexpected number of responses");
+    }
+    return retained;
+  }
+
+  /* a synthetic location, spread around the zone's city, with a shared region. */
+  private static APIResponse.Location location(final int geonameid) {
+    var zone = ZONES[geonameid % ZONES.length];
+    var city = "City " + geonameid;
+    var admin1 = "Region " + geonameid % 500;
+    return new APIResponse.Location.Builder()
+        .withTitle(city + ", " + admin1 + ", " + zone[0])
+        .withCity(city)
+        .withCountry(zone[0])
+        .withCc(zone[1])
+        .withTzid(zone[2])
+        .withAdmin1(admin1)
+        .withAsciiname(city)
+        .withGeo("geoname")
+        .withGeonameid(geonameid)
+        .withLatitude(Double.parseDouble(zone[3]) + geonameid % 100 / 100.0)
+        .withLongitude(Double.parseDouble(zone[4]) + geonameid % 97 / 100.0)
+        .build();
+  }
+
+  private static long usedHeap() {
+    for (var i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
@@ -0,0 +1,187 @@
+package info.tomfi.shabbat;
+
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Http client answering every request with the same body after a fixed latency, the body is
+ * delivered to the body handler on a timer thread, as a network client would deliver it.
+ */
+final class StubHttpClient extends HttpClient {
+  private static final HttpHeaders HEADERS = HttpHeaders.of(Map.of(), (name, value) -> true);
+
+  private final byte[] body;
+  private final Executor delayed;
+
+  StubHttpClient(final byte[] body, final Duration latency) {
+    this.body = body;
+    this.delayed = CompletableFuture.delayedExecutor(latency.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+      final HttpRequest request, final HttpResponse.BodyHandler<T> handler) {
+    return CompletableFuture.supplyAsync(() -> null, delayed)
+        .thenCompose(
+            nothing -> {
+              var subscriber = handler.apply(new Info());
+              subscriber.onSubscribe(
+                  new Flow.Subscription() {
+                    @Override
+                    public void request(final long n) {}
+
+                    @Override
+                    public void cancel() {}
+                  });
+              subscriber.onNext(List.of(ByteBuffer.wrap(body)));
+              subscriber.onComplete();
+              return subscriber.getBody().toCompletableFuture();
+            })
+        .thenApply(value -> new Response<>(request, value));
+  }
+
+  @Override
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+      final HttpRequest request,
+      final HttpResponse.BodyHandler<T> handler,
+      final HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+    return sendAsync(request, handler);
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(
+      final HttpRequest request, final HttpResponse.BodyHandler<T> handler) throws IOException {
+    return sendAsync(request, handler).join();
+  }
+
+  @Override
+  public Optional<CookieHandler> cookieHandler() {
+    return Optional.empty();
+  }
+
+  @Override
+  public Optional<Duration> connectTimeout() {
+    return Optional.empty();
+  }
+
+  @Override
+  public Redirect followRedirects() {
+    return Redirect.NEVER;
+  }
+
+  @Override
+  public Optional<ProxySelector> proxy() {
+    return Optional.empty();
+  }
+
+  @Override
+  public SSLContext sslContext() {
+    return null;
+  }
+
+  @Override
+  public SSLParameters sslParameters() {
+    return null;
+  }
+
+  @Override
+  public Optional<Authenticator> authenticator() {
+    return Optional.empty();
+  }
+
+  @Override
+  public Version version() {
+    return Version.HTTP_1_1;
+  }
+
+  @Override
+  public Optional<Executor> executor() {
+    return Optional.empty();
+  }
+
+  private static final class Info implements HttpResponse.ResponseInfo {
+    @Override
+    public int statusCode() {
+      return 200;
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return HEADERS;
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_1_1;
+    }
+  }
+
+  private static final class Response<T> implements HttpResponse<T> {
+    private final HttpRequest request;
+    private final T body;
+
+    Response(final HttpRequest request, final T body) {
+      this.request = request;
+      this.body = body;
+    }
+
+    @Override
+    public int statusCode() {
+      return 200;
+    }
+
+    @Override
+    public HttpRequest request() {
+      return request;
+    }
+
+    @Override
+    public Optional<HttpResponse<T>> previousResponse() {
+      return Optional.empty();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return HEADERS;
+    }
+
+    @Override
+    public T body() {
+      return body;
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return Optional.empty();
+    }
+
+    @Override
+    public URI uri() {
+      return request.uri();
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_1_1;
+    }
+  }
+}
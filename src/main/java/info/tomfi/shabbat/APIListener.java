@@ -0,0 +1,54 @@
+package info.tomfi.shabbat;
+
+/**
+ * Listener notified by {@link ShabbatAPI} on every http exchange with the API. Requests served
+ * from a cache or a store, and calls rejected by an open circuit or a rate limiter, make no
+ * exchange. Every retry and hedge of a call is an exchange of its own. The methods are invoked on
+ * the threads completing the exchange and should not block, all of them do nothing by default.
+ */
+public interface APIListener {
+  /** The phases of an exchange, in order. */
+  enum Phase {
+    /** From the start of the exchange until the http request is built and handed to the client. */
+    REQUEST_BUILD,
+    /** From the hand over to the client until the response status and headers are received. */
+    NETWORK,
+    /** From the response headers until the body is received, the body is bound meanwhile. */
+    BODY_READ,
+    /** From the end of the body until the bound {@link APIResponse} is built. */
+    DESERIALIZE
+  }
+
+  /**
+   * Invoked when an exchange starts.
+   *
+   * @param request the request sent.
+   */
+  default void onExchangeStart(APIRequest request) {}
+
+  /**
+   * Invoked when a phase of an exchange completes. Phases not reached, i.e. the body phases of a
+   * failed exchange or of a not modified response, are not reported.
+   *
+   * @param request the request sent.
+   * @param phase the completed phase.
+   * @param nanos the duration of the phase in nanoseconds.
+   */
+  default void onPhase(APIRequest request, Phase phase, long nanos) {}
+
+  /**
+   * Invoked when a response body is received.
+   *
+   * @param request the request sent.
+   * @param bytes the size of the body, after decompression if the body was compressed.
+   */
+  default void onResponseBytes(APIRequest request, long bytes) {}
+
+  /**
+   * Invoked when an exchange ends.
+   *
+   * @param request the request sent.
+   * @param failure the failure of the exchange, or null if it succeeded.
+   */
+  default void onExchangeEnd(APIRequest request, Throwable failure) {}
+}
@@ -1,6 +1,10 @@
 package info.tomfi.shabbat;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
@@ -10,7 +14,11 @@ public final class APIRequest {
   private static final IntWrapper DEFAULT_HAVDALAH = IntWrapper.of(50);
   private static final IntWrapper DEFAULT_CANDLE_LIGHTING = IntWrapper.of(18);
 
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
   private final Map<ParamKey, ParamValue> queryParams;
+  private final String query;
+  private final URI uri;
 
   /** Enum for setting the various available query parameter keys */
   public enum ParamKey {
@@ -209,8 +217,10 @@ public int hashCode() {
     }
   }
 
-  private APIRequest(final Map<ParamKey, ParamValue> queryParams) {
-    this.queryParams = queryParams;
+  private APIRequest(final Map<ParamKey, ParamValue> queryParams, final String query) {
+    this.queryParams = Collections.unmodifiableMap(queryParams);
+    this.query = query;
+    this.uri = URI.create(ShabbatAPI.ENDPOINT + "?" + query);
   }
 
   @Override
@@ -234,10 +244,120 @@ public Map<ParamKey, ParamValue> queryParams() {
     return this.queryParams;
   }
 
+  /**
+   * Get the percent encoded query string of the request, computed when the request was built.
+   *
+   * @return the query string, the parameters in their {@link ParamKey} order.
+   */
+  String query() {
+    return this.query;
+  }
+
+  /**
+   * Get the API uri of the request, computed when the request was built.
+   *
+   * @return the request uri.
+   */
+  URI uri() {
+    return this.uri;
+  }
+
+  /* appends the parameters of a key range in their key order, each preceded by a separator. */
+  private static void appendQuery(
+      final StringBuilder query,
+      final Map<ParamKey, ParamValue> queryParams,
+      final ParamKey from,
+      final ParamKey to) {
+    for (var entry : queryParams.entrySet()) {
+      var ordinal = entry.getKey().ordinal();
+      if (ordinal >= from.ordinal() && ordinal <= to.ordinal()) {
+        query.append('&').append(entry.getKey()).append('=');
+        encode(query, entry.getValue().toString());
+      }
+    }
+  }
+
+  /* percent encodes the utf-8 bytes of a value, all but the unreserved characters of rfc 3986. */
+  private static void encode(final StringBuilder query, final String value) {
+    for (var b : value.getBytes(UTF_8)) {
+      if (b >= 'a' && b <= 'z'
+          || b >= 'A' && b <= 'Z'
+          || b >= '0' && b <= '9'
+          || b == '-'
+          || b == '.'
+          || b == '_'
+          || b == '~') {
+        query.append((char) b);
+      } else {
+        query.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+      }
+    }
+  }
+
   public static Builder builder() {
     return new Builder();
   }
 
+  /**
+   * Template for {@link APIRequest} instances differing only by their date. The query string is
+   * encoded when the template is built, the date parameters, which are adjacent in the {@link
+   * ParamKey} order, are patched in between its prefix and suffix.
+   */
+  public static final class Template {
+    private static final PaddedIntWrapper[] PADDED = new PaddedIntWrapper[32];
+
+    static {
+      for (var i = 1; i < PADDED.length; i++) {
+        PADDED[i] = PaddedIntWrapper.of(i);
+      }
+    }
+
+    private final Map<ParamKey, ParamValue> queryParams;
+    private final String prefix;
+    private final String suffix;
+
+    private Template(final Map<ParamKey, ParamValue> queryParams) {
+      this.queryParams = new EnumMap<>(queryParams);
+      this.queryParams.remove(ParamKey.GREGORIAN_DAY);
+      this.queryParams.remove(ParamKey.GREGORIAN_MONTH);
+      this.queryParams.remove(ParamKey.GREGORIAN_YEAR);
+      // the keys preceding and following the date keys
+      var before = new StringBuilder(64);
+      appendQuery(
+          before, this.queryParams, ParamKey.ASHKENAZIS_TRANSLITERATIONS, ParamKey.GEO_TYPE);
+      this.prefix = before.toString();
+      var after = new StringBuilder(64);
+      appendQuery(after, this.queryParams, ParamKey.HAVDALAH, ParamKey.ZIP);
+      this.suffix = after.toString();
+    }
+
+    /**
+     * Create a request for a date.
+     *
+     * @param localDate the date of the request.
+     * @return the request for the date.
+     */
+    public APIRequest forDate(final LocalDate localDate) {
+      Objects.requireNonNull(localDate, "Null localDate");
+      var year = IntWrapper.of(localDate.getYear());
+      var month = PADDED[localDate.getMonthValue()];
+      var day = PADDED[localDate.getDayOfMonth()];
+
+      var params = new EnumMap<>(queryParams);
+      params.put(ParamKey.GREGORIAN_YEAR, year);
+      params.put(ParamKey.GREGORIAN_MONTH, month);
+      params.put(ParamKey.GREGORIAN_DAY, day);
+
+      var query = new StringBuilder(prefix.length() + suffix.length() + 24);
+      query.append(prefix);
+      query.append('&').append(ParamKey.GREGORIAN_DAY).append('=').append(day);
+      query.append('&').append(ParamKey.GREGORIAN_MONTH).append('=').append(month);
+      query.append('&').append(ParamKey.GREGORIAN_YEAR).append('=').append(year);
+      query.append(suffix);
+      return new APIRequest(params, query.substring(1));
+    }
+  }
+
   /** Builder class for {@link APIRequest}. */
   public static final class Builder {
     private Map<ParamKey, ParamValue> queryParams;
@@ -253,11 +373,35 @@ public Builder() {
       queryParams.put(ParamKey.CANDLE_LIGHTING, DEFAULT_CANDLE_LIGHTING);
     }
 
+    /**
+     * Build the request, its query string and uri are encoded once, when built.
+     *
+     * @return the built request.
+     */
     public APIRequest build() {
-      if (queryParams.containsKey(ParamKey.GEO_ID)) {
-        return new APIRequest(queryParams);
+      requireGeoId();
+      var params = new EnumMap<>(queryParams);
+      var query = new StringBuilder(128);
+      appendQuery(query, params, ParamKey.ASHKENAZIS_TRANSLITERATIONS, ParamKey.ZIP);
+      return new APIRequest(params, query.substring(1));
+    }
+
+    /**
+     * Build a template for requests differing only by their date, i.e. the requests for a geoid
+     * over a range of dates. The template encodes the query string once, only the date parameters
+     * are patched in for every request. A date set with the builder is ignored.
+     *
+     * @return the request template.
+     */
+    public Template template() {
+      requireGeoId();
+      return new Template(queryParams);
+    }
+
+    private void requireGeoId() {
+      if (!queryParams.containsKey(ParamKey.GEO_ID)) {
+        throw new IllegalArgumentException("geo id is mandatory for sending a request");
       }
-      throw new IllegalArgumentException("geo id is mandatory for sending a request");
     }
 
     /**
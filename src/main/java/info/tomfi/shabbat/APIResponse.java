@@ -8,7 +8,12 @@
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -22,10 +27,15 @@ public final class APIResponse {
   public final String title;
   public final Optional<DateRange> range;
 
-  private Optional<APIResponse.Item> candlesItem;
-  private Optional<APIResponse.Item> havdalahItem;
-  private Optional<APIResponse.Item> parashaItem;
-  private Optional<APIResponse.Item> roshChodeshItem;
+  // derived once at build time, the final fields are safely published to every thread
+  private final boolean hasItems;
+  private final Map<Item.Category, List<Item>> index;
+  private final Optional<Item> candlesItem;
+  private final Optional<Item> havdalahItem;
+  private final Optional<Item> parashaItem;
+  private final Optional<Item> roshChodeshItem;
+  private final OffsetDateTime shabbatStart;
+  private final OffsetDateTime shabbatEnd;
 
   /** Enum for selecting a Shabbat item. */
   public enum ShabbatItem {
@@ -48,6 +58,15 @@ private APIResponse(
     this.location = location;
     this.title = title;
     this.range = range;
+
+    this.hasItems = items.isPresent() && !items.get().isEmpty();
+    this.index = index(items.orElse(List.of()));
+    this.candlesItem = first(Item.Category.CANDLES);
+    this.havdalahItem = first(Item.Category.HAVDALAH);
+    this.roshChodeshItem = first(Item.Category.ROSH_CHODESH);
+    this.parashaItem = parashaItem();
+    this.shabbatStart = parse(candlesItem);
+    this.shabbatEnd = parse(havdalahItem);
   }
 
   @JsonIgnore
@@ -74,25 +93,63 @@ public int hashCode() {
     return Objects.hash(this.date, this.items, this.link, this.location, this.title, this.range);
   }
 
-  @JsonIgnore
-  private Optional<Item> getFirstItemOf(final Item.Category category) {
-    if (this.items.isEmpty() || this.items.get().isEmpty()) {
-      throw new IllegalArgumentException("response has no items");
+  /* the items by their category, in the response order. */
+  private static Map<Item.Category, List<Item>> index(final List<Item> items) {
+    var index = new EnumMap<Item.Category, List<Item>>(Item.Category.class);
+    for (var item : items) {
+      index.computeIfAbsent(item.category, category -> new ArrayList<>(2)).add(item);
     }
-    return this.items.get().stream().filter(item -> item.category.equals(category)).findFirst();
+    for (var entry : index.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+    return index;
   }
 
-  @JsonIgnore
-  private Optional<Item> getParashaItem(final String name) {
-    if (this.items.isEmpty() || this.items.get().isEmpty()) {
-      throw new IllegalArgumentException("response has no items");
+  private Optional<Item> first(final Item.Category category) {
+    var categorized = index.get(category);
+    return Objects.isNull(categorized) ? Optional.empty() : Optional.of(categorized.get(0));
+  }
+
+  /* the parashat item titled as the candles item memo, empty if the candles item has no memo. */
+  private Optional<Item> parashaItem() {
+    if (candlesItem.isEmpty() || candlesItem.get().memo.isEmpty()) {
+      return Optional.empty();
     }
-    return this.items.get().stream()
-        .filter(item -> item.category.equals(Item.Category.PARASHAT))
+    var name = candlesItem.get().memo.get();
+    return getItems(Item.Category.PARASHAT).stream()
         .filter(item -> item.title.equals(name))
         .findFirst();
   }
 
+  /* the time of an item, null if absent or not parsable so the accessor reports the failure. */
+  private static OffsetDateTime parse(final Optional<Item> item) {
+    if (item.isEmpty()) {
+      return null;
+    }
+    try {
+      return OffsetDateTime.parse(item.get().date, ISO_OFFSET_DATE_TIME);
+    } catch (final DateTimeParseException exc) {
+      return null;
+    }
+  }
+
+  private void requireItems() {
+    if (!hasItems) {
+      throw new IllegalArgumentException("response has no items");
+    }
+  }
+
+  /**
+   * Get the response's items of a category, in the response order.
+   *
+   * @param category the category of the items.
+   * @return an unmodifiable list of the items, empty if there are none.
+   */
+  @JsonIgnore
+  public List<Item> getItems(final Item.Category category) {
+    return index.getOrDefault(category, List.of());
+  }
+
   /**
    * Get a singleton of the response's first {@link Item} based on {@link ShabbatItem}.
    *
@@ -101,35 +158,22 @@ private Optional<Item> getParashaItem(final String name) {
    */
   @JsonIgnore
   public Optional<Item> getShabbatItem(final ShabbatItem shabbatItem) {
+    requireItems();
     switch (shabbatItem) {
       case SHABBAT_START:
-        {
-          if (Objects.isNull(candlesItem)) {
-            candlesItem = getFirstItemOf(Item.Category.CANDLES);
-          }
-          return candlesItem;
-        }
+        return candlesItem;
       case SHABBAT_END:
-        {
-          if (Objects.isNull(havdalahItem)) {
-            havdalahItem = getFirstItemOf(Item.Category.HAVDALAH);
-          }
-          return havdalahItem;
-        }
+        return havdalahItem;
       case PARASHAT_SHABBAT:
-        {
-          if (Objects.isNull(parashaItem)) {
-            parashaItem = getParashaItem(getShabbatParasha());
-          }
-          return parashaItem;
+        if (candlesItem.isEmpty()) {
+          throw new IllegalArgumentException("no candles item found");
         }
-      case ROSH_CHODESH:
-        {
-          if (Objects.isNull(roshChodeshItem)) {
-            roshChodeshItem = getFirstItemOf(Item.Category.ROSH_CHODESH);
-          }
-          return roshChodeshItem;
+        if (candlesItem.get().memo.isEmpty()) {
+          throw new IllegalArgumentException("candles item has doesn't states parasha");
         }
+        return parashaItem;
+      case ROSH_CHODESH:
+        return roshChodeshItem;
       default:
         return Optional.empty();
     }
@@ -144,7 +188,9 @@ public Optional<Item> getShabbatItem(final ShabbatItem shabbatItem) {
   public OffsetDateTime getShabbatStart() {
     var item = getShabbatItem(ShabbatItem.SHABBAT_START);
     if (item.isPresent()) {
-      return OffsetDateTime.parse(item.get().date, ISO_OFFSET_DATE_TIME);
+      return Objects.isNull(shabbatStart)
+          ? OffsetDateTime.parse(item.get().date, ISO_OFFSET_DATE_TIME)
+          : shabbatStart;
     }
     throw new IllegalArgumentException("no candles item found");
   }
@@ -158,7 +204,9 @@ public OffsetDateTime getShabbatStart() {
   public OffsetDateTime getShabbatEnd() {
     var item = getShabbatItem(ShabbatItem.SHABBAT_END);
     if (item.isPresent()) {
-      return OffsetDateTime.parse(item.get().date, ISO_OFFSET_DATE_TIME);
+      return Objects.isNull(shabbatEnd)
+          ? OffsetDateTime.parse(item.get().date, ISO_OFFSET_DATE_TIME)
+          : shabbatEnd;
     }
     throw new IllegalArgumentException("no havdala item found");
   }
@@ -193,19 +241,26 @@ static class Builder {
     private Location location;
     private String title;
     private Optional<DateRange> range;
+    private StringPool pool;
+
+    /* the string values set after are pooled. */
+    Builder pooled(final StringPool pool) {
+      this.pool = pool;
+      return this;
+    }
 
     Builder withDate(final String date) {
-      this.date = date;
+      this.date = StringPool.intern(pool, date);
       return this;
     }
 
     Builder withItems(final List<Item> items) {
-      this.items = Optional.of(items);
+      this.items = Optional.of(List.copyOf(items));
       return this;
     }
 
     Builder withLink(final String link) {
-      this.link = Optional.of(link);
+      this.link = StringPool.optional(pool, link);
       return this;
     }
 
@@ -215,7 +270,7 @@ Builder withLocation(final Location location) {
     }
 
     Builder withTitle(final String title) {
-      this.title = title;
+      this.title = StringPool.intern(pool, title);
       return this;
     }
 
@@ -378,29 +433,36 @@ static class Builder {
       private Optional<String> cc;
       private String title;
       private Optional<String> tzid;
+      private StringPool pool;
+
+      /* the string values set after are pooled, equal built locations are shared. */
+      Builder pooled(final StringPool pool) {
+        this.pool = pool;
+        return this;
+      }
 
       Builder withAdmin1(final String admin1) {
-        this.admin1 = Optional.of(admin1);
+        this.admin1 = StringPool.optional(pool, admin1);
         return this;
       }
 
       Builder withAsciiname(final String asciiname) {
-        this.asciiname = Optional.of(asciiname);
+        this.asciiname = StringPool.optional(pool, asciiname);
         return this;
       }
 
       Builder withCity(final String city) {
-        this.city = city;
+        this.city = StringPool.intern(pool, city);
         return this;
       }
 
       Builder withCountry(final String country) {
-        this.country = country;
+        this.country = StringPool.intern(pool, country);
         return this;
       }
 
       Builder withGeo(final String geo) {
-        this.geo = geo;
+        this.geo = StringPool.intern(pool, geo);
         return this;
       }
 
@@ -420,33 +482,35 @@ Builder withLongitude(final Double longitude) {
       }
 
       Builder withCc(final String cc) {
-        this.cc = Optional.of(cc);
+        this.cc = StringPool.optional(pool, cc);
         return this;
       }
 
       Builder withTitle(final String title) {
-        this.title = title;
+        this.title = StringPool.intern(pool, title);
         return this;
       }
 
       Builder withTzid(final String tzid) {
-        this.tzid = Optional.of(tzid);
+        this.tzid = StringPool.optional(pool, tzid);
         return this;
       }
 
       Location build() {
-        return new Location(
-            Objects.isNull(this.admin1) ? Optional.empty() : this.admin1,
-            Objects.isNull(this.asciiname) ? Optional.empty() : this.asciiname,
-            Objects.requireNonNull(this.city),
-            Objects.requireNonNull(this.country),
-            Objects.requireNonNull(this.geo),
-            Objects.requireNonNull(this.geonameid),
-            Objects.requireNonNull(this.latitude),
-            Objects.requireNonNull(this.longitude),
-            Objects.isNull(this.cc) ? Optional.empty() : this.cc,
-            Objects.requireNonNull(this.title),
-            Objects.isNull(this.tzid) ? Optional.empty() : this.tzid);
+        var location =
+            new Location(
+                Objects.isNull(this.admin1) ? Optional.empty() : this.admin1,
+                Objects.isNull(this.asciiname) ? Optional.empty() : this.asciiname,
+                Objects.requireNonNull(this.city),
+                Objects.requireNonNull(this.country),
+                Objects.requireNonNull(this.geo),
+                Objects.requireNonNull(this.geonameid),
+                Objects.requireNonNull(this.latitude),
+                Objects.requireNonNull(this.longitude),
+                Objects.isNull(this.cc) ? Optional.empty() : this.cc,
+                Objects.requireNonNull(this.title),
+                Objects.isNull(this.tzid) ? Optional.empty() : this.tzid);
+        return Objects.isNull(pool) ? location : pool.location(location);
       }
     }
   }
@@ -575,19 +639,26 @@ static class Builder {
       private Optional<String> memo;
       private Optional<String> subcat;
       private Boolean yomtov;
+      private StringPool pool;
+
+      /* the string values set after are pooled. */
+      Builder pooled(final StringPool pool) {
+        this.pool = pool;
+        return this;
+      }
 
       Builder withHebrew(final String hebrew) {
-        this.hebrew = Optional.of(hebrew);
+        this.hebrew = StringPool.optional(pool, hebrew);
         return this;
       }
 
       Builder withDate(final String date) {
-        this.date = date;
+        this.date = StringPool.intern(pool, date);
         return this;
       }
 
       Builder withTitle(final String title) {
-        this.title = title;
+        this.title = StringPool.intern(pool, title);
         return this;
       }
 
@@ -597,28 +668,28 @@ Builder withCategory(final String category) {
       }
 
       Builder withHdate(final String hdate) {
-        this.hdate = Optional.of(hdate);
+        this.hdate = StringPool.optional(pool, hdate);
         return this;
       }
 
       @JsonProperty("title_orig")
       Builder withTitleOrig(final String titleOrig) {
-        this.titleOrig = Optional.of(titleOrig);
+        this.titleOrig = StringPool.optional(pool, titleOrig);
         return this;
       }
 
       Builder withLink(final String link) {
-        this.link = Optional.of(link);
+        this.link = StringPool.optional(pool, link);
         return this;
       }
 
       Builder withMemo(final String memo) {
-        this.memo = Optional.of(memo);
+        this.memo = StringPool.optional(pool, memo);
         return this;
       }
 
       Builder withSubcat(final String subcat) {
-        this.subcat = Optional.of(subcat);
+        this.subcat = StringPool.optional(pool, subcat);
         return this;
       }
 
@@ -0,0 +1,19 @@
+package info.tomfi.shabbat;
+
+import java.io.IOException;
+
+/** Exception thrown when the API replies with a non successful http status. */
+public final class APIStatusException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+
+  APIStatusException(final int statusCode) {
+    super("unexpected response status: " + statusCode);
+    this.statusCode = statusCode;
+  }
+
+  public int statusCode() {
+    return this.statusCode;
+  }
+}
@@ -0,0 +1,180 @@
+package info.tomfi.shabbat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Handle for a batch of {@link APIRequest} instances sent with a bounded number of calls in
+ * flight. Responses and failures are collected as the calls complete, a failed call does not abort
+ * the rest of the batch.
+ */
+public final class BatchResponse {
+  private final Iterator<APIRequest> requests;
+  private final int maxInFlight;
+  private final Function<APIRequest, CompletableFuture<APIResponse>> sender;
+
+  private final Map<APIRequest, APIResponse> responses = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+  private final CompletableFuture<BatchResponse> completion = new CompletableFuture<>();
+  private final AtomicInteger available;
+  private final AtomicInteger completed = new AtomicInteger();
+  private final AtomicInteger drainers = new AtomicInteger();
+
+  private boolean exhausted;
+
+  /** Value class used to represent a request that failed as part of a batch. */
+  public static final class Failure {
+    private final APIRequest request;
+    private final Throwable cause;
+
+    private Failure(final APIRequest request, final Throwable cause) {
+      this.request = request;
+      this.cause = cause;
+    }
+
+    public APIRequest request() {
+      return this.request;
+    }
+
+    public Throwable cause() {
+      return this.cause;
+    }
+  }
+
+  private BatchResponse(
+      final Iterator<APIRequest> requests,
+      final int maxInFlight,
+      final Function<APIRequest, CompletableFuture<APIResponse>> sender) {
+    this.requests = requests;
+    this.maxInFlight = maxInFlight;
+    this.sender = sender;
+    this.available = new AtomicInteger(maxInFlight);
+  }
+
+  /**
+   * Start sending a batch of requests.
+   *
+   * @param requests the requests to send, consumed lazily as calls complete.
+   * @param maxInFlight the maximum number of calls in flight.
+   * @param sender the function sending a single request.
+   * @return the batch handle.
+   */
+  static BatchResponse send(
+      final Iterator<APIRequest> requests,
+      final int maxInFlight,
+      final Function<APIRequest, CompletableFuture<APIResponse>> sender) {
+    Objects.requireNonNull(requests, "Null requests");
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("max in flight should be a positive integer");
+    }
+    var batch = new BatchResponse(requests, maxInFlight, sender);
+    batch.drain();
+    return batch;
+  }
+
+  /**
+   * Get the responses received so far, keyed by their request. The returned map is a live view.
+   *
+   * @return an unmodifiable map of responses.
+   */
+  public Map<APIRequest, APIResponse> responses() {
+    return Collections.unmodifiableMap(this.responses);
+  }
+
+  /**
+   * Get the failures collected so far.
+   *
+   * @return a snapshot list of failures.
+   */
+  public List<Failure> failures() {
+    return Collections.unmodifiableList(new ArrayList<>(this.failures));
+  }
+
+  /**
+   * Get the number of requests completed so far, either successfully or not.
+   *
+   * @return the completed count.
+   */
+  public int completedCount() {
+    return this.completed.get();
+  }
+
+  /**
+   * Get a future completed with this handle once every request of the batch was completed. The
+   * future completes exceptionally only if iterating over the requests failed.
+   *
+   * @return the completion future.
+   */
+  public CompletableFuture<BatchResponse> completion() {
+    return this.completion;
+  }
+
+  public boolean isDone() {
+    return this.completion.isDone();
+  }
+
+  /* only one thread at a time launches calls, calls completing synchronously are trampolined. */
+  private void drain() {
+    if (drainers.getAndIncrement() != 0) {
+      return;
+    }
+    do {
+      while (!exhausted && available.get() > 0) {
+        APIRequest request;
+        try {
+          if (!requests.hasNext()) {
+            exhausted = true;
+            break;
+          }
+          request = requests.next();
+        } catch (final RuntimeException exc) {
+          exhausted = true;
+          completion.completeExceptionally(exc);
+          break;
+        }
+        available.decrementAndGet();
+        launch(request);
+      }
+      if (exhausted && available.get() == maxInFlight) {
+        completion.complete(this);
+      }
+    } while (drainers.decrementAndGet() != 0);
+  }
+
+  private void launch(final APIRequest request) {
+    CompletableFuture<APIResponse> future;
+    try {
+      future = sender.apply(request);
+    } catch (final RuntimeException exc) {
+      future = CompletableFuture.failedFuture(exc);
+    }
+    future.whenComplete(
+        (response, throwable) -> {
+          if (Objects.isNull(throwable)) {
+            responses.put(request, response);
+          } else {
+            failures.add(new Failure(request, unwrap(throwable)));
+          }
+          completed.incrementAndGet();
+          available.incrementAndGet();
+          drain();
+        });
+  }
+
+  private static Throwable unwrap(final Throwable throwable) {
+    if (throwable instanceof CompletionException && Objects.nonNull(throwable.getCause())) {
+      return throwable.getCause();
+    }
+    return throwable;
+  }
+}
@@ -0,0 +1,202 @@
+package info.tomfi.shabbat;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker stopping API calls after repeated failures. Once opened, calls fail fast with a
+ * {@link CircuitOpenException} until the open duration elapses, then a single probe call is let
+ * through. A successful probe closes the circuit, a failed or cancelled one opens it again. A
+ * probe not completed within the probe timeout fails with an {@link HttpTimeoutException}, so a
+ * hung probe can not keep the circuit half open. Only transient failures are counted, a call
+ * answered with a client error status still proves the API is up. Calls let through while the
+ * circuit was closed and completing after it opened are ignored, only the probe decides it.
+ */
+public final class CircuitBreaker {
+  /** The states of the circuit. */
+  public enum State {
+    /** Calls are let through. */
+    CLOSED,
+    /** Calls fail fast. */
+    OPEN,
+    /** A single probe call is in flight, other calls fail fast. */
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openDuration;
+  private final long probeTimeout;
+  private final Clock clock;
+
+  private State state = State.CLOSED;
+  private int failures;
+  private long openedAt;
+
+  private CircuitBreaker(final Builder builder) {
+    this.failureThreshold = builder.failureThreshold;
+    this.openDuration = builder.openDuration.toMillis();
+    this.probeTimeout = builder.probeTimeout.toMillis();
+    this.clock = builder.clock;
+  }
+
+  /**
+   * Get the current state of the circuit. An open circuit whose open duration elapsed is reported
+   * as open until the next call probes it.
+   *
+   * @return the circuit state.
+   */
+  public synchronized State state() {
+    return this.state;
+  }
+
+  /**
+   * Invoke a call guarded by this circuit breaker.
+   *
+   * @param sender the supplier starting the call.
+   * @return the call future, or a future failed with a {@link CircuitOpenException}.
+   */
+  <T> CompletableFuture<T> call(final Supplier<CompletableFuture<T>> sender) {
+    var acquired = tryAcquire();
+    if (Objects.isNull(acquired)) {
+      return CompletableFuture.failedFuture(new CircuitOpenException());
+    }
+    CompletableFuture<T> call;
+    try {
+      call = sender.get();
+    } catch (final RuntimeException exc) {
+      call = CompletableFuture.failedFuture(exc);
+    }
+    // the call itself is returned so cancelling it reaches the http client
+    call.whenComplete((value, throwable) -> record(acquired, throwable));
+    if (acquired == State.HALF_OPEN && !call.isDone()) {
+      var probe = call;
+      CompletableFuture.delayedExecutor(probeTimeout, TimeUnit.MILLISECONDS)
+          .execute(
+              () ->
+                  probe.completeExceptionally(
+                      new HttpTimeoutException("circuit breaker probe timed out")));
+    }
+    return call;
+  }
+
+  /* the state the call was let through in, or null if the call is rejected. */
+  private synchronized State tryAcquire() {
+    switch (state) {
+      case CLOSED:
+        return State.CLOSED;
+      case OPEN:
+        if (clock.millis() - openedAt >= openDuration) {
+          state = State.HALF_OPEN;
+          return State.HALF_OPEN;
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  /* the outcome of a call counts only in the state it was let through in. */
+  private synchronized void record(final State acquired, final Throwable throwable) {
+    if (acquired != state) {
+      // a late call let through before the circuit opened, the probe decides the circuit
+      return;
+    }
+    var cause =
+        throwable instanceof CompletionException && Objects.nonNull(throwable.getCause())
+            ? throwable.getCause()
+            : throwable;
+    if (cause instanceof CancellationException) {
+      // a cancelled call proves nothing, a cancelled probe keeps the circuit open
+      if (state == State.HALF_OPEN) {
+        open();
+      }
+      return;
+    }
+    if (Objects.isNull(cause) || !ResiliencePolicy.isRetryable(cause)) {
+      state = State.CLOSED;
+      failures = 0;
+      return;
+    }
+    if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+      open();
+    }
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedAt = clock.millis();
+    failures = 0;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder class for {@link CircuitBreaker}. */
+  public static final class Builder {
+    private int failureThreshold = 5;
+    private Duration openDuration = Duration.ofSeconds(30);
+    private Duration probeTimeout = Duration.ofSeconds(10);
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Set the number of consecutive failures opening the circuit.
+     *
+     * @param failureThreshold the number of failures, 5 by default.
+     * @return the fluent builder instance.
+     */
+    public Builder withFailureThreshold(final int failureThreshold) {
+      if (failureThreshold <= 0) {
+        throw new IllegalArgumentException("failure threshold should be a positive integer");
+      }
+      this.failureThreshold = failureThreshold;
+      return this;
+    }
+
+    /**
+     * Set how long the circuit stays open before probing the API.
+     *
+     * @param openDuration the open duration, 30 seconds by default.
+     * @return the fluent builder instance.
+     */
+    public Builder withOpenDuration(final Duration openDuration) {
+      Objects.requireNonNull(openDuration, "Null openDuration");
+      if (openDuration.isNegative() || openDuration.isZero()) {
+        throw new IllegalArgumentException("open duration should be a positive duration");
+      }
+      this.openDuration = openDuration;
+      return this;
+    }
+
+    /**
+     * Set how long a probe call can take before it fails and opens the circuit again.
+     *
+     * @param probeTimeout the probe timeout, 10 seconds by default.
+     * @return the fluent builder instance.
+     */
+    public Builder withProbeTimeout(final Duration probeTimeout) {
+      Objects.requireNonNull(probeTimeout, "Null probeTimeout");
+      if (probeTimeout.isNegative() || probeTimeout.isZero()) {
+        throw new IllegalArgumentException("probe timeout should be a positive duration");
+      }
+      this.probeTimeout = probeTimeout;
+      return this;
+    }
+
+    Builder withClock(final Clock clock) {
+      this.clock = Objects.requireNonNull(clock, "Null clock");
+      return this;
+    }
+
+    public CircuitBreaker build() {
+      return new CircuitBreaker(this);
+    }
+  }
+}
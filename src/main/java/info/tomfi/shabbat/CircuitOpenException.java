@@ -0,0 +1,12 @@
+package info.tomfi.shabbat;
+
+import java.io.IOException;
+
+/** Exception thrown when a call is not sent because the {@link CircuitBreaker} is open. */
+public final class CircuitOpenException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  CircuitOpenException() {
+    super("circuit breaker is open");
+  }
+}
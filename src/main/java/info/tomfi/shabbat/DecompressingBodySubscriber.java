@@ -0,0 +1,282 @@
+package info.tomfi.shabbat;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Body subscriber inflating a gzip or deflate encoded body chunk by chunk, as the chunks arrive,
+ * and forwarding the inflated chunks to a downstream subscriber. The compressed body is never
+ * buffered as a whole.
+ */
+final class DecompressingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+  private static final int CHUNK_SIZE = 8192;
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int GZIP_HEADER_SIZE = 10;
+  private static final int GZIP_TRAILER_SIZE = 8;
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private enum State {
+    HEADER,
+    BODY,
+    TRAILER,
+    DONE
+  }
+
+  private final HttpResponse.BodySubscriber<T> downstream;
+  private final boolean gzip;
+  private final LongAdder savedBytes;
+  private final CRC32 crc = new CRC32();
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+  private Inflater inflater;
+  private State state;
+  private Flow.Subscription subscription;
+  private long compressed;
+  private long inflated;
+  private boolean failed;
+
+  private DecompressingBodySubscriber(
+      final HttpResponse.BodySubscriber<T> downstream,
+      final boolean gzip,
+      final LongAdder savedBytes) {
+    this.downstream = downstream;
+    this.gzip = gzip;
+    this.savedBytes = savedBytes;
+    this.state = State.HEADER;
+  }
+
+  /**
+   * Wrap a body handler, inflating the bodies of successful responses encoded with gzip or deflate.
+   *
+   * @param handler the handler for the inflated bodies.
+   * @param savedBytes the counter of the bytes saved by the compression.
+   * @return the wrapping body handler.
+   */
+  static <T> HttpResponse.BodyHandler<T> handler(
+      final HttpResponse.BodyHandler<T> handler, final LongAdder savedBytes) {
+    return responseInfo -> {
+      var subscriber = handler.apply(responseInfo);
+      var status = responseInfo.statusCode();
+      if (status < 200 || status > 299) {
+        return subscriber;
+      }
+      var encoding = responseInfo.headers().firstValue("Content-Encoding").orElse("").trim();
+      switch (encoding.toLowerCase(Locale.ROOT)) {
+        case "gzip":
+        case "x-gzip":
+          return new DecompressingBodySubscriber<>(subscriber, true, savedBytes);
+        case "deflate":
+          return new DecompressingBodySubscriber<>(subscriber, false, savedBytes);
+        default:
+          return subscriber;
+      }
+    };
+  }
+
+  @Override
+  public CompletionStage<T> getBody() {
+    return downstream.getBody();
+  }
+
+  @Override
+  public void onSubscribe(final Flow.Subscription subscription) {
+    this.subscription = subscription;
+    downstream.onSubscribe(subscription);
+  }
+
+  @Override
+  public void onNext(final List<ByteBuffer> item) {
+    if (failed) {
+      return;
+    }
+    var output = new ArrayList<ByteBuffer>();
+    try {
+      for (var buffer : item) {
+        compressed += buffer.remaining();
+        decode(buffer, output);
+      }
+    } catch (final ZipException exc) {
+      fail(exc);
+      return;
+    }
+    // an empty list is forwarded as well, the downstream demand is one list per upstream list
+    downstream.onNext(output);
+  }
+
+  @Override
+  public void onError(final Throwable throwable) {
+    release();
+    downstream.onError(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    if (failed) {
+      return;
+    }
+    if (state != State.DONE) {
+      fail(new ZipException("truncated compressed body"));
+      return;
+    }
+    release();
+    savedBytes.add(inflated - compressed);
+    downstream.onComplete();
+  }
+
+  private void decode(final ByteBuffer buffer, final List<ByteBuffer> output)
+      throws ZipException {
+    var input = buffer;
+    while (input.hasRemaining()) {
+      switch (state) {
+        case HEADER:
+          input = readHeader(input);
+          break;
+        case BODY:
+          inflate(input, output);
+          break;
+        case TRAILER:
+          readTrailer(input);
+          break;
+        default:
+          // trailing garbage after the end of the compressed stream is ignored
+          input.position(input.limit());
+      }
+    }
+  }
+
+  /* returns the input left after the header, empty if the header is not complete yet. */
+  private ByteBuffer readHeader(final ByteBuffer input) throws ZipException {
+    if (!gzip) {
+      // servers send deflate bodies either zlib wrapped, as specified, or raw
+      var first = input.get(input.position()) & 0xff;
+      inflater = new Inflater((first & 0x0f) != 8);
+      state = State.BODY;
+      return input;
+    }
+    append(input);
+    var header = pending.toByteArray();
+    var size = gzipHeaderSize(header);
+    if (size < 0) {
+      return input;
+    }
+    pending.reset();
+    inflater = new Inflater(true);
+    state = State.BODY;
+    return ByteBuffer.wrap(header, size, header.length - size);
+  }
+
+  private void inflate(final ByteBuffer input, final List<ByteBuffer> output) throws ZipException {
+    inflater.setInput(input);
+    try {
+      while (true) {
+        var chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        var count = inflater.inflate(chunk);
+        if (count > 0) {
+          chunk.flip();
+          if (gzip) {
+            crc.update(chunk.duplicate());
+          }
+          inflated += count;
+          output.add(chunk);
+        }
+        if (inflater.finished()) {
+          state = gzip ? State.TRAILER : State.DONE;
+          return;
+        }
+        if (inflater.needsInput()) {
+          return;
+        }
+        if (count == 0 && inflater.needsDictionary()) {
+          throw new ZipException("preset dictionaries are not supported");
+        }
+      }
+    } catch (final DataFormatException exc) {
+      throw new ZipException(exc.getMessage());
+    }
+  }
+
+  private void readTrailer(final ByteBuffer input) throws ZipException {
+    var needed = GZIP_TRAILER_SIZE - pending.size();
+    var slice = input.duplicate();
+    slice.limit(slice.position() + Math.min(needed, input.remaining()));
+    input.position(slice.limit());
+    append(slice);
+    if (pending.size() < GZIP_TRAILER_SIZE) {
+      return;
+    }
+    var trailer = ByteBuffer.wrap(pending.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    if (trailer.getInt(0) != (int) crc.getValue() || trailer.getInt(4) != (int) inflated) {
+      throw new ZipException("corrupt gzip trailer");
+    }
+    pending.reset();
+    state = State.DONE;
+  }
+
+  private void append(final ByteBuffer input) {
+    while (input.hasRemaining()) {
+      pending.write(input.get());
+    }
+  }
+
+  /* the size of a complete gzip header, or -1 if more bytes are needed. */
+  private static int gzipHeaderSize(final byte[] header) throws ZipException {
+    if (header.length < GZIP_HEADER_SIZE) {
+      return -1;
+    }
+    if ((header[0] & 0xff | (header[1] & 0xff) << 8) != GZIP_MAGIC || header[2] != 8) {
+      throw new ZipException("not in gzip format");
+    }
+    var flags = header[3];
+    var size = GZIP_HEADER_SIZE;
+    if ((flags & FEXTRA) != 0) {
+      if (header.length < size + 2) {
+        return -1;
+      }
+      size += 2 + (header[size] & 0xff | (header[size + 1] & 0xff) << 8);
+    }
+    for (var flag : new int[] {FNAME, FCOMMENT}) {
+      if ((flags & flag) != 0) {
+        while (size < header.length && header[size] != 0) {
+          size++;
+        }
+        if (size++ >= header.length) {
+          return -1;
+        }
+      }
+    }
+    if ((flags & FHCRC) != 0) {
+      size += 2;
+    }
+    return size <= header.length ? size : -1;
+  }
+
+  private void fail(final ZipException exc) {
+    release();
+    failed = true;
+    subscription.cancel();
+    downstream.onError(exc);
+  }
+
+  private void release() {
+    if (Objects.nonNull(inflater)) {
+      inflater.end();
+      inflater = null;
+    }
+  }
+}
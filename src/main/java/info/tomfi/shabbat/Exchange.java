@@ -0,0 +1,66 @@
+package info.tomfi.shabbat;
+
+import java.net.http.HttpResponse;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/** Tracks the phases of a single http exchange and reports them to an {@link APIListener}. */
+final class Exchange {
+  private final APIListener listener;
+  private final APIRequest request;
+
+  private long mark;
+
+  Exchange(final APIListener listener, final APIRequest request) {
+    this.listener = listener;
+    this.request = request;
+    this.mark = System.nanoTime();
+    listener.onExchangeStart(request);
+  }
+
+  /**
+   * Report a phase as completed, the next phase starts now.
+   *
+   * @param phase the completed phase.
+   */
+  void phase(final APIListener.Phase phase) {
+    var now = System.nanoTime();
+    listener.onPhase(request, phase, now - mark);
+    mark = now;
+  }
+
+  void bytes(final long bytes) {
+    listener.onResponseBytes(request, bytes);
+  }
+
+  /**
+   * Wrap a body handler, completing the network phase when the response headers are received.
+   *
+   * @param handler the body handler to wrap.
+   * @return the wrapping body handler.
+   */
+  <T> HttpResponse.BodyHandler<T> handler(final HttpResponse.BodyHandler<T> handler) {
+    return responseInfo -> {
+      phase(APIListener.Phase.NETWORK);
+      return handler.apply(responseInfo);
+    };
+  }
+
+  /**
+   * Report the end of the exchange once the response completes.
+   *
+   * @param response the response future of the exchange.
+   * @return the same response future.
+   */
+  <T> CompletableFuture<T> track(final CompletableFuture<T> response) {
+    response.whenComplete(
+        (value, throwable) ->
+            listener.onExchangeEnd(
+                request,
+                throwable instanceof CompletionException && Objects.nonNull(throwable.getCause())
+                    ? throwable.getCause()
+                    : throwable));
+    return response;
+  }
+}
@@ -0,0 +1,89 @@
+package info.tomfi.shabbat;
+
+/**
+ * A count-min sketch of 4-bit counters used for estimating how often a key was accessed. The
+ * counters are periodically halved so the estimates favor recent popularity over old popularity.
+ */
+final class FrequencySketch {
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int MAX_COUNT = 15;
+
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private int additions;
+
+  /**
+   * Create a sketch sized for the expected number of tracked keys.
+   *
+   * @param expectedKeys the number of keys expected to be tracked.
+   */
+  FrequencySketch(final long expectedKeys) {
+    var capacity = (int) Math.min(Math.max(expectedKeys, 16), 1 << 26);
+    this.table = new long[Integer.highestOneBit(capacity - 1) << 1];
+    this.tableMask = this.table.length - 1;
+    this.sampleSize = 10 * capacity;
+  }
+
+  /**
+   * Get the estimated access frequency of a key.
+   *
+   * @param key the key to estimate.
+   * @return the estimated frequency, between 0 and 15.
+   */
+  int frequency(final Object key) {
+    var hash = key.hashCode();
+    var frequency = MAX_COUNT;
+    for (var depth = 0; depth < SEEDS.length; depth++) {
+      var slot = slot(hash, depth);
+      var count = (int) ((table[index(slot)] >>> shift(slot)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Record an access of a key, aging all counters once enough accesses were recorded.
+   *
+   * @param key the accessed key.
+   */
+  void increment(final Object key) {
+    var hash = key.hashCode();
+    var added = false;
+    for (var depth = 0; depth < SEEDS.length; depth++) {
+      var slot = slot(hash, depth);
+      var index = index(slot);
+      var shift = shift(slot);
+      if (((table[index] >>> shift) & 0xfL) < MAX_COUNT) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions == sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (var i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions /= 2;
+  }
+
+  private static long slot(final int hash, final int depth) {
+    var slot = (hash + SEEDS[depth]) * SEEDS[depth];
+    return slot ^ (slot >>> 29);
+  }
+
+  private int index(final long slot) {
+    return (int) (slot >>> 32) & tableMask;
+  }
+
+  private static int shift(final long slot) {
+    return (int) (slot & 0xfL) << 2;
+  }
+}
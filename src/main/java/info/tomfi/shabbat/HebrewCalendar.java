@@ -0,0 +1,404 @@
+package info.tomfi.shabbat;
+
+import java.util.Arrays;
+
+/**
+ * Hebrew calendar and weekly parasha schedule, for Israel and for the diaspora. The years of about
+ * 1900 to 2340 are precomputed into tables at class initialization, so looking up a day of these
+ * years is a constant time array access, other years are computed when looked up.
+ *
+ * <p>The calendar is the arithmetic calendar of Dershowitz and Reingold's Calendrical
+ * Calculations. The parasha schedule places the traditional anchors, Tzav before Pesach in common
+ * years, Bamidbar before Shavuot, Devarim before Tisha B'Av and Nitzavim before Rosh Hashana, and
+ * combines the pairs of portions needed for the remaining shabbatot to fit between the anchors.
+ */
+final class HebrewCalendar {
+  /* the hebrew months in the year order, starting at tishrei, with both adar months. */
+  static final int TISHREI = 0;
+  static final int CHESHVAN = 1;
+  static final int KISLEV = 2;
+  static final int TEVET = 3;
+  static final int SHVAT = 4;
+  static final int ADAR_I = 5;
+  static final int ADAR = 6;
+  static final int NISAN = 7;
+  static final int IYYAR = 8;
+  static final int SIVAN = 9;
+  static final int TAMUZ = 10;
+  static final int AV = 11;
+  static final int ELUL = 12;
+
+  private static final String[] MONTHS = {
+    "Tishrei", "Cheshvan", "Kislev", "Tevet", "Sh'vat", "Adar I", "Adar", "Nisan", "Iyyar",
+    "Sivan", "Tamuz", "Av", "Elul"
+  };
+  private static final String[] HEBREW_MONTHS = {
+    "תשרי", "חשון", "כסלו", "טבת", "שבט", "אדר א׳", "אדר", "ניסן", "אייר", "סיון", "תמוז", "אב",
+    "אלול"
+  };
+
+  private static final String[] PARASHIYOT = {
+    "Bereshit", "Noach", "Lech-Lecha", "Vayera", "Chayei Sara", "Toldot", "Vayetzei", "Vayishlach",
+    "Vayeshev", "Miketz", "Vayigash", "Vayechi", "Shemot", "Vaera", "Bo", "Beshalach", "Yitro",
+    "Mishpatim", "Terumah", "Tetzaveh", "Ki Tisa", "Vayakhel", "Pekudei", "Vayikra", "Tzav",
+    "Shmini", "Tazria", "Metzora", "Achrei Mot", "Kedoshim", "Emor", "Behar", "Bechukotai",
+    "Bamidbar", "Nasso", "Beha'alotcha", "Sh'lach", "Korach", "Chukat", "Balak", "Pinchas",
+    "Matot", "Masei", "Devarim", "Vaetchanan", "Eikev", "Re'eh", "Shoftim", "Ki Teitzei",
+    "Ki Tavo", "Nitzavim", "Vayeilech", "Ha'Azinu"
+  };
+  private static final String[] HEBREW_PARASHIYOT = {
+    "בראשית", "נח", "לך לך", "וירא", "חיי שרה", "תולדות", "ויצא", "וישלח", "וישב", "מקץ", "ויגש",
+    "ויחי", "שמות", "וארא", "בא", "בשלח", "יתרו", "משפטים", "תרומה", "תצוה", "כי תשא", "ויקהל",
+    "פקודי", "ויקרא", "צו", "שמיני", "תזריע", "מצורע", "אחרי מות", "קדושים", "אמור", "בהר",
+    "בחקתי", "במדבר", "נשא", "בהעלתך", "שלח לך", "קרח", "חקת", "בלק", "פינחס", "מטות", "מסעי",
+    "דברים", "ואתחנן", "עקב", "ראה", "שופטים", "כי תצא", "כי תבוא", "נצבים", "וילך", "האזינו"
+  };
+
+  // the portions a combined reading starts with, in the order they are combined when needed
+  private static final int VAYAKHEL = 21;
+  private static final int TZAV = 24;
+  private static final int TAZRIA = 26;
+  private static final int ACHREI_MOT = 28;
+  private static final int BEHAR = 31;
+  private static final int BAMIDBAR = 33;
+  private static final int CHUKAT = 38;
+  private static final int MATOT = 41;
+  private static final int DEVARIM = 43;
+  private static final int NITZAVIM = 50;
+  private static final int VAYEILECH = 51;
+  private static final int HAAZINU = 52;
+
+  // the days of the week, counted from sunday
+  private static final int MONDAY = 1;
+  private static final int TUESDAY = 2;
+  private static final int SATURDAY = 6;
+
+  /* a reading of a shabbat that is not a weekly portion, i.e. a festival. */
+  static final int NO_PARASHA = -1;
+  /* added to the first portion of a combined reading. */
+  private static final int COMBINED = 0x100;
+
+  // the epoch day of the fixed date 1 tishrei of year 1, as of Calendrical Calculations
+  private static final long EPOCH = -1373427 - 719163;
+  private static final double MEAN_YEAR = 365.2468;
+
+  private static final int FIRST_YEAR = 5660;
+  private static final int LAST_YEAR = 6100;
+  private static final Year[] YEARS = new Year[LAST_YEAR - FIRST_YEAR + 1];
+
+  static {
+    for (var year = FIRST_YEAR; year <= LAST_YEAR; year++) {
+      YEARS[year - FIRST_YEAR] = new Year(year);
+    }
+  }
+
+  private HebrewCalendar() {}
+
+  /**
+   * Get the hebrew year of a day.
+   *
+   * @param epochDay the gregorian day, counted from 1970-01-01.
+   * @return the hebrew year the day is in.
+   */
+  static Year yearOf(final long epochDay) {
+    var estimate = (int) Math.floor((epochDay - EPOCH) / MEAN_YEAR) + 1;
+    var year = year(estimate);
+    while (epochDay < year.start) {
+      year = year(year.number - 1);
+    }
+    while (epochDay >= year.start + year.length) {
+      year = year(year.number + 1);
+    }
+    return year;
+  }
+
+  /**
+   * Get a hebrew year, precomputed or computed if not in the tables range.
+   *
+   * @param number the hebrew year number.
+   * @return the hebrew year.
+   */
+  static Year year(final int number) {
+    return number >= FIRST_YEAR && number <= LAST_YEAR
+        ? YEARS[number - FIRST_YEAR]
+        : new Year(number);
+  }
+
+  /** A hebrew year, its months, and the weekly portions read on its shabbatot. */
+  static final class Year {
+    final int number;
+    final long start;
+    final int length;
+    final boolean leap;
+
+    // the first day of every month relative to the year start, and an absent adar i as -1
+    private final int[] monthStarts = new int[13];
+    // the readings of the shabbatot, from the first saturday of the year
+    private final long firstSaturday;
+    private final short[] israel;
+    private final short[] diaspora;
+
+    private Year(final int number) {
+      this.number = number;
+      this.start = newYear(number);
+      this.length = (int) (newYear(number + 1) - start);
+      this.leap = isLeap(number);
+
+      var lengths = new int[] {30, 29, 30, 29, 30, 30, 29, 30, 29, 30, 29, 30, 29};
+      if (length % 10 == 5) {
+        lengths[CHESHVAN] = 30;
+      } else if (length % 10 == 3) {
+        lengths[KISLEV] = 29;
+      }
+      var day = 0;
+      for (var month = TISHREI; month <= ELUL; month++) {
+        if (month == ADAR_I && !leap) {
+          monthStarts[month] = -1;
+          continue;
+        }
+        monthStarts[month] = day;
+        day += lengths[month];
+      }
+
+      firstSaturday = start + Math.floorMod(SATURDAY - dayOfWeek(start), 7);
+      israel = readings(true);
+      diaspora = readings(false);
+    }
+
+    /**
+     * Get the month of a day of this year.
+     *
+     * @param epochDay the day, counted from 1970-01-01.
+     * @return the month, one of the month constants.
+     */
+    int month(final long epochDay) {
+      var day = (int) (epochDay - start);
+      var month = ELUL;
+      while (monthStarts[month] < 0 || monthStarts[month] > day) {
+        month--;
+      }
+      return month;
+    }
+
+    /**
+     * Get the day of the month of a day of this year.
+     *
+     * @param epochDay the day, counted from 1970-01-01.
+     * @return the day of the month, starting at 1.
+     */
+    int dayOfMonth(final long epochDay) {
+      return (int) (epochDay - start) - monthStarts[month(epochDay)] + 1;
+    }
+
+    /**
+     * Get the month name, adar is adar ii in leap years.
+     *
+     * @param month one of the month constants.
+     * @param hebrew true for the name in hebrew.
+     * @return the month name.
+     */
+    String monthName(final int month, final boolean hebrew) {
+      if (month == ADAR && leap) {
+        return hebrew ? "אדר ב׳" : "Adar II";
+      }
+      return hebrew ? HEBREW_MONTHS[month] : MONTHS[month];
+    }
+
+    /**
+     * Get the hebrew date of a day of this year, i.e. 18 Tevet 5781.
+     *
+     * @param epochDay the day, counted from 1970-01-01.
+     * @return the hebrew date.
+     */
+    String date(final long epochDay) {
+      return dayOfMonth(epochDay) + " " + monthName(month(epochDay), false) + " " + number;
+    }
+
+    /**
+     * Get the month a day is rosh chodesh of, the first of a month or the thirtieth day of the
+     * month before it, rosh hashana is not rosh chodesh.
+     *
+     * @param epochDay the day, counted from 1970-01-01.
+     * @return the month the day is rosh chodesh of, or -1 if it is not rosh chodesh.
+     */
+    int roshChodesh(final long epochDay) {
+      var month = month(epochDay);
+      var day = dayOfMonth(epochDay);
+      if (day == 30) {
+        return month == ELUL ? -1 : nextMonth(month);
+      }
+      return day == 1 && month != TISHREI ? month : -1;
+    }
+
+    /**
+     * Get the reading of a shabbat of this year.
+     *
+     * @param saturday the saturday, counted from 1970-01-01.
+     * @param inIsrael true for the israel schedule, false for the diaspora schedule.
+     * @return the reading, or {@link #NO_PARASHA} for a festival or a day that is not a shabbat.
+     */
+    int reading(final long saturday, final boolean inIsrael) {
+      var offset = saturday - firstSaturday;
+      var readings = inIsrael ? israel : diaspora;
+      if (offset < 0 || offset % 7 != 0 || offset / 7 >= readings.length) {
+        return NO_PARASHA;
+      }
+      return readings[(int) (offset / 7)];
+    }
+
+    private int nextMonth(final int month) {
+      return month == SHVAT && !leap ? ADAR : month + 1;
+    }
+
+    private long day(final int month, final int dayOfMonth) {
+      return start + monthStarts[month] + dayOfMonth - 1;
+    }
+
+    private boolean isFestival(final long epochDay, final boolean inIsrael) {
+      var month = month(epochDay);
+      var day = dayOfMonth(epochDay);
+      var extra = inIsrael ? 0 : 1;
+      switch (month) {
+        case TISHREI:
+          return day <= 2 || day == 10 || day >= 15 && day <= 22 + extra;
+        case NISAN:
+          return day >= 15 && day <= 21 + extra;
+        case SIVAN:
+          return day >= 6 && day <= 6 + extra;
+        default:
+          return false;
+      }
+    }
+
+    /* the readings of the shabbatot of this year, for israel or the diaspora. */
+    private short[] readings(final boolean inIsrael) {
+      var readings = new short[(int) ((start + length - 1 - firstSaturday) / 7) + 1];
+      Arrays.fill(readings, (short) NO_PARASHA);
+      var slots = new int[readings.length];
+      var count = 0;
+      for (var week = 0; week < readings.length; week++) {
+        if (!isFestival(firstSaturday + week * 7L, inIsrael)) {
+          slots[count++] = week;
+        }
+      }
+
+      var slot = 0;
+      if (isVayeilechReadOnShabbatShuva(start)) {
+        readings[slots[slot++]] = VAYEILECH;
+      }
+      readings[slots[slot++]] = HAAZINU;
+
+      var vayeilech = !isVayeilechReadOnShabbatShuva(start + length);
+      var anchors = new long[] {day(NISAN, 15), day(SIVAN, 6), day(AV, 10), start + length};
+      var anchored = new int[] {TZAV, BAMIDBAR, DEVARIM, vayeilech ? VAYEILECH : NITZAVIM};
+
+      var portion = 0;
+      for (var anchor = 0; anchor < anchors.length; anchor++) {
+        if (leap && anchored[anchor] == TZAV) {
+          continue;
+        }
+        var last = lastSlotBefore(slots, count, anchors[anchor]);
+        var combinations = anchored[anchor] + 1 - portion - (last - slot + 1);
+        if (combinations < 0 && anchored[anchor] == BAMIDBAR) {
+          // israel is a shabbat ahead after a diaspora only festival shabbat of pesach, in leap
+          // years it reads bamidbar early and catches up at matot-masei
+          continue;
+        }
+        combine(readings, slots, slot, last, portion, anchored[anchor], combinations);
+        slot = last + 1;
+        portion = anchored[anchor] + 1;
+      }
+      return readings;
+    }
+
+    private int lastSlotBefore(final int[] slots, final int count, final long epochDay) {
+      var slot = count - 1;
+      while (firstSaturday + slots[slot] * 7L >= epochDay) {
+        slot--;
+      }
+      return slot;
+    }
+
+    /* assigns the portions to the slots, combining the pairs needed in their priority order. */
+    private void combine(
+        final short[] readings,
+        final int[] slots,
+        final int fromSlot,
+        final int toSlot,
+        final int fromPortion,
+        final int toPortion,
+        final int combinations) {
+      var combined = new boolean[HAAZINU + 1];
+      var needed = combinations;
+      for (var pair : new int[] {VAYAKHEL, TAZRIA, ACHREI_MOT, BEHAR, MATOT, CHUKAT, NITZAVIM}) {
+        if (needed > 0 && pair >= fromPortion && pair < toPortion) {
+          combined[pair] = true;
+          needed--;
+        }
+      }
+      if (needed != 0 || combinations < 0) {
+        throw new IllegalStateException(
+            "no parasha schedule for year " + number + " portion " + toPortion);
+      }
+      var slot = fromSlot;
+      for (var portion = fromPortion; portion <= toPortion; portion++) {
+        if (combined[portion]) {
+          readings[slots[slot++]] = (short) (portion | COMBINED);
+          portion++;
+        } else {
+          readings[slots[slot++]] = (short) portion;
+        }
+      }
+      if (slot != toSlot + 1) {
+        throw new IllegalStateException(
+            "no parasha schedule for year " + number + " portion " + toPortion);
+      }
+    }
+  }
+
+  /**
+   * Get the name of a reading.
+   *
+   * @param reading the reading, not {@link #NO_PARASHA}.
+   * @param hebrew true for the name in hebrew.
+   * @return the reading name, i.e. Vayakhel-Pekudei.
+   */
+  static String parashaName(final int reading, final boolean hebrew) {
+    var names = hebrew ? HEBREW_PARASHIYOT : PARASHIYOT;
+    var portion = reading & ~COMBINED;
+    return (reading & COMBINED) == 0
+        ? names[portion]
+        : names[portion] + (hebrew ? "־" : "-") + names[portion + 1];
+  }
+
+  /* vayeilech is read on shabbat shuva, unless there is no shabbat for ha'azinu before sukkot. */
+  private static boolean isVayeilechReadOnShabbatShuva(final long roshHashana) {
+    var day = dayOfWeek(roshHashana);
+    return day == MONDAY || day == TUESDAY;
+  }
+
+  /* the day of the week, 0 for sunday. */
+  private static int dayOfWeek(final long epochDay) {
+    // 1970-01-01 was a thursday
+    return Math.floorMod(epochDay + 4, 7);
+  }
+
+  private static boolean isLeap(final int year) {
+    return Math.floorMod(7L * year + 1, 19) < 7;
+  }
+
+  private static long elapsedDays(final int year) {
+    var months = Math.floorDiv(235L * year - 234, 19);
+    var parts = 12084 + 13753 * months;
+    var day = months * 29 + Math.floorDiv(parts, 25920);
+    return Math.floorMod(3 * (day + 1), 7) < 3 ? day + 1 : day;
+  }
+
+  private static long newYear(final int year) {
+    var previous = elapsedDays(year - 1);
+    var current = elapsedDays(year);
+    var next = elapsedDays(year + 1);
+    var correction = next - current == 356 ? 2 : current - previous == 382 ? 1 : 0;
+    return EPOCH + current + correction;
+  }
+}
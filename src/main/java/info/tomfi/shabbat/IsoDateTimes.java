@@ -0,0 +1,221 @@
+package info.tomfi.shabbat;
+
+/**
+ * Allocation free parsing of the ISO offset date times the API sends, i.e.
+ * 2021-01-01T16:06:00+02:00, straight from a character buffer. Date times in other forms are not
+ * matched, and should be parsed with {@link java.time.OffsetDateTime#parse(CharSequence)}. The
+ * formatting methods are the inverse, writing the same forms without a formatter.
+ */
+final class IsoDateTimes {
+  /* the epoch second of a date time not matched. */
+  static final long UNMATCHED = Long.MIN_VALUE;
+
+  private static final int DATE_TIME_LENGTH = 19;
+  private static final int SECONDS_PER_DAY = 86400;
+  private static final int DAYS_0000_TO_1970 = 719468;
+  private static final int DAYS_PER_ERA = 146097;
+
+  private IsoDateTimes() {}
+
+  /**
+   * Parse the epoch second of a date time.
+   *
+   * @param chars the buffer holding the date time.
+   * @param offset the offset of the date time in the buffer.
+   * @param length the length of the date time.
+   * @return the epoch second, or {@link #UNMATCHED} if the date time is not in the expected form.
+   */
+  static long epochSecond(final char[] chars, final int offset, final int length) {
+    var zone = offsetSeconds(chars, offset, length);
+    if (zone == Integer.MIN_VALUE
+        || chars[offset + 4] != '-'
+        || chars[offset + 7] != '-'
+        || chars[offset + 10] != 'T'
+        || chars[offset + 13] != ':'
+        || chars[offset + 16] != ':') {
+      return UNMATCHED;
+    }
+    var year = digits(chars, offset, 4);
+    var month = digits(chars, offset + 5, 2);
+    var day = digits(chars, offset + 8, 2);
+    var hour = digits(chars, offset + 11, 2);
+    var minute = digits(chars, offset + 14, 2);
+    var second = digits(chars, offset + 17, 2);
+    if (year < 0
+        || month < 1
+        || month > 12
+        || day < 1
+        || day > daysInMonth(year, month)
+        || hour < 0
+        || hour > 23
+        || minute < 0
+        || minute > 59
+        || second < 0
+        || second > 59) {
+      return UNMATCHED;
+    }
+    return epochDay(year, month, day) * SECONDS_PER_DAY
+        + hour * 3600
+        + minute * 60
+        + second
+        - zone;
+  }
+
+  /**
+   * Parse the zone offset of a date time.
+   *
+   * @param chars the buffer holding the date time.
+   * @param offset the offset of the date time in the buffer.
+   * @param length the length of the date time.
+   * @return the total offset seconds, or {@link Integer#MIN_VALUE} if the offset is not in the
+   *     expected form.
+   */
+  static int offsetSeconds(final char[] chars, final int offset, final int length) {
+    if (length == DATE_TIME_LENGTH + 1 && chars[offset + DATE_TIME_LENGTH] == 'Z') {
+      return 0;
+    }
+    if (length != DATE_TIME_LENGTH + 6 || chars[offset + DATE_TIME_LENGTH + 3] != ':') {
+      return Integer.MIN_VALUE;
+    }
+    var sign = chars[offset + DATE_TIME_LENGTH];
+    var hours = digits(chars, offset + DATE_TIME_LENGTH + 1, 2);
+    var minutes = digits(chars, offset + DATE_TIME_LENGTH + 4, 2);
+    if (sign != '+' && sign != '-' || hours < 0 || hours > 18 || minutes < 0 || minutes > 59) {
+      return Integer.MIN_VALUE;
+    }
+    var seconds = hours * 3600 + minutes * 60;
+    return sign == '-' ? -seconds : seconds;
+  }
+
+  /* the value of a run of decimal digits, or -1 if a character is not a digit. */
+  private static int digits(final char[] chars, final int offset, final int count) {
+    var value = 0;
+    for (var i = offset; i < offset + count; i++) {
+      var digit = chars[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static int daysInMonth(final int year, final int month) {
+    if (month == 2) {
+      return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  /* days since the epoch of a proleptic gregorian date, with the years starting in march. */
+  private static long epochDay(final int year, final int month, final int day) {
+    var y = month <= 2 ? year - 1 : year;
+    var era = y / 400;
+    var yearOfEra = y - era * 400;
+    var dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    var dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return (long) era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+  }
+
+  /**
+   * Format a date, i.e. 2021-01-01.
+   *
+   * @param epochDay the day, counted from 1970-01-01.
+   * @return the formatted date, or null if the year is not of four digits.
+   */
+  static String formatDate(final long epochDay) {
+    var chars = new char[10];
+    return date(chars, epochDay) ? new String(chars) : null;
+  }
+
+  /**
+   * Format a date time with its offset, i.e. 2021-01-01T16:06:00+02:00.
+   *
+   * @param epochSecond the epoch second of the date time.
+   * @param offsetSeconds the total offset seconds, of whole minutes.
+   * @return the formatted date time, or null if it has no form the parsing matches.
+   */
+  static String formatDateTime(final long epochSecond, final int offsetSeconds) {
+    if (offsetSeconds % 60 != 0 || Math.abs(offsetSeconds) > 18 * 3600) {
+      return null;
+    }
+    var local = epochSecond + offsetSeconds;
+    var chars = new char[offsetSeconds == 0 ? DATE_TIME_LENGTH + 1 : DATE_TIME_LENGTH + 6];
+    if (!dateTime(chars, local)) {
+      return null;
+    }
+    if (offsetSeconds == 0) {
+      chars[DATE_TIME_LENGTH] = 'Z';
+    } else {
+      var minutes = Math.abs(offsetSeconds) / 60;
+      chars[DATE_TIME_LENGTH] = offsetSeconds < 0 ? '-' : '+';
+      put(chars, DATE_TIME_LENGTH + 1, minutes / 60, 2);
+      chars[DATE_TIME_LENGTH + 3] = ':';
+      put(chars, DATE_TIME_LENGTH + 4, minutes % 60, 2);
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Format a utc instant with milliseconds, i.e. 2022-10-23T06:37:49.996Z.
+   *
+   * @param epochMilli the epoch millisecond of the instant.
+   * @return the formatted instant, or null if the year is not of four digits.
+   */
+  static String formatInstant(final long epochMilli) {
+    var chars = new char[DATE_TIME_LENGTH + 5];
+    if (!dateTime(chars, Math.floorDiv(epochMilli, 1000))) {
+      return null;
+    }
+    chars[DATE_TIME_LENGTH] = '.';
+    put(chars, DATE_TIME_LENGTH + 1, Math.floorMod(epochMilli, 1000), 3);
+    chars[DATE_TIME_LENGTH + 4] = 'Z';
+    return new String(chars);
+  }
+
+  /* writes the local date time of an epoch second, false if the year is not of four digits. */
+  private static boolean dateTime(final char[] chars, final long localSecond) {
+    if (!date(chars, Math.floorDiv(localSecond, SECONDS_PER_DAY))) {
+      return false;
+    }
+    var secondOfDay = Math.floorMod(localSecond, SECONDS_PER_DAY);
+    chars[10] = 'T';
+    put(chars, 11, secondOfDay / 3600, 2);
+    chars[13] = ':';
+    put(chars, 14, secondOfDay / 60 % 60, 2);
+    chars[16] = ':';
+    put(chars, 17, secondOfDay % 60, 2);
+    return true;
+  }
+
+  /* writes the date of an epoch day, the inverse of epochDay. */
+  private static boolean date(final char[] chars, final long epochDay) {
+    var days = epochDay + DAYS_0000_TO_1970;
+    var era = Math.floorDiv(days, DAYS_PER_ERA);
+    var dayOfEra = (int) (days - era * DAYS_PER_ERA);
+    var yearOfEra =
+        (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / (DAYS_PER_ERA - 1)) / 365;
+    var dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    var shiftedMonth = (5 * dayOfYear + 2) / 153;
+    var day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+    var month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    var year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    if (year < 0 || year > 9999) {
+      return false;
+    }
+    put(chars, 0, (int) year, 4);
+    chars[4] = '-';
+    put(chars, 5, month, 2);
+    chars[7] = '-';
+    put(chars, 8, day, 2);
+    return true;
+  }
+
+  private static void put(final char[] chars, final int offset, final int value, final int count) {
+    var remaining = value;
+    for (var i = offset + count - 1; i >= offset; i--) {
+      chars[i] = (char) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+  }
+}
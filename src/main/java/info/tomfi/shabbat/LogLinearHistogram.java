@@ -0,0 +1,118 @@
+package info.tomfi.shabbat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non negative values with log-linear buckets. Every power of two range is
+ * split into four linear sub buckets, so a recorded value is off by at most 25% of its bucket
+ * bound. Buckets are upper inclusive, matching the Prometheus bucket semantics. Recording does not
+ * allocate.
+ */
+final class LogLinearHistogram {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final int minExponent;
+  private final int maxExponent;
+  private final AtomicLongArray counts;
+  private final LongAdder sum = new LongAdder();
+
+  /**
+   * Create a histogram with buckets between two powers of two.
+   *
+   * @param minExponent the exponent of the first bucket bound, values up to it share a bucket.
+   * @param maxExponent the exponent of the last bucket bound, values above it are overflowing.
+   */
+  LogLinearHistogram(final int minExponent, final int maxExponent) {
+    if (minExponent < SUB_BUCKET_BITS || maxExponent <= minExponent || maxExponent > 62) {
+      throw new IllegalArgumentException("invalid histogram exponents");
+    }
+    this.minExponent = minExponent;
+    this.maxExponent = maxExponent;
+    // the first bucket, the linear buckets, and the overflow bucket
+    this.counts = new AtomicLongArray(2 + (maxExponent - minExponent) * SUB_BUCKETS);
+  }
+
+  void record(final long value) {
+    var clamped = Math.max(0, value);
+    counts.incrementAndGet(index(clamped));
+    sum.add(clamped);
+  }
+
+  /**
+   * Get the number of buckets, including the overflow bucket.
+   *
+   * @return the bucket count.
+   */
+  int buckets() {
+    return counts.length();
+  }
+
+  /**
+   * Get the inclusive upper bound of a bucket.
+   *
+   * @param index the bucket index.
+   * @return the bucket bound, or {@link Long#MAX_VALUE} for the overflow bucket.
+   */
+  long bound(final int index) {
+    if (index == 0) {
+      return 1L << minExponent;
+    }
+    if (index == counts.length() - 1) {
+      return Long.MAX_VALUE;
+    }
+    var exponent = minExponent + (index - 1) / SUB_BUCKETS;
+    var subBucket = (index - 1) % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  long count(final int index) {
+    return counts.get(index);
+  }
+
+  long sum() {
+    return sum.sum();
+  }
+
+  /**
+   * Get the approximate value at a percentile, the bound of the bucket the percentile falls in.
+   *
+   * @param percentile the percentile, between 0 and 100.
+   * @return the value at the percentile, or 0 if no values were recorded.
+   */
+  long valueAt(final double percentile) {
+    var snapshot = new long[counts.length()];
+    long total = 0;
+    for (var i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    var rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+    long seen = 0;
+    for (var i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return bound(i);
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /* bucket ranges are upper inclusive, a value falls in the bucket v - 1 falls in exclusively. */
+  private int index(final long value) {
+    var shifted = value - 1;
+    if (shifted < 1L << minExponent) {
+      return 0;
+    }
+    var exponent = 63 - Long.numberOfLeadingZeros(shifted);
+    if (exponent >= maxExponent) {
+      return counts.length() - 1;
+    }
+    var subBucket = (int) (shifted >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return 1 + (exponent - minExponent) * SUB_BUCKETS + subBucket;
+  }
+}
@@ -0,0 +1,195 @@
+package info.tomfi.shabbat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link APIListener} recording the API exchanges in lock-free histograms and counters, rendered
+ * in the Prometheus text exposition format. Recording an exchange does not allocate, except for
+ * the first failure of every exception type. An instance can be shared between API instances.
+ */
+public final class PrometheusMetrics implements APIListener {
+  private static final double NANOS_PER_SECOND = 1e9;
+  private static final APIListener.Phase[] PHASES = APIListener.Phase.values();
+
+  private final String prefix;
+  private final LogLinearHistogram[] phases = new LogLinearHistogram[PHASES.length];
+  private final LogLinearHistogram bytes = new LogLinearHistogram(6, 26);
+  private final LongAdder inFlight = new LongAdder();
+  private final LongAdder exchanges = new LongAdder();
+  private final Map<Class<?>, LongAdder> errors = new ConcurrentHashMap<>();
+
+  /** Create metrics named with the shabbat_api prefix. */
+  public PrometheusMetrics() {
+    this("shabbat_api");
+  }
+
+  /**
+   * Create metrics named with a prefix.
+   *
+   * @param prefix the metric names prefix.
+   */
+  public PrometheusMetrics(final String prefix) {
+    Objects.requireNonNull(prefix, "Null prefix");
+    if (!prefix.matches("[a-zA-Z_:][a-zA-Z0-9_:]*")) {
+      throw new IllegalArgumentException("prefix should be a valid metric name");
+    }
+    this.prefix = prefix;
+    for (var i = 0; i < phases.length; i++) {
+      // from about a microsecond up to about 68 seconds
+      phases[i] = new LogLinearHistogram(10, 36);
+    }
+  }
+
+  @Override
+  public void onExchangeStart(final APIRequest request) {
+    inFlight.increment();
+    exchanges.increment();
+  }
+
+  @Override
+  public void onPhase(final APIRequest request, final Phase phase, final long nanos) {
+    phases[phase.ordinal()].record(nanos);
+  }
+
+  @Override
+  public void onResponseBytes(final APIRequest request, final long bytes) {
+    this.bytes.record(bytes);
+  }
+
+  @Override
+  public void onExchangeEnd(final APIRequest request, final Throwable failure) {
+    inFlight.decrement();
+    if (Objects.nonNull(failure)) {
+      errors.computeIfAbsent(failure.getClass(), type -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * Get the number of exchanges in flight.
+   *
+   * @return the in flight count.
+   */
+  public long inFlight() {
+    return inFlight.sum();
+  }
+
+  /**
+   * Get the approximate duration of a phase at a percentile, i.e. the 95th percentile of the
+   * network phase as the hedge delay of a {@link ResiliencePolicy}.
+   *
+   * @param phase the phase.
+   * @param percentile the percentile, between 0 and 100.
+   * @return the phase duration at the percentile, or zero if the phase was never recorded.
+   */
+  public Duration percentile(final Phase phase, final double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile should be between 0 and 100");
+    }
+    return Duration.ofNanos(phases[phase.ordinal()].valueAt(percentile));
+  }
+
+  /**
+   * Render the metrics in the Prometheus text exposition format.
+   *
+   * @param out the appendable to render to.
+   * @throws IOException when failed to append.
+   */
+  public void writeTo(final Appendable out) throws IOException {
+    var phaseMetric = prefix + "_phase_seconds";
+    header(out, phaseMetric, "histogram", "Duration of the API exchange phases.");
+    for (var phase : PHASES) {
+      var label = "phase=\"" + phase.name().toLowerCase(Locale.ROOT) + "\"";
+      histogram(out, phaseMetric, label, phases[phase.ordinal()], NANOS_PER_SECOND);
+    }
+
+    var bytesMetric = prefix + "_response_bytes";
+    header(out, bytesMetric, "histogram", "Size of the API response bodies.");
+    histogram(out, bytesMetric, null, bytes, 1);
+
+    var inFlightMetric = prefix + "_in_flight_exchanges";
+    header(out, inFlightMetric, "gauge", "Number of API exchanges in flight.");
+    sample(out, inFlightMetric, null, inFlight.sum());
+
+    var exchangesMetric = prefix + "_exchanges_total";
+    header(out, exchangesMetric, "counter", "Number of API exchanges started.");
+    sample(out, exchangesMetric, null, exchanges.sum());
+
+    var errorsMetric = prefix + "_errors_total";
+    header(out, errorsMetric, "counter", "Number of failed API exchanges by exception type.");
+    for (var error : errors.entrySet()) {
+      var label = "type=\"" + error.getKey().getName() + "\"";
+      sample(out, errorsMetric, label, error.getValue().sum());
+    }
+  }
+
+  /**
+   * Render the metrics in the Prometheus text exposition format.
+   *
+   * @return the rendered metrics.
+   */
+  public String scrape() {
+    var out = new StringBuilder(16384);
+    try {
+      writeTo(out);
+    } catch (final IOException ioe) {
+      // appending to a StringBuilder does not throw
+      throw new UncheckedIOException(ioe);
+    }
+    return out.toString();
+  }
+
+  private static void header(
+      final Appendable out, final String name, final String type, final String help)
+      throws IOException {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  /* cumulative buckets, the bucket bounds are scaled down by the unit. */
+  private static void histogram(
+      final Appendable out,
+      final String name,
+      final String label,
+      final LogLinearHistogram histogram,
+      final double unit)
+      throws IOException {
+    var prefix = Objects.isNull(label) ? "" : label + ",";
+    long cumulative = 0;
+    for (var i = 0; i < histogram.buckets(); i++) {
+      cumulative += histogram.count(i);
+      var bound = histogram.bound(i);
+      out.append(name).append("_bucket{").append(prefix).append("le=\"");
+      if (bound == Long.MAX_VALUE) {
+        out.append("+Inf");
+      } else if (unit == 1) {
+        out.append(Long.toString(bound));
+      } else {
+        out.append(Double.toString(bound / unit));
+      }
+      out.append("\"} ").append(Long.toString(cumulative)).append('\n');
+    }
+    out.append(name).append("_sum");
+    if (Objects.nonNull(label)) {
+      out.append('{').append(label).append('}');
+    }
+    out.append(' ').append(Double.toString(histogram.sum() / unit)).append('\n');
+    sample(out, name + "_count", label, cumulative);
+  }
+
+  private static void sample(
+      final Appendable out, final String name, final String label, final long value)
+      throws IOException {
+    out.append(name);
+    if (Objects.nonNull(label)) {
+      out.append('{').append(label).append('}');
+    }
+    out.append(' ').append(Long.toString(value)).append('\n');
+  }
+}
@@ -0,0 +1,15 @@
+package info.tomfi.shabbat;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a call is not sent because the {@link RateLimiter} would delay it longer
+ * than its maximum wait.
+ */
+public final class RateLimitedException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  RateLimitedException() {
+    super("rate limiter maximum wait exceeded");
+  }
+}
@@ -0,0 +1,300 @@
+package info.tomfi.shabbat;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Token bucket rate limiter keeping the API calls under a rate, with a burst of calls allowed
+ * right away. The bucket is kept as a single theoretical arrival time updated lock-free, every
+ * call reserves the next permit and a call over the rate is delayed asynchronously, without
+ * blocking a thread, until its permit is due. Permits are reserved in the order the calls arrive,
+ * and delayed calls are launched in the order of their permits by a single timer thread shared by
+ * all rate limiters, so no caller can starve the others. The bucket runs on the monotonic {@link
+ * System#nanoTime()}, wall clock adjustments do not affect it. If a maximum wait is set, a call
+ * whose permit is due later fails fast with a {@link RateLimitedException}. A rate limiter can be
+ * shared between API instances calling the same endpoint.
+ */
+public final class RateLimiter {
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+  private static final ScheduledThreadPoolExecutor TIMER = timer();
+
+  private final long interval;
+  private final long tolerance;
+  private final long maximumWait;
+  private final LongSupplier ticker;
+  private final AtomicLong theoreticalArrival;
+
+  private final LongAdder queued = new LongAdder();
+  private final LongAdder acquired = new LongAdder();
+  private final LongAdder delayed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  // from about a microsecond up to about 68 seconds
+  private final LogLinearHistogram waits = new LogLinearHistogram(10, 36);
+
+  private RateLimiter(final Builder builder) {
+    this.interval = Math.max(1, Math.round(NANOS_PER_SECOND / builder.requestsPerSecond));
+    this.tolerance = interval * builder.burst;
+    this.maximumWait =
+        Objects.isNull(builder.maximumWait) ? Long.MAX_VALUE : builder.maximumWait.toNanos();
+    this.ticker = builder.ticker;
+    this.theoreticalArrival = new AtomicLong(ticker.getAsLong());
+  }
+
+  /** Immutable snapshot of the rate limiter counters. */
+  public static final class Stats {
+    private final long queueDepth;
+    private final long acquiredCount;
+    private final long delayedCount;
+    private final long rejectedCount;
+
+    private Stats(
+        final long queueDepth,
+        final long acquiredCount,
+        final long delayedCount,
+        final long rejectedCount) {
+      this.queueDepth = queueDepth;
+      this.acquiredCount = acquiredCount;
+      this.delayedCount = delayedCount;
+      this.rejectedCount = rejectedCount;
+    }
+
+    /**
+     * Get the number of calls waiting for their permit.
+     *
+     * @return the queue depth.
+     */
+    public long queueDepth() {
+      return this.queueDepth;
+    }
+
+    /**
+     * Get the number of calls a permit was reserved for, either right away or delayed.
+     *
+     * @return the acquired count.
+     */
+    public long acquiredCount() {
+      return this.acquiredCount;
+    }
+
+    /**
+     * Get the number of calls delayed until their permit was due.
+     *
+     * @return the delayed count.
+     */
+    public long delayedCount() {
+      return this.delayedCount;
+    }
+
+    /**
+     * Get the number of calls failed with a {@link RateLimitedException} for exceeding the maximum
+     * wait.
+     *
+     * @return the rejected count.
+     */
+    public long rejectedCount() {
+      return this.rejectedCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Stats{queueDepth=%d, acquired=%d, delayed=%d, rejected=%d}",
+          this.queueDepth, this.acquiredCount, this.delayedCount, this.rejectedCount);
+    }
+  }
+
+  /**
+   * Get a snapshot of the rate limiter counters.
+   *
+   * @return the current stats.
+   */
+  public Stats stats() {
+    return new Stats(queued.sum(), acquired.sum(), delayed.sum(), rejected.sum());
+  }
+
+  /**
+   * Get the approximate time calls waited for their permit at a percentile, calls sent right away
+   * are recorded as not waiting.
+   *
+   * @param percentile the percentile, between 0 and 100.
+   * @return the wait time at the percentile, or zero if no permit was acquired.
+   */
+  public Duration waitTime(final double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile should be between 0 and 100");
+    }
+    return Duration.ofNanos(waits.valueAt(percentile));
+  }
+
+  /**
+   * Invoke a call once its permit is due.
+   *
+   * @param sender the supplier starting the call.
+   * @return the call future, or a future failed with a {@link RateLimitedException}.
+   */
+  <T> CompletableFuture<T> call(final Supplier<CompletableFuture<T>> sender) {
+    var now = ticker.getAsLong();
+    long previous;
+    long reserved;
+    long wait;
+    do {
+      previous = theoreticalArrival.get();
+      reserved = Math.max(previous, now) + interval;
+      wait = reserved - tolerance - now;
+      if (wait > maximumWait) {
+        rejected.increment();
+        return CompletableFuture.failedFuture(new RateLimitedException());
+      }
+    } while (!theoreticalArrival.compareAndSet(previous, reserved));
+    acquired.increment();
+    if (wait <= 0) {
+      waits.record(0);
+      // the call itself is returned so cancelling it reaches the http client
+      return launch(sender);
+    }
+    waits.record(wait);
+    delayed.increment();
+    queued.increment();
+    return delay(sender, reserved, wait);
+  }
+
+  /* a call cancelled while waiting gives its permit back, unless a later one was reserved. */
+  private <T> CompletableFuture<T> delay(
+      final Supplier<CompletableFuture<T>> sender, final long reserved, final long wait) {
+    var result = new CompletableFuture<T>();
+    var waiting = new AtomicBoolean(true);
+    var task =
+        TIMER.schedule(
+            () -> {
+              if (!waiting.compareAndSet(true, false)) {
+                return;
+              }
+              queued.decrement();
+              var call = launch(sender);
+              call.whenComplete(
+                  (value, throwable) -> {
+                    if (Objects.isNull(throwable)) {
+                      result.complete(value);
+                    } else {
+                      result.completeExceptionally(throwable);
+                    }
+                  });
+              result.whenComplete(
+                  (value, throwable) -> {
+                    if (result.isCancelled()) {
+                      call.cancel(true);
+                    }
+                  });
+            },
+            wait,
+            TimeUnit.NANOSECONDS);
+    result.whenComplete(
+        (value, throwable) -> {
+          if (waiting.compareAndSet(true, false)) {
+            task.cancel(false);
+            queued.decrement();
+            theoreticalArrival.compareAndSet(reserved, reserved - interval);
+          }
+        });
+    return result;
+  }
+
+  /* the timer only starts calls, which are asynchronous, so a single daemon thread suffices. */
+  private static ScheduledThreadPoolExecutor timer() {
+    var timer =
+        new ScheduledThreadPoolExecutor(
+            1,
+            runnable -> {
+              var thread = new Thread(runnable, "shabbat-api-rate-limiter");
+              thread.setDaemon(true);
+              return thread;
+            });
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
+  private static <T> CompletableFuture<T> launch(final Supplier<CompletableFuture<T>> sender) {
+    try {
+      return sender.get();
+    } catch (final RuntimeException exc) {
+      return CompletableFuture.failedFuture(exc);
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builder class for {@link RateLimiter}, one request per second with no burst and no maximum
+   * wait by default.
+   */
+  public static final class Builder {
+    private double requestsPerSecond = 1;
+    private int burst = 1;
+    private Duration maximumWait;
+    private LongSupplier ticker = System::nanoTime;
+
+    /**
+     * Set the sustained rate of the calls.
+     *
+     * @param requestsPerSecond the number of requests per second, i.e. 0.5 for a request every
+     *     two seconds.
+     * @return the fluent builder instance.
+     */
+    public Builder withRequestsPerSecond(final double requestsPerSecond) {
+      if (!(requestsPerSecond > 0) || Double.isInfinite(requestsPerSecond)) {
+        throw new IllegalArgumentException("requests per second should be a positive number");
+      }
+      this.requestsPerSecond = requestsPerSecond;
+      return this;
+    }
+
+    /**
+     * Set the number of calls sent right away after an idle period, before the rate applies.
+     *
+     * @param burst the burst capacity, 1 by default.
+     * @return the fluent builder instance.
+     */
+    public Builder withBurst(final int burst) {
+      if (burst <= 0) {
+        throw new IllegalArgumentException("burst should be a positive integer");
+      }
+      this.burst = burst;
+      return this;
+    }
+
+    /**
+     * Fail calls fast with a {@link RateLimitedException} instead of delaying them longer than a
+     * maximum wait. A zero maximum wait fails every call exceeding the burst.
+     *
+     * @param maximumWait the maximum wait for a permit.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaximumWait(final Duration maximumWait) {
+      Objects.requireNonNull(maximumWait, "Null maximumWait");
+      if (maximumWait.isNegative()) {
+        throw new IllegalArgumentException("maximum wait should be a non negative duration");
+      }
+      this.maximumWait = maximumWait;
+      return this;
+    }
+
+    Builder withTicker(final LongSupplier ticker) {
+      this.ticker = Objects.requireNonNull(ticker, "Null ticker");
+      return this;
+    }
+
+    public RateLimiter build() {
+      return new RateLimiter(this);
+    }
+  }
+}
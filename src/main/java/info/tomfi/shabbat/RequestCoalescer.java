@@ -0,0 +1,58 @@
+package info.tomfi.shabbat;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Share a single in-flight call between callers sending equal requests. Every caller receives its
+ * own dependent future, so cancelling it does not cancel the shared call for the other callers.
+ */
+final class RequestCoalescer<T> {
+  private final ConcurrentMap<APIRequest, CompletableFuture<T>> inFlight =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Join an in-flight call for an equal request, or start a new one.
+   *
+   * @param request the request to send.
+   * @param sender the function starting the call if none is in flight.
+   * @return a future completed with the shared call's outcome.
+   */
+  CompletableFuture<T> send(
+      final APIRequest request, final Function<APIRequest, CompletableFuture<T>> sender) {
+    var shared = new CompletableFuture<T>();
+    var existing = inFlight.putIfAbsent(request, shared);
+    if (Objects.nonNull(existing)) {
+      return existing.copy();
+    }
+    try {
+      sender
+          .apply(request)
+          .whenComplete(
+              (response, throwable) -> {
+                inFlight.remove(request, shared);
+                if (Objects.nonNull(throwable)) {
+                  shared.completeExceptionally(throwable);
+                } else {
+                  shared.complete(response);
+                }
+              });
+    } catch (final RuntimeException exc) {
+      inFlight.remove(request, shared);
+      shared.completeExceptionally(exc);
+    }
+    return shared.copy();
+  }
+
+  /**
+   * Get the number of distinct requests currently in flight.
+   *
+   * @return the in-flight count.
+   */
+  int inFlightCount() {
+    return inFlight.size();
+  }
+}
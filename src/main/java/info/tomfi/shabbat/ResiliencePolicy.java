@@ -0,0 +1,315 @@
+package info.tomfi.shabbat;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Policy for retrying failed API calls and hedging slow ones. Calls failing with an I/O error, a
+ * server error status, or a too many requests status are retried after a jittered exponential
+ * backoff. If a hedge delay is set, a duplicate call is sent when the first one is not completed
+ * within the delay, the first call to succeed is used and the other one is cancelled. Cancelling
+ * the result of a call cancels the calls in flight and the pending retries. A policy can be shared
+ * between API instances, its counters are aggregated across all of them.
+ */
+public final class ResiliencePolicy {
+  private final int maximumRetries;
+  private final long initialBackoff;
+  private final long maximumBackoff;
+  private final Duration hedgeDelay;
+
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder hedges = new LongAdder();
+  private final LongAdder hedgeWins = new LongAdder();
+
+  private ResiliencePolicy(final Builder builder) {
+    this.maximumRetries = builder.maximumRetries;
+    this.initialBackoff = builder.initialBackoff.toMillis();
+    this.maximumBackoff = builder.maximumBackoff.toMillis();
+    this.hedgeDelay = builder.hedgeDelay;
+  }
+
+  /** Immutable snapshot of the policy counters. */
+  public static final class Stats {
+    private final long retryCount;
+    private final long hedgeCount;
+    private final long hedgeWinCount;
+
+    private Stats(final long retryCount, final long hedgeCount, final long hedgeWinCount) {
+      this.retryCount = retryCount;
+      this.hedgeCount = hedgeCount;
+      this.hedgeWinCount = hedgeWinCount;
+    }
+
+    public long retryCount() {
+      return this.retryCount;
+    }
+
+    public long hedgeCount() {
+      return this.hedgeCount;
+    }
+
+    public long hedgeWinCount() {
+      return this.hedgeWinCount;
+    }
+
+    /**
+     * Get the ratio of hedged calls in which the hedge completed before the original call.
+     *
+     * @return the hedge win rate, or 0.0 if no calls were hedged.
+     */
+    public double hedgeWinRate() {
+      return this.hedgeCount == 0 ? 0.0 : (double) this.hedgeWinCount / this.hedgeCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Stats{retries=%d, hedges=%d, hedgeWins=%d}",
+          this.retryCount, this.hedgeCount, this.hedgeWinCount);
+    }
+  }
+
+  /**
+   * Get a snapshot of the policy counters.
+   *
+   * @return the current stats.
+   */
+  public Stats stats() {
+    return new Stats(retries.sum(), hedges.sum(), hedgeWins.sum());
+  }
+
+  /**
+   * Invoke a call under this policy.
+   *
+   * @param sender the supplier starting a single call, invoked once per attempt or hedge.
+   * @return the result of the first successful call, or the failure of the last attempt.
+   */
+  <T> CompletableFuture<T> call(final Supplier<CompletableFuture<T>> sender) {
+    var result = new CompletableFuture<T>();
+    attempt(sender, 0, result);
+    return result;
+  }
+
+  private <T> void attempt(
+      final Supplier<CompletableFuture<T>> sender,
+      final int retry,
+      final CompletableFuture<T> result) {
+    if (result.isDone()) {
+      // cancelled while backing off
+      return;
+    }
+    var call = Objects.isNull(hedgeDelay) ? launch(sender) : new Hedge<>(sender).start();
+    result.whenComplete(
+        (value, throwable) -> {
+          if (result.isCancelled()) {
+            call.cancel(true);
+          }
+        });
+    call.whenComplete(
+        (value, throwable) -> {
+          if (Objects.isNull(throwable)) {
+            result.complete(value);
+            return;
+          }
+          var cause = unwrap(throwable);
+          if (retry >= maximumRetries || !isRetryable(cause) || result.isDone()) {
+            result.completeExceptionally(cause);
+            return;
+          }
+          retries.increment();
+          CompletableFuture.delayedExecutor(backoff(retry), TimeUnit.MILLISECONDS)
+              .execute(() -> attempt(sender, retry + 1, result));
+        });
+  }
+
+  /* full jitter, a random delay between zero and the exponential backoff cap. */
+  private long backoff(final int retry) {
+    var cap = initialBackoff << Math.min(retry, 30);
+    if (cap <= 0 || cap > maximumBackoff) {
+      cap = maximumBackoff;
+    }
+    return ThreadLocalRandom.current().nextLong(cap + 1);
+  }
+
+  static boolean isRetryable(final Throwable cause) {
+    if (cause instanceof APIStatusException) {
+      var status = ((APIStatusException) cause).statusCode();
+      return status >= 500 || status == 429;
+    }
+    // a malformed body is not expected to be fixed by sending the request again
+    return cause instanceof IOException
+        && !(cause instanceof JsonProcessingException)
+        && !(cause instanceof CircuitOpenException)
+        && !(cause instanceof RateLimitedException);
+  }
+
+  private static <T> CompletableFuture<T> launch(final Supplier<CompletableFuture<T>> sender) {
+    try {
+      return sender.get();
+    } catch (final RuntimeException exc) {
+      return CompletableFuture.failedFuture(exc);
+    }
+  }
+
+  private static Throwable unwrap(final Throwable throwable) {
+    if (throwable instanceof CompletionException && Objects.nonNull(throwable.getCause())) {
+      return throwable.getCause();
+    }
+    return throwable;
+  }
+
+  /* a single attempt racing the original call with a hedge sent after the hedge delay. */
+  private final class Hedge<T> {
+    private final Supplier<CompletableFuture<T>> sender;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    private CompletableFuture<T> original;
+    private CompletableFuture<T> hedge;
+    private int pending;
+
+    private Hedge(final Supplier<CompletableFuture<T>> sender) {
+      this.sender = sender;
+    }
+
+    private synchronized CompletableFuture<T> start() {
+      pending = 1;
+      original = launch(sender);
+      original.whenComplete((value, throwable) -> complete(false, value, throwable));
+      result.whenComplete(
+          (value, throwable) -> {
+            if (result.isCancelled()) {
+              cancel();
+            }
+          });
+      if (!result.isDone()) {
+        CompletableFuture.delayedExecutor(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS)
+            .execute(this::hedge);
+      }
+      return result;
+    }
+
+    private synchronized void hedge() {
+      if (result.isDone()) {
+        return;
+      }
+      hedges.increment();
+      pending++;
+      hedge = launch(sender);
+      hedge.whenComplete((value, throwable) -> complete(true, value, throwable));
+    }
+
+    private synchronized void cancel() {
+      original.cancel(true);
+      if (Objects.nonNull(hedge)) {
+        hedge.cancel(true);
+      }
+    }
+
+    private synchronized void complete(
+        final boolean hedged, final T value, final Throwable throwable) {
+      if (Objects.nonNull(throwable)) {
+        // the attempt fails only if no other call is still in flight
+        if (--pending == 0) {
+          result.completeExceptionally(throwable);
+        }
+        return;
+      }
+      if (result.isDone()) {
+        return;
+      }
+      // the losing call is cancelled before the winner is handed to the caller
+      var other = hedged ? original : hedge;
+      if (Objects.nonNull(other)) {
+        other.cancel(true);
+      }
+      if (hedged) {
+        hedgeWins.increment();
+      }
+      result.complete(value);
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder class for {@link ResiliencePolicy}, no retries nor hedging are made by default. */
+  public static final class Builder {
+    private int maximumRetries;
+    private Duration initialBackoff = Duration.ofMillis(100);
+    private Duration maximumBackoff = Duration.ofSeconds(5);
+    private Duration hedgeDelay;
+
+    /**
+     * Set the maximum number of times a failed call is retried.
+     *
+     * @param maximumRetries the maximum number of retries.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaximumRetries(final int maximumRetries) {
+      if (maximumRetries < 0) {
+        throw new IllegalArgumentException("maximum retries should be a non negative integer");
+      }
+      this.maximumRetries = maximumRetries;
+      return this;
+    }
+
+    /**
+     * Set the backoff of the first retry, the backoff is doubled for every following retry. The
+     * actual delay before a retry is a random duration up to the backoff.
+     *
+     * @param initialBackoff the initial backoff, 100 milliseconds by default.
+     * @return the fluent builder instance.
+     */
+    public Builder withInitialBackoff(final Duration initialBackoff) {
+      this.initialBackoff = requirePositive(initialBackoff, "initial backoff");
+      return this;
+    }
+
+    /**
+     * Set the upper bound of the exponential backoff.
+     *
+     * @param maximumBackoff the maximum backoff, 5 seconds by default.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaximumBackoff(final Duration maximumBackoff) {
+      this.maximumBackoff = requirePositive(maximumBackoff, "maximum backoff");
+      return this;
+    }
+
+    /**
+     * Send a hedged duplicate call if the original call is not completed within a delay. A good
+     * delay is around the observed 95th percentile latency, hedging about 5% of the calls.
+     *
+     * @param hedgeDelay the delay before sending the hedged call.
+     * @return the fluent builder instance.
+     */
+    public Builder withHedgeDelay(final Duration hedgeDelay) {
+      this.hedgeDelay = requirePositive(hedgeDelay, "hedge delay");
+      return this;
+    }
+
+    public ResiliencePolicy build() {
+      if (maximumBackoff.compareTo(initialBackoff) < 0) {
+        throw new IllegalArgumentException("maximum backoff should not be less than the initial");
+      }
+      return new ResiliencePolicy(this);
+    }
+
+    private static Duration requirePositive(final Duration duration, final String name) {
+      Objects.requireNonNull(duration, "Null " + name);
+      if (duration.isNegative() || duration.isZero()) {
+        throw new IllegalArgumentException(name + " should be a positive duration");
+      }
+      return duration;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package info.tomfi.shabbat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * Body subscriber feeding the response body chunks into a non-blocking JSON parser as they arrive,
+ * the tokens are bound by a {@link TokenReader} as they are parsed, i.e. to an {@link APIResponse}
+ * by a {@link ResponseReader}. The body is never decoded into an intermediate String, nor buffered
+ * as tokens.
+ */
+final class ResponseBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+  private final JsonParser parser;
+  private final ByteBufferFeeder feeder;
+  private final TokenReader<T> reader;
+  private final Exchange exchange;
+  private final CompletableFuture<T> body = new CompletableFuture<>();
+
+  private Flow.Subscription subscription;
+  private long bytes;
+
+  ResponseBodySubscriber(
+      final JsonFactory factory, final TokenReader<T> reader, final Exchange exchange) {
+    this.reader = reader;
+    this.exchange = exchange;
+    try {
+      this.parser = factory.createNonBlockingByteBufferParser();
+    } catch (final IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+    this.feeder = (ByteBufferFeeder) this.parser.getNonBlockingInputFeeder();
+  }
+
+  /**
+   * Create a body handler subscribing a new {@link ResponseBodySubscriber} for every successful
+   * response. The body of a response with a non successful status is discarded and the response
+   * completes exceptionally with an {@link APIStatusException}.
+   *
+   * @param factory the factory for creating the non-blocking parsers.
+   * @param readers the supplier of a new token reader for every response.
+   * @param exchange the exchange to report the body phases to, or null.
+   * @return the body handler.
+   */
+  static <T> HttpResponse.BodyHandler<T> handler(
+      final JsonFactory factory,
+      final Supplier<? extends TokenReader<T>> readers,
+      final Exchange exchange) {
+    return responseInfo -> {
+      var status = responseInfo.statusCode();
+      if (status < 200 || status > 299) {
+        return new StatusFailure<>(status);
+      }
+      return new ResponseBodySubscriber<>(factory, readers.get(), exchange);
+    };
+  }
+
+  /**
+   * Parse a response from a buffer holding an entire JSON body, reading the buffer in place.
+   *
+   * @param factory the factory for creating the non-blocking parser.
+   * @param buffer the buffer to parse, its position is not modified.
+   * @return the parsed response.
+   * @throws IOException when failed to parse the buffer.
+   */
+  static APIResponse parse(final JsonFactory factory, final ByteBuffer buffer) throws IOException {
+    return parse(factory, new ResponseReader(), buffer);
+  }
+
+  /**
+   * Bind a value from a buffer holding an entire JSON body, reading the buffer in place.
+   *
+   * @param factory the factory for creating the non-blocking parser.
+   * @param reader the reader binding the value.
+   * @param buffer the buffer to parse, its position is not modified.
+   * @return the bound value.
+   * @throws IOException when failed to parse the buffer.
+   */
+  static <T> T parse(
+      final JsonFactory factory, final TokenReader<T> reader, final ByteBuffer buffer)
+      throws IOException {
+    var subscriber = new ResponseBodySubscriber<>(factory, reader, null);
+    subscriber.feed(buffer.duplicate());
+    return subscriber.finish();
+  }
+
+  @Override
+  public CompletionStage<T> getBody() {
+    return this.body;
+  }
+
+  @Override
+  public void onSubscribe(final Flow.Subscription subscription) {
+    if (Objects.nonNull(this.subscription)) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    subscription.request(1);
+  }
+
+  @Override
+  public void onNext(final List<ByteBuffer> item) {
+    try {
+      for (var buffer : item) {
+        feed(buffer);
+      }
+    } catch (final IOException ioe) {
+      subscription.cancel();
+      body.completeExceptionally(ioe);
+      return;
+    }
+    subscription.request(1);
+  }
+
+  @Override
+  public void onError(final Throwable throwable) {
+    body.completeExceptionally(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    try {
+      body.complete(finish());
+    } catch (final IOException ioe) {
+      body.completeExceptionally(ioe);
+    }
+  }
+
+  private void feed(final ByteBuffer buffer) throws IOException {
+    if (buffer.hasRemaining()) {
+      bytes += buffer.remaining();
+      feeder.feedInput(buffer);
+      drainTokens();
+    }
+  }
+
+  private T finish() throws IOException {
+    feeder.endOfInput();
+    drainTokens();
+    if (Objects.isNull(exchange)) {
+      return reader.result(parser);
+    }
+    exchange.phase(APIListener.Phase.BODY_READ);
+    exchange.bytes(bytes);
+    var response = reader.result(parser);
+    exchange.phase(APIListener.Phase.DESERIALIZE);
+    return response;
+  }
+
+  /* the parser must consume a buffer entirely before the next one is fed. */
+  private void drainTokens() throws IOException {
+    JsonToken token;
+    while (Objects.nonNull(token = parser.nextToken()) && token != JsonToken.NOT_AVAILABLE) {
+      reader.next(parser, token);
+    }
+  }
+
+  /* discards the body of a non successful response and fails with its status. */
+  private static final class StatusFailure<T> implements HttpResponse.BodySubscriber<T> {
+    private final int status;
+    private final CompletableFuture<T> body = new CompletableFuture<>();
+
+    private StatusFailure(final int status) {
+      this.status = status;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+      return this.body;
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(final List<ByteBuffer> item) {}
+
+    @Override
+    public void onError(final Throwable throwable) {
+      body.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      body.completeExceptionally(new APIStatusException(status));
+    }
+  }
+}
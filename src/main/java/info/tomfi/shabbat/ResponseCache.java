@@ -0,0 +1,440 @@
+package info.tomfi.shabbat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-memory cache of {@link APIResponse} instances keyed by their {@link APIRequest}.
+ * Entries expire when the shabbat described by the response ends, or when the response date range
+ * ends. When the cache is full, a new entry is admitted unless it was requested less often than
+ * the least recently used entry it would replace. Expired entries can be retained as stale for a
+ * configured duration, to be served by the API when the responses can not be refreshed. Expired
+ * entries received with validators are retained until evicted, to be revalidated by the API with
+ * a conditional request.
+ */
+public final class ResponseCache {
+  private static final long DEFAULT_EXPECTED_ENTRIES = 4096;
+
+  private final long maximumEntries;
+  private final long maximumWeight;
+  private final long maximumStaleness;
+  private final Clock clock;
+  private final FrequencySketch sketch;
+  private final LinkedHashMap<APIRequest, Entry> entries;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder staleHits = new LongAdder();
+
+  private long weight;
+  private long nextExpiry = Long.MAX_VALUE;
+
+  private ResponseCache(
+      final long maximumEntries,
+      final long maximumWeight,
+      final long maximumStaleness,
+      final Clock clock) {
+    this.maximumEntries = maximumEntries;
+    this.maximumWeight = maximumWeight;
+    this.maximumStaleness = maximumStaleness;
+    this.clock = clock;
+    this.sketch =
+        new FrequencySketch(
+            maximumEntries == Long.MAX_VALUE ? DEFAULT_EXPECTED_ENTRIES : maximumEntries);
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  private static final class Entry {
+    private final APIResponse response;
+    private final long expiresAt;
+    private final long staleUntil;
+    private final long retainUntil;
+    private final long weight;
+    private final Revalidation revalidation;
+
+    private Entry(
+        final APIResponse response,
+        final long expiresAt,
+        final long staleUntil,
+        final long weight,
+        final Revalidation revalidation) {
+      this.response = response;
+      this.expiresAt = expiresAt;
+      this.staleUntil = staleUntil;
+      // an entry with validators is still worth a conditional request once expired
+      this.retainUntil = Objects.isNull(revalidation) ? staleUntil : Long.MAX_VALUE;
+      this.weight = weight;
+      this.revalidation = revalidation;
+    }
+  }
+
+  /** Immutable snapshot of the cache counters. */
+  public static final class Stats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long staleHitCount;
+
+    private Stats(
+        final long hitCount,
+        final long missCount,
+        final long evictionCount,
+        final long staleHitCount) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.staleHitCount = staleHitCount;
+    }
+
+    public long hitCount() {
+      return this.hitCount;
+    }
+
+    public long missCount() {
+      return this.missCount;
+    }
+
+    public long evictionCount() {
+      return this.evictionCount;
+    }
+
+    /**
+     * Get the number of expired responses served as stale, stale hits are also counted as misses.
+     *
+     * @return the stale hit count.
+     */
+    public long staleHitCount() {
+      return this.staleHitCount;
+    }
+
+    /**
+     * Get the ratio of lookups served from the cache.
+     *
+     * @return the hit rate, or 1.0 if no lookups were made.
+     */
+    public double hitRate() {
+      var requests = this.hitCount + this.missCount;
+      return requests == 0 ? 1.0 : (double) this.hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Stats{hits=%d, misses=%d, evictions=%d, staleHits=%d}",
+          this.hitCount, this.missCount, this.evictionCount, this.staleHitCount);
+    }
+  }
+
+  /**
+   * Get a cached response for a request if present and not expired.
+   *
+   * @param request the request to look up.
+   * @return an Optional cached response.
+   */
+  public Optional<APIResponse> getIfPresent(final APIRequest request) {
+    Objects.requireNonNull(request, "Null request");
+    var now = clock.millis();
+    synchronized (entries) {
+      sketch.increment(request);
+      var entry = entries.get(request);
+      if (Objects.nonNull(entry) && entry.expiresAt > now) {
+        hits.increment();
+        return Optional.of(entry.response);
+      }
+      if (Objects.nonNull(entry) && entry.retainUntil <= now) {
+        remove(request);
+      }
+    }
+    misses.increment();
+    return Optional.empty();
+  }
+
+  /**
+   * Get a cached response for a request if present, including an expired response still retained
+   * as stale. Does not count as a lookup.
+   *
+   * @param request the request to look up.
+   * @return an Optional cached response, possibly stale.
+   */
+  Optional<APIResponse> getStale(final APIRequest request) {
+    var now = clock.millis();
+    synchronized (entries) {
+      var entry = entries.get(request);
+      if (Objects.isNull(entry) || entry.staleUntil <= now) {
+        return Optional.empty();
+      }
+      if (entry.expiresAt <= now) {
+        staleHits.increment();
+      }
+      return Optional.of(entry.response);
+    }
+  }
+
+  /**
+   * Get the validators of a cached response for a request if present, including an expired
+   * response, retained until evicted. Does not count as a lookup.
+   *
+   * @param request the request to look up.
+   * @return an Optional revalidation of the cached response.
+   */
+  Optional<Revalidation> getRevalidation(final APIRequest request) {
+    var now = clock.millis();
+    synchronized (entries) {
+      var entry = entries.get(request);
+      if (Objects.isNull(entry) || entry.retainUntil <= now) {
+        return Optional.empty();
+      }
+      return Optional.ofNullable(entry.revalidation);
+    }
+  }
+
+  boolean retainsStale() {
+    return maximumStaleness > 0;
+  }
+
+  /**
+   * Cache a response for a request. Responses with no time bound, responses that already expired,
+   * and responses losing the admission to a more frequently used entry are not cached.
+   *
+   * @param request the request the response was received for.
+   * @param response the response to cache.
+   */
+  public void put(final APIRequest request, final APIResponse response) {
+    put(request, response, null);
+  }
+
+  /**
+   * Cache a response for a request along with the validators it was received with.
+   *
+   * @param request the request the response was received for.
+   * @param response the response to cache.
+   * @param revalidation the validators of the response, or null if it has none.
+   */
+  void put(final APIRequest request, final APIResponse response, final Revalidation revalidation) {
+    put(request, response, revalidation, Duration.ZERO);
+  }
+
+  /**
+   * Cache a response for a request along with its validators, fresh for at least a duration even
+   * if it expired, i.e. a response the API replied was not modified.
+   *
+   * @param request the request the response was received for.
+   * @param response the response to cache.
+   * @param revalidation the validators of the response, or null if it has none.
+   * @param freshness the minimum duration the response is fresh for.
+   */
+  void put(
+      final APIRequest request,
+      final APIResponse response,
+      final Revalidation revalidation,
+      final Duration freshness) {
+    Objects.requireNonNull(request, "Null request");
+    Objects.requireNonNull(response, "Null response");
+    var now = clock.millis();
+    var expiresAt =
+        Math.max(
+            ResponseExpiry.of(response).map(Instant::toEpochMilli).orElse(now),
+            now + freshness.toMillis());
+    if (expiresAt <= now) {
+      return;
+    }
+    var staleUntil = expiresAt + maximumStaleness;
+    var entry =
+        new Entry(
+            response,
+            expiresAt,
+            staleUntil < expiresAt ? Long.MAX_VALUE : staleUntil,
+            weigh(response),
+            revalidation);
+    synchronized (entries) {
+      var previous = entries.put(request, entry);
+      weight += entry.weight - (Objects.isNull(previous) ? 0 : previous.weight);
+      nextExpiry = Math.min(nextExpiry, entry.retainUntil);
+      if (isOverflowing()) {
+        evict(request, now);
+      }
+    }
+  }
+
+  /**
+   * Discard the cached response for a request.
+   *
+   * @param request the request to discard.
+   */
+  public void invalidate(final APIRequest request) {
+    synchronized (entries) {
+      remove(request);
+    }
+  }
+
+  /** Discard all the cached responses. */
+  public void invalidateAll() {
+    synchronized (entries) {
+      entries.clear();
+      weight = 0;
+      nextExpiry = Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Get the number of cached entries, including stale entries and expired entries not yet
+   * discarded.
+   *
+   * @return the number of cached entries.
+   */
+  public long size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Get a snapshot of the cache counters.
+   *
+   * @return the cache stats.
+   */
+  public Stats stats() {
+    return new Stats(hits.sum(), misses.sum(), evictions.sum(), staleHits.sum());
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private boolean isOverflowing() {
+    return entries.size() > maximumEntries || weight > maximumWeight;
+  }
+
+  private void evict(final APIRequest candidate, final long now) {
+    if (now >= nextExpiry) {
+      nextExpiry = Long.MAX_VALUE;
+      var iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        var entry = iterator.next().getValue();
+        if (entry.retainUntil <= now) {
+          weight -= entry.weight;
+          iterator.remove();
+        } else {
+          nextExpiry = Math.min(nextExpiry, entry.retainUntil);
+        }
+      }
+    }
+    var candidateFrequency = sketch.frequency(candidate);
+    while (isOverflowing()) {
+      var victim = entries.keySet().iterator().next();
+      if (!victim.equals(candidate) && sketch.frequency(victim) > candidateFrequency) {
+        victim = candidate;
+      }
+      remove(victim);
+      evictions.increment();
+      if (victim.equals(candidate)) {
+        return;
+      }
+    }
+  }
+
+  private void remove(final APIRequest request) {
+    var entry = entries.remove(request);
+    if (Objects.nonNull(entry)) {
+      weight -= entry.weight;
+    }
+  }
+
+  /* rough estimation of the heap retained by a response, compact strings are counted as latin1. */
+  private static long weigh(final APIResponse response) {
+    long weight = 64 + weigh(response.date) + weigh(response.title);
+    weight += response.link.map(ResponseCache::weigh).orElse(0L);
+    weight += 96 + weigh(response.location.title) + weigh(response.location.city);
+    weight += weigh(response.location.country) + weigh(response.location.geo);
+    weight += response.location.admin1.map(ResponseCache::weigh).orElse(0L);
+    weight += response.location.asciiname.map(ResponseCache::weigh).orElse(0L);
+    weight += response.location.cc.map(ResponseCache::weigh).orElse(0L);
+    weight += response.location.tzid.map(ResponseCache::weigh).orElse(0L);
+    for (var item : response.items.orElse(List.of())) {
+      weight += 64 + weigh(item.date) + weigh(item.title);
+      weight += item.hebrew.map(ResponseCache::weigh).orElse(0L);
+      weight += item.hdate.map(ResponseCache::weigh).orElse(0L);
+      weight += item.titleOrig.map(ResponseCache::weigh).orElse(0L);
+      weight += item.link.map(ResponseCache::weigh).orElse(0L);
+      weight += item.memo.map(ResponseCache::weigh).orElse(0L);
+      weight += item.subcat.map(ResponseCache::weigh).orElse(0L);
+    }
+    return weight;
+  }
+
+  private static long weigh(final String value) {
+    return 56L + value.length();
+  }
+
+  /** Builder class for {@link ResponseCache}. */
+  public static final class Builder {
+    private long maximumEntries = Long.MAX_VALUE;
+    private long maximumWeight = Long.MAX_VALUE;
+    private long maximumStaleness;
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Bound the cache by the number of entries.
+     *
+     * @param maximumEntries the maximum number of entries to keep.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaximumEntries(final long maximumEntries) {
+      if (maximumEntries <= 0) {
+        throw new IllegalArgumentException("maximum entries should be a positive number");
+      }
+      this.maximumEntries = maximumEntries;
+      return this;
+    }
+
+    /**
+     * Bound the cache by the estimated heap bytes retained by the cached responses.
+     *
+     * @param maximumWeight the maximum estimated bytes to keep.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaximumWeight(final long maximumWeight) {
+      if (maximumWeight <= 0) {
+        throw new IllegalArgumentException("maximum weight should be a positive number");
+      }
+      this.maximumWeight = maximumWeight;
+      return this;
+    }
+
+    /**
+     * Retain expired entries as stale for a duration. Stale entries are not returned by {@link
+     * #getIfPresent(APIRequest)}, they are served by the API while a response is refreshed or
+     * when it fails to be refreshed. Stale entries count toward the cache bounds.
+     *
+     * @param maximumStaleness how long to retain the entries after they expire.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaximumStaleness(final Duration maximumStaleness) {
+      Objects.requireNonNull(maximumStaleness, "Null maximumStaleness");
+      if (maximumStaleness.isNegative() || maximumStaleness.isZero()) {
+        throw new IllegalArgumentException("maximum staleness should be a positive duration");
+      }
+      this.maximumStaleness = maximumStaleness.toMillis();
+      return this;
+    }
+
+    Builder withClock(final Clock clock) {
+      this.clock = Objects.requireNonNull(clock, "Null clock");
+      return this;
+    }
+
+    public ResponseCache build() {
+      if (maximumEntries == Long.MAX_VALUE && maximumWeight == Long.MAX_VALUE) {
+        throw new IllegalArgumentException("cache should be bounded by entries or weight");
+      }
+      return new ResponseCache(maximumEntries, maximumWeight, maximumStaleness, clock);
+    }
+  }
+}
@@ -0,0 +1,438 @@
+package info.tomfi.shabbat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+import info.tomfi.shabbat.APIResponse.Item;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Compact versioned binary encoding of {@link APIResponse} instances, for moving responses
+ * between nodes and persisting them. Integers are encoded as varints, every distinct string is
+ * written once to a string table and referenced by its index, and dates are encoded as epoch
+ * days, seconds or milliseconds when they can be formatted back to the exact same text.
+ *
+ * <p>Decoding reads the strings straight from the buffer's backing array, a direct buffer is read
+ * through a reused scratch array, the encoded response is never copied as a whole.
+ */
+public final class ResponseCodec {
+  private static final int VERSION = 1;
+
+  // the encodings of a date field, the text is kept when it would not be formatted back the same
+  private static final int DATE_TEXT = 0;
+  private static final int DATE_DAY = 1;
+  private static final int DATE_TIME = 2;
+  private static final int DATE_INSTANT = 3;
+
+  // the stable codes of the item categories, independent of the declaration order of the enum
+  private static final int CATEGORY_CANDLES = 0;
+  private static final int CATEGORY_HAVDALAH = 1;
+  private static final int CATEGORY_HOLIDAY = 2;
+  private static final int CATEGORY_PARASHAT = 3;
+  private static final int CATEGORY_ROSH_CHODESH = 4;
+
+  private ResponseCodec() {}
+
+  /* the stable code a category is encoded with. */
+  private static int categoryCode(final Item.Category category) {
+    switch (category) {
+      case CANDLES:
+        return CATEGORY_CANDLES;
+      case HAVDALAH:
+        return CATEGORY_HAVDALAH;
+      case HOLIDAY:
+        return CATEGORY_HOLIDAY;
+      case PARASHAT:
+        return CATEGORY_PARASHAT;
+      case ROSH_CHODESH:
+        return CATEGORY_ROSH_CHODESH;
+      default:
+        throw new IllegalArgumentException("unknown category " + category);
+    }
+  }
+
+  /* the category encoded with a code, an unknown code means the encoded response is invalid. */
+  private static Item.Category category(final int code) throws IOException {
+    switch (code) {
+      case CATEGORY_CANDLES:
+        return Item.Category.CANDLES;
+      case CATEGORY_HAVDALAH:
+        return Item.Category.HAVDALAH;
+      case CATEGORY_HOLIDAY:
+        return Item.Category.HOLIDAY;
+      case CATEGORY_PARASHAT:
+        return Item.Category.PARASHAT;
+      case CATEGORY_ROSH_CHODESH:
+        return Item.Category.ROSH_CHODESH;
+      default:
+        throw new IOException("invalid encoded response: unknown category " + code);
+    }
+  }
+
+  /**
+   * Encode a response.
+   *
+   * @param response the response to encode.
+   * @return a heap buffer holding the encoded response, positioned at its start.
+   */
+  public static ByteBuffer encode(final APIResponse response) {
+    Objects.requireNonNull(response, "Null response");
+    var body = new Writer();
+    body.writeResponse(response);
+
+    var table = new Writer();
+    table.writeVarint(VERSION);
+    table.writeVarint(body.strings.size());
+    for (var string : body.strings) {
+      var bytes = string.getBytes(UTF_8);
+      table.writeVarint(bytes.length);
+      table.write(bytes, bytes.length);
+    }
+    return ByteBuffer.allocate(table.size + body.size)
+        .put(table.bytes, 0, table.size)
+        .put(body.bytes, 0, body.size)
+        .flip();
+  }
+
+  /**
+   * Decode a response, the buffer is positioned after the encoded response.
+   *
+   * @param buffer the buffer holding the encoded response from its position.
+   * @return the decoded response.
+   * @throws IOException when the buffer does not hold a valid encoded response.
+   */
+  public static APIResponse decode(final ByteBuffer buffer) throws IOException {
+    return decode(buffer, null);
+  }
+
+  /**
+   * Decode a response pooling its strings, the buffer is positioned after the encoded response.
+   *
+   * @param buffer the buffer holding the encoded response from its position.
+   * @param pool the pool to share the strings and the location of the response with.
+   * @return the decoded response.
+   * @throws IOException when the buffer does not hold a valid encoded response.
+   */
+  public static APIResponse decode(final ByteBuffer buffer, final StringPool pool)
+      throws IOException {
+    Objects.requireNonNull(buffer, "Null buffer");
+    try {
+      return new Reader(buffer, pool).readResponse();
+    } catch (final BufferUnderflowException | IndexOutOfBoundsException exc) {
+      throw new IOException("truncated encoded response", exc);
+    } catch (final IllegalArgumentException | NullPointerException exc) {
+      throw new IOException("invalid encoded response: " + exc.getMessage(), exc);
+    }
+  }
+
+  private static final class Writer {
+    private final Map<String, Integer> references = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private byte[] bytes = new byte[256];
+    private int size;
+
+    void writeResponse(final APIResponse response) {
+      writeString(response.title);
+      writeDate(response.date);
+      writeOptional(response.link);
+      writeLocation(response.location);
+      if (response.range.isPresent()) {
+        write(1);
+        writeSigned(response.range.get().start.toEpochDay());
+        writeSigned(response.range.get().end.toEpochDay());
+      } else {
+        write(0);
+      }
+      if (response.items.isPresent()) {
+        var items = response.items.get();
+        writeVarint(items.size() + 1L);
+        for (var item : items) {
+          writeItem(item);
+        }
+      } else {
+        writeVarint(0);
+      }
+    }
+
+    private void writeLocation(final APIResponse.Location location) {
+      writeString(location.title);
+      writeString(location.city);
+      writeString(location.country);
+      writeString(location.geo);
+      writeVarint(location.geonameid);
+      writeDouble(location.latitude);
+      writeDouble(location.longitude);
+      writeOptional(location.admin1);
+      writeOptional(location.asciiname);
+      writeOptional(location.cc);
+      writeOptional(location.tzid);
+    }
+
+    private void writeItem(final Item item) {
+      writeString(item.title);
+      writeDate(item.date);
+      write(categoryCode(item.category));
+      writeOptional(item.hebrew);
+      writeOptional(item.hdate);
+      writeOptional(item.titleOrig);
+      writeOptional(item.link);
+      writeOptional(item.memo);
+      writeOptional(item.subcat);
+      write(Objects.isNull(item.yomtov) ? 0 : item.yomtov ? 2 : 1);
+    }
+
+    /* the most compact encoding formatted back to the same text, or the text itself. */
+    private void writeDate(final String date) {
+      try {
+        if (date.length() == 10) {
+          var day = LocalDate.parse(date).toEpochDay();
+          if (date.equals(IsoDateTimes.formatDate(day))) {
+            write(DATE_DAY);
+            writeSigned(day);
+            return;
+          }
+        } else if (date.endsWith("Z") && date.length() == 24) {
+          var milli = Instant.parse(date).toEpochMilli();
+          if (date.equals(IsoDateTimes.formatInstant(milli))) {
+            write(DATE_INSTANT);
+            writeSigned(milli);
+            return;
+          }
+        } else {
+          var time = OffsetDateTime.parse(date, ISO_OFFSET_DATE_TIME);
+          var second = time.toEpochSecond();
+          var offset = time.getOffset().getTotalSeconds();
+          if (date.equals(IsoDateTimes.formatDateTime(second, offset))) {
+            write(DATE_TIME);
+            writeSigned(second);
+            writeSigned(offset / 60);
+            return;
+          }
+        }
+      } catch (final DateTimeParseException exc) {
+        // not a date the api sends, kept as text
+      }
+      write(DATE_TEXT);
+      writeString(date);
+    }
+
+    private void writeOptional(final Optional<String> value) {
+      if (value.isPresent()) {
+        writeString(value.get());
+      } else {
+        writeVarint(0);
+      }
+    }
+
+    /* a reference to the string table, starting at 1 as 0 stands for an absent string. */
+    private void writeString(final String value) {
+      var reference = references.get(value);
+      if (Objects.isNull(reference)) {
+        strings.add(value);
+        reference = strings.size();
+        references.put(value, reference);
+      }
+      writeVarint(reference);
+    }
+
+    private void writeDouble(final double value) {
+      var bits = Double.doubleToLongBits(value);
+      for (var shift = 56; shift >= 0; shift -= 8) {
+        write((int) (bits >>> shift));
+      }
+    }
+
+    /* zigzag encoded, small negative values are as short as small positive values. */
+    private void writeSigned(final long value) {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeVarint(final long value) {
+      var remaining = value;
+      while ((remaining & ~0x7FL) != 0) {
+        write((int) (remaining & 0x7F) | 0x80);
+        remaining >>>= 7;
+      }
+      write((int) remaining);
+    }
+
+    void write(final int value) {
+      ensure(1);
+      bytes[size++] = (byte) value;
+    }
+
+    void write(final byte[] values, final int length) {
+      ensure(length);
+      System.arraycopy(values, 0, bytes, size, length);
+      size += length;
+    }
+
+    private void ensure(final int length) {
+      if (size + length > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+      }
+    }
+  }
+
+  private static final class Reader {
+    private final ByteBuffer buffer;
+    private final StringPool pool;
+    private String[] strings;
+    private byte[] scratch;
+
+    Reader(final ByteBuffer buffer, final StringPool pool) {
+      this.buffer = buffer;
+      this.pool = pool;
+    }
+
+    APIResponse readResponse() throws IOException {
+      var version = readVarint();
+      if (version != VERSION) {
+        throw new IOException("unsupported encoded response version " + version);
+      }
+      readStrings();
+      var builder =
+          new APIResponse.Builder().pooled(pool).withTitle(readString()).withDate(readDate());
+      readOptional().ifPresent(builder::withLink);
+      builder.withLocation(readLocation());
+      if (buffer.get() != 0) {
+        var range = new APIResponse.DateRange.Builder();
+        range.start = LocalDate.ofEpochDay(readSigned());
+        range.end = LocalDate.ofEpochDay(readSigned());
+        builder.withRange(range.build());
+      }
+      var count = readVarint();
+      if (count > 0) {
+        var items = new ArrayList<Item>((int) Math.min(count - 1, buffer.remaining()));
+        for (var i = 1; i < count; i++) {
+          items.add(readItem());
+        }
+        builder.withItems(items);
+      }
+      return builder.build();
+    }
+
+    private void readStrings() {
+      var count = readVarint();
+      if (count > buffer.remaining()) {
+        throw new IllegalArgumentException("string table exceeds the buffer");
+      }
+      strings = new String[(int) count];
+      for (var i = 0; i < count; i++) {
+        var length = (int) readVarint();
+        var position = buffer.position();
+        if (buffer.hasArray()) {
+          strings[i] = new String(buffer.array(), buffer.arrayOffset() + position, length, UTF_8);
+          buffer.position(position + length);
+        } else {
+          if (Objects.isNull(scratch) || scratch.length < length) {
+            scratch = new byte[Math.max(length, 256)];
+          }
+          buffer.get(scratch, 0, length);
+          strings[i] = new String(scratch, 0, length, UTF_8);
+        }
+      }
+    }
+
+    private APIResponse.Location readLocation() {
+      var builder =
+          new APIResponse.Location.Builder()
+              .pooled(pool)
+              .withTitle(readString())
+              .withCity(readString())
+              .withCountry(readString())
+              .withGeo(readString())
+              .withGeonameid((int) readVarint())
+              .withLatitude(buffer.getDouble())
+              .withLongitude(buffer.getDouble());
+      readOptional().ifPresent(builder::withAdmin1);
+      readOptional().ifPresent(builder::withAsciiname);
+      readOptional().ifPresent(builder::withCc);
+      readOptional().ifPresent(builder::withTzid);
+      return builder.build();
+    }
+
+    private Item readItem() throws IOException {
+      var builder =
+          new Item.Builder().pooled(pool).withTitle(readString()).withDate(readDate());
+      builder.withCategory(category(buffer.get()).toString());
+      readOptional().ifPresent(builder::withHebrew);
+      readOptional().ifPresent(builder::withHdate);
+      readOptional().ifPresent(builder::withTitleOrig);
+      readOptional().ifPresent(builder::withLink);
+      readOptional().ifPresent(builder::withMemo);
+      readOptional().ifPresent(builder::withSubcat);
+      var yomtov = buffer.get();
+      builder.withYomtov(yomtov == 0 ? null : yomtov == 2);
+      return builder.build();
+    }
+
+    private String readDate() {
+      var encoding = buffer.get();
+      String date;
+      switch (encoding) {
+        case DATE_TEXT:
+          return readString();
+        case DATE_DAY:
+          date = IsoDateTimes.formatDate(readSigned());
+          break;
+        case DATE_TIME:
+          var second = readSigned();
+          date = IsoDateTimes.formatDateTime(second, Math.toIntExact(readSigned() * 60));
+          break;
+        case DATE_INSTANT:
+          date = IsoDateTimes.formatInstant(readSigned());
+          break;
+        default:
+          throw new IllegalArgumentException("unknown date encoding " + encoding);
+      }
+      if (Objects.isNull(date)) {
+        throw new IllegalArgumentException("date out of range");
+      }
+      return date;
+    }
+
+    private Optional<String> readOptional() {
+      var reference = (int) readVarint();
+      return reference == 0 ? Optional.empty() : Optional.of(strings[reference - 1]);
+    }
+
+    private String readString() {
+      var reference = (int) readVarint();
+      if (reference == 0) {
+        throw new IllegalArgumentException("missing string");
+      }
+      return strings[reference - 1];
+    }
+
+    private long readSigned() {
+      var value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarint() {
+      var value = 0L;
+      for (var shift = 0; shift < 64; shift += 7) {
+        var next = buffer.get();
+        value |= (long) (next & 0x7F) << shift;
+        if (next >= 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("malformed varint");
+    }
+  }
+}
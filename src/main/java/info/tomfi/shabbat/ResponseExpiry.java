@@ -0,0 +1,33 @@
+package info.tomfi.shabbat;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+/** Utility class for resolving the instant from which an {@link APIResponse} is outdated. */
+final class ResponseExpiry {
+  private ResponseExpiry() {}
+
+  /**
+   * Resolve the expiry of a response. A response expires when the shabbat it describes ends, or
+   * when its date range ends if it has no havdalah item.
+   *
+   * @param response the response to resolve the expiry for.
+   * @return the expiry instant, or empty if the response has no time bound.
+   */
+  static Optional<Instant> of(final APIResponse response) {
+    if (response.items.isPresent() && !response.items.get().isEmpty()) {
+      if (response.getShabbatItem(APIResponse.ShabbatItem.SHABBAT_END).isPresent()) {
+        return Optional.of(response.getShabbatEnd().toInstant());
+      }
+    }
+    return response.range.map(
+        range ->
+            range
+                .end
+                .plusDays(1)
+                .atStartOfDay(response.location.tzid.map(ZoneId::of).orElse(ZoneOffset.UTC))
+                .toInstant());
+  }
+}
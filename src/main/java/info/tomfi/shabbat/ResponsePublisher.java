@@ -0,0 +1,335 @@
+package info.tomfi.shabbat;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Publishes the responses of a stream of {@link APIRequest} instances. Requests are pulled from
+ * the upstream publisher and sent only as the subscriber's demand allows, with a bounded number of
+ * calls in flight. Responses are emitted as the calls complete, or in the order of the requests.
+ * The first failed call, or a failing upstream, fails the subscription and cancels the upstream.
+ * Every subscriber subscribes the upstream publisher and sends its requests on its own.
+ */
+final class ResponsePublisher implements Flow.Publisher<APIResponse> {
+  private final Flow.Publisher<APIRequest> requests;
+  private final int maxInFlight;
+  private final boolean ordered;
+  private final Function<APIRequest, CompletableFuture<APIResponse>> sender;
+
+  ResponsePublisher(
+      final Flow.Publisher<APIRequest> requests,
+      final int maxInFlight,
+      final boolean ordered,
+      final Function<APIRequest, CompletableFuture<APIResponse>> sender) {
+    this.requests = Objects.requireNonNull(requests, "Null requests");
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("max in flight should be a positive integer");
+    }
+    this.maxInFlight = maxInFlight;
+    this.ordered = ordered;
+    this.sender = sender;
+  }
+
+  /**
+   * Create a publisher of the requests of an iterable, every subscriber iterates it anew.
+   *
+   * @param requests the iterable of requests.
+   * @return the requests publisher.
+   */
+  static Flow.Publisher<APIRequest> of(final Iterable<APIRequest> requests) {
+    Objects.requireNonNull(requests, "Null requests");
+    return subscriber -> {
+      Iterator<APIRequest> iterator;
+      try {
+        iterator = requests.iterator();
+      } catch (final RuntimeException exc) {
+        subscriber.onSubscribe(new IteratorSubscription(null, subscriber));
+        subscriber.onError(exc);
+        return;
+      }
+      subscriber.onSubscribe(new IteratorSubscription(iterator, subscriber));
+    };
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super APIResponse> subscriber) {
+    Objects.requireNonNull(subscriber, "Null subscriber");
+    var subscription = new ResponseSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+    requests.subscribe(subscription);
+  }
+
+  /* a call in flight, completed with either a response or a failure. */
+  private static final class Call {
+    private volatile APIResponse response;
+    private volatile Throwable failure;
+    private volatile boolean done;
+  }
+
+  private final class ResponseSubscription
+      implements Flow.Subscription, Flow.Subscriber<APIRequest> {
+    private final Flow.Subscriber<? super APIResponse> subscriber;
+    private final AtomicInteger drainers = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final Queue<APIRequest> pending = new ConcurrentLinkedQueue<>();
+    // calls in launch order when ordered, completed calls in completion order otherwise
+    private final Queue<Call> calls;
+
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    private volatile boolean terminated;
+
+    // accessed only by the draining thread
+    private long emitted;
+    private long launched;
+    private long upstreamRequested;
+    private int inFlight;
+
+    ResponseSubscription(final Flow.Subscriber<? super APIResponse> subscriber) {
+      this.subscriber = subscriber;
+      this.calls = ordered ? new ArrayDeque<>() : new ConcurrentLinkedQueue<>();
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("requested demand should be positive, got " + n);
+      } else {
+        requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+      if (Objects.nonNull(upstream)) {
+        subscription.cancel();
+        return;
+      }
+      upstream = subscription;
+      // a subscription terminated before the upstream arrived could not cancel it
+      if (terminated) {
+        subscription.cancel();
+        return;
+      }
+      drain();
+    }
+
+    @Override
+    public void onNext(final APIRequest request) {
+      pending.add(request);
+      received.incrementAndGet();
+      drain();
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+      error = throwable;
+      upstreamDone = true;
+      drain();
+    }
+
+    @Override
+    public void onComplete() {
+      upstreamDone = true;
+      drain();
+    }
+
+    /* signals are serialized by a single draining thread, reentrant signals are trampolined. */
+    private void drain() {
+      if (drainers.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        if (terminated) {
+          continue;
+        }
+        if (cancelled) {
+          terminate();
+          continue;
+        }
+        emit();
+        if (terminated) {
+          continue;
+        }
+        if (Objects.nonNull(error)) {
+          terminate();
+          subscriber.onError(error);
+          continue;
+        }
+        if (upstreamDone && inFlight == 0 && received.get() == launched) {
+          terminated = true;
+          subscriber.onComplete();
+          continue;
+        }
+        launch();
+      } while (drainers.decrementAndGet() != 0);
+    }
+
+    private void emit() {
+      while (emitted < requested.get()) {
+        var call = calls.peek();
+        if (Objects.isNull(call) || !call.done) {
+          return;
+        }
+        calls.poll();
+        if (Objects.nonNull(call.failure)) {
+          terminate();
+          subscriber.onError(call.failure);
+          return;
+        }
+        emitted++;
+        inFlight--;
+        subscriber.onNext(call.response);
+        if (cancelled) {
+          return;
+        }
+      }
+    }
+
+    /* calls are launched for the demand not covered yet, the upstream is asked for the rest. */
+    private void launch() {
+      var wanted = Math.min(maxInFlight - inFlight, requested.get() - emitted - inFlight);
+      while (wanted > 0) {
+        var request = pending.poll();
+        if (Objects.isNull(request)) {
+          break;
+        }
+        launched++;
+        inFlight++;
+        wanted--;
+        send(request);
+      }
+      var missing = wanted - (upstreamRequested - launched);
+      if (missing > 0 && !upstreamDone && Objects.nonNull(upstream)) {
+        upstreamRequested += missing;
+        upstream.request(missing);
+      }
+    }
+
+    private void send(final APIRequest request) {
+      var call = new Call();
+      if (ordered) {
+        calls.add(call);
+      }
+      CompletableFuture<APIResponse> future;
+      try {
+        future = sender.apply(request);
+      } catch (final RuntimeException exc) {
+        future = CompletableFuture.failedFuture(exc);
+      }
+      future.whenComplete(
+          (response, throwable) -> {
+            call.response = response;
+            call.failure = unwrap(throwable);
+            call.done = true;
+            if (!ordered) {
+              calls.add(call);
+            }
+            drain();
+          });
+    }
+
+    private void terminate() {
+      terminated = true;
+      pending.clear();
+      calls.clear();
+      if (!upstreamDone && Objects.nonNull(upstream)) {
+        upstream.cancel();
+      }
+    }
+  }
+
+  /* a subscription emitting the requests of an iterator as they are requested. */
+  private static final class IteratorSubscription implements Flow.Subscription {
+    private final Iterator<APIRequest> iterator;
+    private final Flow.Subscriber<? super APIRequest> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger drainers = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile long invalidDemand;
+    private boolean done;
+
+    IteratorSubscription(
+        final Iterator<APIRequest> iterator, final Flow.Subscriber<? super APIRequest> subscriber) {
+      this.iterator = iterator;
+      this.subscriber = subscriber;
+      this.done = Objects.isNull(iterator);
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        invalidDemand = n;
+      } else {
+        requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    private void drain() {
+      if (drainers.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        if (!done && !cancelled && invalidDemand < 0) {
+          done = true;
+          subscriber.onError(
+              new IllegalArgumentException(
+                  "requested demand should be positive, got " + invalidDemand));
+        }
+        // the end is signaled as soon as it is reached, regardless of the demand
+        while (!done && !cancelled) {
+          APIRequest request;
+          try {
+            if (!iterator.hasNext()) {
+              done = true;
+              subscriber.onComplete();
+              break;
+            }
+            if (requested.get() == 0) {
+              break;
+            }
+            request = iterator.next();
+          } catch (final RuntimeException exc) {
+            done = true;
+            subscriber.onError(exc);
+            break;
+          }
+          requested.decrementAndGet();
+          subscriber.onNext(request);
+        }
+      } while (drainers.decrementAndGet() != 0);
+    }
+  }
+
+  private static Throwable unwrap(final Throwable throwable) {
+    if (throwable instanceof CompletionException && Objects.nonNull(throwable.getCause())) {
+      return throwable.getCause();
+    }
+    return throwable;
+  }
+}
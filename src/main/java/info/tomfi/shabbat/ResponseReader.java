@@ -0,0 +1,322 @@
+package info.tomfi.shabbat;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads an {@link APIResponse} from JSON tokens, calling the response builders directly. Tokens
+ * are pushed one at a time, as a non-blocking parser produces them, so a response is bound while
+ * its body is still arriving. No reflection is involved, unknown properties are skipped, and null
+ * values are treated as absent. The strings of the response are pooled if a {@link StringPool}
+ * was given.
+ */
+final class ResponseReader implements TokenReader<APIResponse> {
+  private enum Context {
+    ROOT,
+    RESPONSE,
+    LOCATION,
+    RANGE,
+    ITEMS,
+    ITEM,
+    DONE
+  }
+
+  private final StringPool pool;
+
+  private Context context = Context.ROOT;
+  private String field;
+  private int skipDepth;
+
+  private APIResponse.Builder response;
+  private APIResponse.Location.Builder location;
+  private APIResponse.DateRange.Builder range;
+  private List<APIResponse.Item> items;
+  private APIResponse.Item.Builder item;
+  private APIResponse result;
+
+  ResponseReader() {
+    this(null);
+  }
+
+  ResponseReader(final StringPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Read a response from a blocking parser, reading until the response ends.
+   *
+   * @param parser the parser to read from.
+   * @return the response read.
+   * @throws IOException when failed to read a response.
+   */
+  static APIResponse read(final JsonParser parser) throws IOException {
+    var reader = new ResponseReader();
+    JsonToken token;
+    while (!reader.done() && Objects.nonNull(token = parser.nextToken())) {
+      reader.next(parser, token);
+    }
+    return reader.result(parser);
+  }
+
+  @Override
+  public void next(final JsonParser parser, final JsonToken token) throws IOException {
+    if (skipDepth > 0) {
+      if (token.isStructStart()) {
+        skipDepth++;
+      } else if (token.isStructEnd()) {
+        skipDepth--;
+      }
+      return;
+    }
+    if (token == JsonToken.FIELD_NAME) {
+      field = parser.currentName();
+      return;
+    }
+    try {
+      switch (context) {
+        case ROOT:
+          expect(parser, token, JsonToken.START_OBJECT);
+          response = new APIResponse.Builder().pooled(pool);
+          context = Context.RESPONSE;
+          break;
+        case RESPONSE:
+          response(parser, token);
+          break;
+        case LOCATION:
+          location(parser, token);
+          break;
+        case RANGE:
+          range(parser, token);
+          break;
+        case ITEMS:
+          items(parser, token);
+          break;
+        case ITEM:
+          item(parser, token);
+          break;
+        default:
+          // content trailing the response is ignored
+      }
+    } catch (final RuntimeException exc) {
+      // the builders fail on missing and malformed values
+      throw new JsonParseException(parser, "invalid response: " + exc.getMessage(), exc);
+    }
+  }
+
+  /**
+   * Check if the response ended, no more tokens are expected.
+   *
+   * @return true if the response ended.
+   */
+  boolean done() {
+    return context == Context.DONE;
+  }
+
+  @Override
+  public APIResponse result(final JsonParser parser) throws JsonParseException {
+    if (!done()) {
+      throw new JsonParseException(parser, "unexpected end of the response");
+    }
+    return result;
+  }
+
+  private void response(final JsonParser parser, final JsonToken token) throws IOException {
+    if (token == JsonToken.END_OBJECT) {
+      result = response.build();
+      context = Context.DONE;
+      return;
+    }
+    if (token == JsonToken.VALUE_NULL) {
+      return;
+    }
+    switch (field) {
+      case "date":
+        response.withDate(string(parser, token));
+        break;
+      case "link":
+        response.withLink(string(parser, token));
+        break;
+      case "title":
+        response.withTitle(string(parser, token));
+        break;
+      case "location":
+        expect(parser, token, JsonToken.START_OBJECT);
+        location = new APIResponse.Location.Builder().pooled(pool);
+        context = Context.LOCATION;
+        break;
+      case "range":
+        expect(parser, token, JsonToken.START_OBJECT);
+        range = new APIResponse.DateRange.Builder();
+        context = Context.RANGE;
+        break;
+      case "items":
+        expect(parser, token, JsonToken.START_ARRAY);
+        items = new ArrayList<>();
+        context = Context.ITEMS;
+        break;
+      default:
+        skip(token);
+    }
+  }
+
+  private void location(final JsonParser parser, final JsonToken token) throws IOException {
+    if (token == JsonToken.END_OBJECT) {
+      response.withLocation(location.build());
+      context = Context.RESPONSE;
+      return;
+    }
+    if (token == JsonToken.VALUE_NULL) {
+      return;
+    }
+    switch (field) {
+      case "admin1":
+        location.withAdmin1(string(parser, token));
+        break;
+      case "asciiname":
+        location.withAsciiname(string(parser, token));
+        break;
+      case "cc":
+        location.withCc(string(parser, token));
+        break;
+      case "city":
+        location.withCity(string(parser, token));
+        break;
+      case "country":
+        location.withCountry(string(parser, token));
+        break;
+      case "geo":
+        location.withGeo(string(parser, token));
+        break;
+      case "geonameid":
+        scalar(parser, token);
+        location.withGeonameid(parser.getValueAsInt());
+        break;
+      case "latitude":
+        scalar(parser, token);
+        location.withLatitude(parser.getValueAsDouble());
+        break;
+      case "longitude":
+        scalar(parser, token);
+        location.withLongitude(parser.getValueAsDouble());
+        break;
+      case "title":
+        location.withTitle(string(parser, token));
+        break;
+      case "tzid":
+        location.withTzid(string(parser, token));
+        break;
+      default:
+        skip(token);
+    }
+  }
+
+  private void range(final JsonParser parser, final JsonToken token) throws IOException {
+    if (token == JsonToken.END_OBJECT) {
+      response.withRange(range.build());
+      context = Context.RESPONSE;
+      return;
+    }
+    if (token == JsonToken.VALUE_NULL) {
+      return;
+    }
+    switch (field) {
+      case "start":
+        range.withStart(string(parser, token));
+        break;
+      case "end":
+        range.withEnd(string(parser, token));
+        break;
+      default:
+        skip(token);
+    }
+  }
+
+  private void items(final JsonParser parser, final JsonToken token) throws IOException {
+    if (token == JsonToken.END_ARRAY) {
+      response.withItems(items);
+      context = Context.RESPONSE;
+      return;
+    }
+    expect(parser, token, JsonToken.START_OBJECT);
+    item = new APIResponse.Item.Builder().pooled(pool);
+    context = Context.ITEM;
+  }
+
+  private void item(final JsonParser parser, final JsonToken token) throws IOException {
+    if (token == JsonToken.END_OBJECT) {
+      items.add(item.build());
+      context = Context.ITEMS;
+      return;
+    }
+    if (token == JsonToken.VALUE_NULL) {
+      return;
+    }
+    switch (field) {
+      case "category":
+        item.withCategory(string(parser, token));
+        break;
+      case "date":
+        item.withDate(string(parser, token));
+        break;
+      case "hdate":
+        item.withHdate(string(parser, token));
+        break;
+      case "hebrew":
+        item.withHebrew(string(parser, token));
+        break;
+      case "link":
+        item.withLink(string(parser, token));
+        break;
+      case "memo":
+        item.withMemo(string(parser, token));
+        break;
+      case "subcat":
+        item.withSubcat(string(parser, token));
+        break;
+      case "title":
+        item.withTitle(string(parser, token));
+        break;
+      case "title_orig":
+        item.withTitleOrig(string(parser, token));
+        break;
+      case "yomtov":
+        scalar(parser, token);
+        item.withYomtov(parser.getValueAsBoolean());
+        break;
+      default:
+        skip(token);
+    }
+  }
+
+  /* the value of an unknown property, a structured value is skipped until it ends. */
+  private void skip(final JsonToken token) {
+    if (token.isStructStart()) {
+      skipDepth = 1;
+    }
+  }
+
+  private static String string(final JsonParser parser, final JsonToken token)
+      throws IOException {
+    scalar(parser, token);
+    return parser.getValueAsString();
+  }
+
+  private static void scalar(final JsonParser parser, final JsonToken token) throws IOException {
+    if (!token.isScalarValue()) {
+      throw new JsonParseException(parser, "unexpected " + token + " for " + parser.currentName());
+    }
+  }
+
+  private static void expect(
+      final JsonParser parser, final JsonToken token, final JsonToken expected)
+      throws JsonParseException {
+    if (token != expected) {
+      throw new JsonParseException(parser, "expected " + expected + " but found " + token);
+    }
+  }
+}
@@ -0,0 +1,339 @@
+package info.tomfi.shabbat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store of {@link APIResponse} instances keyed by their {@link APIRequest} query
+ * parameters. Responses are appended to a memory-mapped segment file in the {@link
+ * ResponseCodec} encoding and decoded in place from the mapping. The file is remapped only once
+ * the records appended past the mapping outgrow it, so the mapping grows geometrically, the
+ * records in between are read from the file. Only the record keys are scanned when the store is
+ * opened, responses are decoded when looked up. Records are checksummed, so several processes on
+ * the same host can share a store file, appends and compactions are guarded by a file lock. Only
+ * one store instance per file should be opened in a single process.
+ */
+public final class ResponseStore implements Closeable {
+  private static final int MAGIC = 0x53484253;
+  private static final int VERSION = 2;
+  private static final int FILE_HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final int MINIMUM_REMAP = 64 * 1024;
+
+  private final Path path;
+  private final Clock clock;
+  private final Map<String, Integer> index = new HashMap<>();
+
+  private FileChannel channel;
+  private Object fileKey;
+  private MappedByteBuffer mapped;
+  private int end;
+  private int records;
+
+  private ResponseStore(final Path path, final Clock clock) {
+    this.path = path;
+    this.clock = clock;
+  }
+
+  /**
+   * Open a store file, creating it if it does not exist. Stores with a majority of expired or
+   * superseded records are compacted when opened.
+   *
+   * @param path the path of the store file.
+   * @return the opened store.
+   * @throws IOException when failed to open the file or the file is not a store file.
+   */
+  public static ResponseStore open(final Path path) throws IOException {
+    return open(path, Clock.systemUTC());
+  }
+
+  static ResponseStore open(final Path path, final Clock clock) throws IOException {
+    var store = new ResponseStore(Objects.requireNonNull(path, "Null path"), clock);
+    synchronized (store) {
+      store.openChannel();
+      if (store.records > 2 * store.liveCount()) {
+        store.compact();
+      }
+    }
+    return store;
+  }
+
+  /**
+   * Look up an unexpired response stored for a request.
+   *
+   * @param request the request to look up.
+   * @return an Optional stored response.
+   * @throws IOException when failed to read the store file.
+   */
+  public Optional<APIResponse> get(final APIRequest request) throws IOException {
+    return get(request, null);
+  }
+
+  synchronized Optional<APIResponse> get(final APIRequest request, final StringPool pool)
+      throws IOException {
+    var key = keyOf(request);
+    var offset = index.get(key);
+    if (Objects.isNull(offset)) {
+      refresh();
+      offset = index.get(key);
+      if (Objects.isNull(offset)) {
+        return Optional.empty();
+      }
+    }
+    var record = record(offset);
+    if (record.getLong(RECORD_HEADER_SIZE) <= clock.millis()) {
+      return Optional.empty();
+    }
+    var keyLength = record.getInt(RECORD_HEADER_SIZE + 8);
+    return Optional.of(
+        ResponseCodec.decode(record.position(RECORD_HEADER_SIZE + 12 + keyLength), pool));
+  }
+
+  /**
+   * Append a response for a request. Responses with no time bound and responses that already
+   * expired are not stored.
+   *
+   * @param request the request the response was received for.
+   * @param response the response to store.
+   * @throws IOException when failed to write to the store file.
+   */
+  public synchronized void put(final APIRequest request, final APIResponse response)
+      throws IOException {
+    var now = clock.millis();
+    var expiresAt = ResponseExpiry.of(response).map(Instant::toEpochMilli).orElse(now);
+    if (expiresAt <= now) {
+      return;
+    }
+    var key = keyOf(request).getBytes(UTF_8);
+    var value = ResponseCodec.encode(response);
+    var record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 12 + key.length + value.remaining());
+    record.position(RECORD_HEADER_SIZE);
+    record.putLong(expiresAt).putInt(key.length).put(key).put(value);
+    var crc = new CRC32();
+    crc.update(record.flip().position(RECORD_HEADER_SIZE));
+    record.putInt(0, record.limit() - RECORD_HEADER_SIZE).putInt(4, (int) crc.getValue());
+
+    var lock = lock();
+    try {
+      // drop a torn record left behind by a crashed writer
+      if (channel.size() > end) {
+        channel.truncate(end);
+        mapped = null;
+      }
+      channel.write(record.rewind(), end);
+      refresh();
+    } finally {
+      lock.release();
+    }
+  }
+
+  /**
+   * Rewrite the store file keeping only the latest unexpired record of every request. The file is
+   * replaced atomically, other processes sharing it will reopen it on their next lookup.
+   *
+   * @return the number of records removed.
+   * @throws IOException when failed to rewrite the store file.
+   */
+  public synchronized int compact() throws IOException {
+    var lock = lock();
+    int removed;
+    try {
+      var now = clock.millis();
+      var temp = path.resolveSibling(path.getFileName() + ".compact");
+      var kept = 0;
+      try (var out =
+          FileChannel.open(
+              temp,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        out.write(fileHeader());
+        for (var offset : index.values()) {
+          var record = record(offset);
+          if (record.getLong(RECORD_HEADER_SIZE) > now) {
+            out.write(record);
+            kept++;
+          }
+        }
+        out.force(true);
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      removed = records - kept;
+    } catch (final IOException | RuntimeException exc) {
+      lock.release();
+      throw exc;
+    }
+    // closing the replaced file channel releases its lock
+    openChannel();
+    return removed;
+  }
+
+  /**
+   * Get the number of requests with a stored response, including expired responses not yet
+   * compacted.
+   *
+   * @return the number of stored requests.
+   */
+  public synchronized int size() {
+    return index.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    channel.close();
+  }
+
+  /* the encoded query string, the parameters in their canonical order, is the record key. */
+  private static String keyOf(final APIRequest request) {
+    return request.query();
+  }
+
+  synchronized int mappedSize() {
+    return mapped.capacity();
+  }
+
+  private ByteBuffer record(final int offset) throws IOException {
+    return region(offset, RECORD_HEADER_SIZE + region(offset, 4).getInt(0));
+  }
+
+  /* a region of the file, a view of the mapping or read from the file past the mapping. */
+  private ByteBuffer region(final int offset, final int length) throws IOException {
+    if (offset + length <= mapped.capacity()) {
+      return mapped.duplicate().position(offset).limit(offset + length).slice();
+    }
+    var region = ByteBuffer.allocate(length);
+    while (region.hasRemaining()) {
+      if (channel.read(region, offset + region.position()) < 0) {
+        throw new EOFException("store file truncated: " + path);
+      }
+    }
+    return region.flip();
+  }
+
+  private int liveCount() throws IOException {
+    var now = clock.millis();
+    var live = 0;
+    for (var offset : index.values()) {
+      if (region(offset + RECORD_HEADER_SIZE, 8).getLong(0) > now) {
+        live++;
+      }
+    }
+    return live;
+  }
+
+  /* lock the current store file, reopening it first if another process replaced it. */
+  private FileLock lock() throws IOException {
+    while (true) {
+      var lock = channel.lock();
+      if (Objects.equals(fileKey, currentFileKey())) {
+        refresh();
+        return lock;
+      }
+      lock.release();
+      openChannel();
+    }
+  }
+
+  private void openChannel() throws IOException {
+    if (Objects.nonNull(channel)) {
+      channel.close();
+    }
+    channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    fileKey = currentFileKey();
+    index.clear();
+    mapped = null;
+    end = FILE_HEADER_SIZE;
+    records = 0;
+    var header = readHeader();
+    if (channel.size() < FILE_HEADER_SIZE
+        || (header.getInt(0) == MAGIC && header.getInt(4) < VERSION)) {
+      // the records of an older version are dropped, a store only caches responses
+      var lock = channel.lock();
+      try {
+        header = readHeader();
+        if (channel.size() == 0 || (header.getInt(0) == MAGIC && header.getInt(4) < VERSION)) {
+          channel.truncate(0);
+          channel.write(fileHeader(), 0);
+        }
+      } finally {
+        lock.release();
+      }
+      header = readHeader();
+    }
+    if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+      channel.close();
+      throw new IOException("not a response store file: " + path);
+    }
+    refresh();
+  }
+
+  private ByteBuffer readHeader() throws IOException {
+    var header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+    channel.read(header, 0);
+    return header;
+  }
+
+  private static ByteBuffer fileHeader() {
+    return ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+  }
+
+  private Object currentFileKey() throws IOException {
+    return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+  }
+
+  /* index the keys of the records appended since the last refresh, remapping a grown file. */
+  private void refresh() throws IOException {
+    if (Objects.nonNull(fileKey) && !fileKey.equals(currentFileKey())) {
+      openChannel();
+      return;
+    }
+    var size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("store file exceeds the maximum size: " + path);
+    }
+    if (Objects.isNull(mapped)
+        || size < mapped.capacity()
+        || size - mapped.capacity() >= Math.max(mapped.capacity(), MINIMUM_REMAP)) {
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    while (end + RECORD_HEADER_SIZE <= size) {
+      var header = region(end, RECORD_HEADER_SIZE);
+      var length = header.getInt(0);
+      if (length < 12 || end + RECORD_HEADER_SIZE + length > size) {
+        return;
+      }
+      var payload = region(end + RECORD_HEADER_SIZE, length);
+      var crc = new CRC32();
+      crc.update(payload);
+      if ((int) crc.getValue() != header.getInt(4)) {
+        return;
+      }
+      var key = new byte[payload.getInt(8)];
+      payload.position(12).get(key);
+      index.put(new String(key, UTF_8), end);
+      records++;
+      end += RECORD_HEADER_SIZE + length;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package info.tomfi.shabbat;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Validators of a cached {@link APIResponse}, used for revalidating it with a conditional request.
+ * If the API replies with a not modified status, the cached response is reused without reading
+ * the body, and is fresh again for the max age of the reply, or for an hour if it has none.
+ */
+final class Revalidation {
+  static final int NOT_MODIFIED = 304;
+  static final Duration DEFAULT_FRESHNESS = Duration.ofHours(1);
+
+  final APIResponse response;
+  final Optional<String> etag;
+  final Optional<String> lastModified;
+
+  private Revalidation(
+      final APIResponse response,
+      final Optional<String> etag,
+      final Optional<String> lastModified) {
+    this.response = response;
+    this.etag = etag;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Create the revalidation of a response from the validator headers it was received with.
+   *
+   * @param response the received response.
+   * @param headers the http headers the response was received with.
+   * @return an Optional revalidation, empty if the headers have no validators.
+   */
+  static Optional<Revalidation> of(final APIResponse response, final HttpHeaders headers) {
+    var etag = headers.firstValue("ETag");
+    var lastModified = headers.firstValue("Last-Modified");
+    if (etag.isEmpty() && lastModified.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(new Revalidation(response, etag, lastModified));
+  }
+
+  /**
+   * Get how long a revalidated response is fresh for, from the max age directive of the not
+   * modified reply.
+   *
+   * @param headers the http headers of the not modified reply.
+   * @return the freshness of the revalidated response.
+   */
+  static Duration freshness(final HttpHeaders headers) {
+    for (var value : headers.allValues("Cache-Control")) {
+      for (var directive : value.split(",")) {
+        var trimmed = directive.trim().toLowerCase(Locale.ROOT);
+        if (trimmed.startsWith("max-age=")) {
+          try {
+            return Duration.ofSeconds(Long.parseLong(trimmed.substring(8)));
+          } catch (final NumberFormatException exc) {
+            // an invalid max age is ignored
+          }
+        }
+      }
+    }
+    return DEFAULT_FRESHNESS;
+  }
+
+  /**
+   * Add the conditional headers to a request.
+   *
+   * @param builder the request builder.
+   * @return the request builder.
+   */
+  HttpRequest.Builder conditional(final HttpRequest.Builder builder) {
+    etag.ifPresent(value -> builder.header("If-None-Match", value));
+    lastModified.ifPresent(value -> builder.header("If-Modified-Since", value));
+    return builder;
+  }
+
+  /**
+   * Wrap a body handler, discarding the body of a not modified response and replacing it with the
+   * cached response.
+   *
+   * @param handler the handler for the modified responses.
+   * @return the wrapping body handler.
+   */
+  HttpResponse.BodyHandler<APIResponse> handler(
+      final HttpResponse.BodyHandler<APIResponse> handler) {
+    return responseInfo ->
+        responseInfo.statusCode() == NOT_MODIFIED
+            ? HttpResponse.BodySubscribers.replacing(response)
+            : handler.apply(responseInfo);
+  }
+}
@@ -1,59 +1,801 @@
 package info.tomfi.shabbat;
 
-import static java.util.stream.Collectors.joining;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /** Shabbat API Service. */
 public final class ShabbatAPI {
-  private static final String ENDPOINT = "https://www.hebcal.com/shabbat/";
+  static final String ENDPOINT = "https://www.hebcal.com/shabbat/";
+  private static final ObjectMapper DEFAULT_MAPPER = new ObjectMapper();
+  private static final System.Logger LOGGER = System.getLogger(ShabbatAPI.class.getName());
+  private static final int STORE_QUEUE_CAPACITY = 1024;
+  private static final Executor STORE_WRITER = storeWriter();
 
   private final HttpClient client;
-  private final ObjectMapper mapper;
+  private final String endpoint;
+  private final JsonFactory factory;
+  private final HttpResponse.BodyHandler<APIResponse> bodyHandler;
+  private final HttpResponse.BodyHandler<ShabbatTimes> timesHandler;
+  private final APIListener listener;
+  private final ResponseCache cache;
+  private final ResponseStore store;
+  private final RequestCoalescer<APIResponse> coalescer;
+  private final RequestCoalescer<ShabbatTimes> timesCoalescer;
+  private final ResiliencePolicy policy;
+  private final CircuitBreaker breaker;
+  private final RateLimiter limiter;
+  private final boolean staleWhileRevalidate;
+  private final Set<APIRequest> revalidating = ConcurrentHashMap.newKeySet();
+  private final boolean compression;
+  private final LongAdder savedBytes = new LongAdder();
+  private final StringPool pool;
 
   public ShabbatAPI() {
-    this(HttpClient.newHttpClient());
+    this(builder(), HttpClient.newHttpClient());
   }
 
   ShabbatAPI(final HttpClient client) {
+    this(builder(), client);
+  }
+
+  private ShabbatAPI(final Builder builder, final HttpClient client) {
     this.client = client;
-    mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    this.endpoint = Objects.isNull(builder.endpoint) ? null : builder.endpoint + "?";
+    var mapper = Objects.isNull(builder.mapper) ? DEFAULT_MAPPER : builder.mapper;
+    this.factory = mapper.getFactory();
+    this.compression = builder.compression;
+    this.pool = builder.pool;
+    this.bodyHandler = bodyHandler(this::responseReader, null);
+    this.timesHandler = bodyHandler(ShabbatTimesReader::new, null);
+    this.listener = builder.listener;
+    this.cache = builder.cache;
+    this.store = builder.store;
+    this.coalescer = builder.coalescing ? new RequestCoalescer<>() : null;
+    this.timesCoalescer = builder.coalescing ? new RequestCoalescer<>() : null;
+    this.policy = builder.policy;
+    this.breaker = builder.breaker;
+    this.limiter = builder.limiter;
+    this.staleWhileRevalidate = builder.staleWhileRevalidate;
   }
 
   /**
-   * Send an asynchronous {@link APIRequest} and receive a {@link APIResponse}.
+   * Send an asynchronous {@link APIRequest} and receive a {@link APIResponse}. If a {@link
+   * ResponseCache} was configured, an unexpired cached response will be returned without calling
+   * the API. If a {@link ResponseStore} was configured, it will be looked up next. If request
+   * coalescing was enabled, equal requests sent while a call is in flight will share that call.
+   *
+   * <p>Cached responses received with validator headers are revalidated with a conditional request,
+   * a not modified response reuses the cached response without parsing the body, and keeps it
+   * fresh for the max age of the reply, or for an hour if it has none.
+   *
+   * <p>If the cache retains stale responses, a stale response is returned when the API call fails.
+   * If stale while revalidate was enabled, the stale response is returned right away and refreshed
+   * in the background.
+   *
+   * <p>Cancelling the returned future cancels the API call, including its pending retries and
+   * hedges, unless the call is shared with other callers by request coalescing. The http client
+   * aborts an exchange in flight only on JDK 16 and later, earlier runtimes ignore cancelling it.
    *
    * @param request the request to send to the API.
    * @return the response wrapped in a {@link CompletableFuture}.
    */
   public CompletableFuture<APIResponse> sendAsync(final APIRequest request) {
-    var query =
-        request.queryParams().entrySet().stream()
-            .map(e -> String.join("=", e.getKey().toString(), e.getValue().toString()))
-            .collect(joining("&"));
-
-    var uri = URI.create(String.join("?", ShabbatAPI.ENDPOINT, query));
-
-    var httpRequest = HttpRequest.newBuilder(uri).header("Accept", "application/json").build();
-
-    return client
-        .sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString())
-        .thenApply(HttpResponse::body)
-        .thenApply(
-            s -> {
-              try {
-                return mapper.readValue(s, APIResponse.class);
-              } catch (final JsonProcessingException jpe) {
-                throw new CompletionException(jpe);
+    if (Objects.nonNull(cache)) {
+      var cached = cache.getIfPresent(request);
+      if (cached.isPresent()) {
+        return CompletableFuture.completedFuture(cached.get());
+      }
+    }
+    if (Objects.nonNull(store)) {
+      var stored = lookup(request);
+      if (stored.isPresent()) {
+        if (Objects.nonNull(cache)) {
+          cache.put(request, stored.get());
+        }
+        return CompletableFuture.completedFuture(stored.get());
+      }
+    }
+    if (Objects.nonNull(cache) && cache.retainsStale()) {
+      var stale = cache.getStale(request);
+      if (stale.isPresent()) {
+        if (staleWhileRevalidate) {
+          return revalidate(request, stale.get());
+        }
+        var call = coalesce(request);
+        return cancelling(call.exceptionally(throwable -> stale.get()), call);
+      }
+    }
+    return coalesce(request);
+  }
+
+  /**
+   * Send an {@link APIRequest} and wait for its {@link APIResponse}, using {@link
+   * #sendAsync(APIRequest)}. The calling thread only parks on the response future, the body is
+   * read and parsed by the http client as it arrives, so a virtual thread waiting for a response
+   * does not hold on to its carrier thread.
+   *
+   * @param request the request to send to the API.
+   * @return the response.
+   * @throws IOException when the call failed, i.e. an {@link APIStatusException}.
+   * @throws InterruptedException when interrupted while waiting, the call is cancelled.
+   */
+  public APIResponse send(final APIRequest request) throws IOException, InterruptedException {
+    return await(sendAsync(request));
+  }
+
+  /**
+   * Send {@link APIRequest} instances concurrently, every request waiting for its response on a
+   * thread of the executor, i.e. a virtual thread per task executor. Either all the responses are
+   * returned, or the first failure is thrown and the rest of the requests are cancelled. The
+   * requests are cancelled as well if the calling thread is interrupted, see {@link
+   * #sendAsync(APIRequest)} for what cancelling a request aborts.
+   *
+   * @param requests the requests to send.
+   * @param executor the executor running a task per request.
+   * @return the responses in the order of the requests.
+   * @throws IOException when a call failed, the first failure is thrown.
+   * @throws InterruptedException when interrupted while waiting.
+   */
+  public List<APIResponse> sendAll(
+      final Collection<APIRequest> requests, final ExecutorService executor)
+      throws IOException, InterruptedException {
+    Objects.requireNonNull(requests, "Null requests");
+    Objects.requireNonNull(executor, "Null executor");
+    var completion = new ExecutorCompletionService<APIResponse>(executor);
+    var tasks = new ArrayList<Future<APIResponse>>(requests.size());
+    try {
+      for (var request : requests) {
+        tasks.add(completion.submit(() -> send(request)));
+      }
+      for (var i = 0; i < tasks.size(); i++) {
+        await(completion.take());
+      }
+      var responses = new ArrayList<APIResponse>(tasks.size());
+      for (var task : tasks) {
+        responses.add(await(task));
+      }
+      return responses;
+    } finally {
+      // completed tasks are not affected, the others are interrupted
+      for (var task : tasks) {
+        task.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Send an asynchronous {@link APIRequest} and receive only its {@link ShabbatTimes}. The response
+   * body is streamed once keeping only the items the times are projected from, without binding a
+   * full {@link APIResponse}.
+   *
+   * <p>Projected responses can not populate a {@link ResponseCache} or a {@link ResponseStore}. If
+   * either was configured, the request is sent using {@link #sendAsync(APIRequest)} and the full
+   * response is projected instead. Request coalescing, the resilience policy, the circuit breaker,
+   * and the listener apply to projected requests as well.
+   *
+   * @param request the request to send to the API.
+   * @return the shabbat times wrapped in a {@link CompletableFuture}.
+   */
+  public CompletableFuture<ShabbatTimes> sendTimesAsync(final APIRequest request) {
+    if (Objects.nonNull(cache) || Objects.nonNull(store)) {
+      var call = sendAsync(request);
+      return cancelling(call.thenApply(ShabbatTimes::of), call);
+    }
+    return Objects.isNull(timesCoalescer)
+        ? loadTimes(request)
+        : timesCoalescer.send(request, this::loadTimes);
+  }
+
+  /**
+   * Send a batch of asynchronous {@link APIRequest} instances with a bounded number of calls in
+   * flight. Every request is sent using {@link #sendAsync(APIRequest)}, failed requests are
+   * collected without aborting the rest of the batch.
+   *
+   * @param requests the requests to send.
+   * @param maxInFlight the maximum number of calls in flight.
+   * @return a {@link BatchResponse} collecting the responses as they complete.
+   */
+  public BatchResponse sendAllAsync(final Iterable<APIRequest> requests, final int maxInFlight) {
+    return sendAllAsync(requests.iterator(), maxInFlight);
+  }
+
+  /**
+   * Send a batch of asynchronous {@link APIRequest} instances with a bounded number of calls in
+   * flight. The iterator is consumed lazily, only when a call slot is available.
+   *
+   * @param requests the requests to send.
+   * @param maxInFlight the maximum number of calls in flight.
+   * @return a {@link BatchResponse} collecting the responses as they complete.
+   */
+  public BatchResponse sendAllAsync(final Iterator<APIRequest> requests, final int maxInFlight) {
+    return BatchResponse.send(requests, maxInFlight, this::sendAsync);
+  }
+
+  /**
+   * Publish the responses of a stream of {@link APIRequest} instances. Requests are pulled from
+   * the publisher and sent using {@link #sendAsync(APIRequest)} only as the subscriber's demand
+   * allows, with a bounded number of calls in flight. The first failed request fails the
+   * subscription, and cancels the requests subscription.
+   *
+   * @param requests the publisher of the requests to send.
+   * @param maxInFlight the maximum number of calls in flight.
+   * @param ordered true to emit the responses in the order of the requests, false to emit them as
+   *     they complete.
+   * @return a publisher of the responses, every subscriber subscribes the requests publisher.
+   */
+  public Flow.Publisher<APIResponse> publishAll(
+      final Flow.Publisher<APIRequest> requests, final int maxInFlight, final boolean ordered) {
+    return new ResponsePublisher(requests, maxInFlight, ordered, this::sendAsync);
+  }
+
+  /**
+   * Publish the responses of {@link APIRequest} instances, the iterable is iterated lazily as the
+   * subscriber's demand allows, and anew for every subscriber.
+   *
+   * @param requests the requests to send.
+   * @param maxInFlight the maximum number of calls in flight.
+   * @param ordered true to emit the responses in the order of the requests, false to emit them as
+   *     they complete.
+   * @return a publisher of the responses.
+   * @see #publishAll(Flow.Publisher, int, boolean)
+   */
+  public Flow.Publisher<APIResponse> publishAll(
+      final Iterable<APIRequest> requests, final int maxInFlight, final boolean ordered) {
+    return publishAll(ResponsePublisher.of(requests), maxInFlight, ordered);
+  }
+
+  /**
+   * Warm up the shabbat times of a set of locations for the upcoming weeks in the background.
+   * Every request is sent using {@link #sendAsync(APIRequest)}, so a configured {@link
+   * ResponseCache} or {@link ResponseStore} is populated with the responses. Readiness probes can
+   * wait on the {@link BatchResponse#completion()} future, and report the progress as the {@link
+   * BatchResponse#completedCount()} out of the {@link WarmUp#requestCount()}.
+   *
+   * @param warmUp the warm up plan.
+   * @return a {@link BatchResponse} collecting the responses as they complete.
+   */
+  public BatchResponse warmUp(final WarmUp warmUp) {
+    Objects.requireNonNull(warmUp, "Null warmUp");
+    return BatchResponse.send(
+        warmUp.requests(), warmUp.maxInFlight(), warmUp.throttle(this::sendAsync));
+  }
+
+  /* wait for a result, the failure of the call is thrown as is. */
+  private static <T> T await(final Future<T> future) throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (final InterruptedException exc) {
+      future.cancel(true);
+      throw exc;
+    } catch (final ExecutionException exc) {
+      var cause = exc.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private CompletableFuture<APIResponse> coalesce(final APIRequest request) {
+    return Objects.isNull(coalescer) ? load(request) : coalescer.send(request, this::load);
+  }
+
+  /* a single background refresh per request, a failed refresh keeps the stale response. */
+  private CompletableFuture<APIResponse> revalidate(
+      final APIRequest request, final APIResponse stale) {
+    if (revalidating.add(request)) {
+      coalesce(request)
+          .whenComplete(
+              (response, throwable) -> {
+                revalidating.remove(request);
+                if (Objects.nonNull(throwable)) {
+                  LOGGER.log(
+                      System.Logger.Level.DEBUG, "failed to revalidate a response", throwable);
+                }
+              });
+    }
+    return CompletableFuture.completedFuture(stale);
+  }
+
+  private CompletableFuture<APIResponse> load(final APIRequest request) {
+    var previous = Objects.isNull(cache) ? null : cache.getRevalidation(request).orElse(null);
+    var fetched = call(() -> fetch(request, previous));
+    if (Objects.isNull(cache) && Objects.isNull(store)) {
+      return cancelling(fetched.thenApply(HttpResponse::body), fetched);
+    }
+    var received =
+        fetched.thenApply(
+            httpResponse -> {
+              var response = httpResponse.body();
+              if (Objects.nonNull(cache)) {
+                // a not modified response keeps the previous validators unless new ones were sent,
+                // and is fresh again even though its content expired
+                var notModified = httpResponse.statusCode() == Revalidation.NOT_MODIFIED;
+                var revalidation =
+                    Revalidation.of(response, httpResponse.headers())
+                        .orElse(notModified ? previous : null);
+                cache.put(
+                    request,
+                    response,
+                    revalidation,
+                    notModified
+                        ? Revalidation.freshness(httpResponse.headers())
+                        : Duration.ZERO);
               }
+              return response;
             });
+    cancelling(received, fetched);
+    if (Objects.nonNull(store)) {
+      // the response is not held up by the store, the write is not part of the returned future
+      received.thenAcceptAsync(response -> persist(request, response), STORE_WRITER);
+    }
+    return received;
+  }
+
+  /* appending locks and writes the store file, kept off the threads of the http client. */
+  private void persist(final APIRequest request, final APIResponse response) {
+    try {
+      store.put(request, response);
+    } catch (final IOException ioe) {
+      LOGGER.log(System.Logger.Level.WARNING, "failed to store a response", ioe);
+    }
+  }
+
+  /* a single writer with a bounded queue, writes are dropped while a stalled store catches up. */
+  private static Executor storeWriter() {
+    return new ThreadPoolExecutor(
+        1,
+        1,
+        0,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(STORE_QUEUE_CAPACITY),
+        runnable -> {
+          var thread = new Thread(runnable, "shabbat-api-response-store");
+          thread.setDaemon(true);
+          return thread;
+        },
+        (runnable, executor) ->
+            LOGGER.log(System.Logger.Level.WARNING, "store queue is full, a response is dropped"));
+  }
+
+  private CompletableFuture<ShabbatTimes> loadTimes(final APIRequest request) {
+    var fetched = call(() -> fetchTimes(request));
+    return cancelling(fetched.thenApply(HttpResponse::body), fetched);
+  }
+
+  /* cancelling a derived future cancels the call it derives from, down to the http exchange. */
+  private static <T> CompletableFuture<T> cancelling(
+      final CompletableFuture<T> derived, final Future<?> call) {
+    derived.whenComplete(
+        (value, throwable) -> {
+          if (derived.isCancelled()) {
+            call.cancel(true);
+          }
+        });
+    return derived;
+  }
+
+  /* calls are retried and hedged by the policy, every attempt is limited and guarded. */
+  private <T> CompletableFuture<T> call(final Supplier<CompletableFuture<T>> sender) {
+    Supplier<CompletableFuture<T>> guarded =
+        Objects.isNull(breaker) ? sender : () -> breaker.call(sender);
+    Supplier<CompletableFuture<T>> limited =
+        Objects.isNull(limiter) ? guarded : () -> limiter.call(guarded);
+    return Objects.isNull(policy) ? limited.get() : policy.call(limited);
+  }
+
+  /* a failing store should not fail the request, it is treated as a miss. */
+  private Optional<APIResponse> lookup(final APIRequest request) {
+    try {
+      return store.get(request, pool);
+    } catch (final IOException ioe) {
+      LOGGER.log(System.Logger.Level.WARNING, "failed to look up a stored response", ioe);
+      return Optional.empty();
+    }
+  }
+
+  /* a cached response with validators is revalidated with a conditional request. */
+  private CompletableFuture<HttpResponse<APIResponse>> fetch(
+      final APIRequest request, final Revalidation previous) {
+    var exchange = Objects.isNull(listener) ? null : new Exchange(listener, request);
+    var httpRequest = httpRequest(request);
+    var handler =
+        Objects.isNull(exchange) ? bodyHandler : bodyHandler(this::responseReader, exchange);
+    if (Objects.nonNull(previous)) {
+      previous.conditional(httpRequest);
+      handler = previous.handler(handler);
+    }
+    return send(exchange, httpRequest, handler);
+  }
+
+  private CompletableFuture<HttpResponse<ShabbatTimes>> fetchTimes(final APIRequest request) {
+    var exchange = Objects.isNull(listener) ? null : new Exchange(listener, request);
+    var httpRequest = httpRequest(request);
+    var handler =
+        Objects.isNull(exchange) ? timesHandler : bodyHandler(ShabbatTimesReader::new, exchange);
+    return send(exchange, httpRequest, handler);
+  }
+
+  private ResponseReader responseReader() {
+    return new ResponseReader(pool);
+  }
+
+  private HttpRequest.Builder httpRequest(final APIRequest request) {
+    var httpRequest = HttpRequest.newBuilder(uri(request)).header("Accept", "application/json");
+    if (compression) {
+      httpRequest.header("Accept-Encoding", "gzip, deflate");
+    }
+    return httpRequest;
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> send(
+      final Exchange exchange,
+      final HttpRequest.Builder httpRequest,
+      final HttpResponse.BodyHandler<T> handler) {
+    if (Objects.isNull(exchange)) {
+      return client.sendAsync(httpRequest.build(), handler);
+    }
+    var built = httpRequest.build();
+    exchange.phase(APIListener.Phase.REQUEST_BUILD);
+    return exchange.track(client.sendAsync(built, handler));
+  }
+
+  /**
+   * Get the API uri for a request, the endpoint with the request query string. The uri of the
+   * default endpoint is encoded once, when the request is built.
+   *
+   * @param request the request to get the uri for.
+   * @return the request uri.
+   */
+  URI uri(final APIRequest request) {
+    return Objects.isNull(endpoint) ? request.uri() : URI.create(endpoint + request.query());
+  }
+
+  /* the exchange wraps the decompression, the network phase ends with the response headers. */
+  private <T> HttpResponse.BodyHandler<T> bodyHandler(
+      final Supplier<? extends TokenReader<T>> readers, final Exchange exchange) {
+    var handler = ResponseBodySubscriber.handler(factory, readers, exchange);
+    if (compression) {
+      handler = DecompressingBodySubscriber.handler(handler, savedBytes);
+    }
+    return Objects.isNull(exchange) ? handler : exchange.handler(handler);
+  }
+
+  /**
+   * Get the number of bytes saved by compressed transfers, the sum of the differences between the
+   * decompressed and the compressed sizes of the response bodies. Always zero unless compression
+   * was enabled.
+   *
+   * @return the number of bytes saved.
+   */
+  public long bytesSavedByCompression() {
+    return savedBytes.sum();
+  }
+
+  HttpClient httpClient() {
+    return this.client;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builder class for {@link ShabbatAPI}. The http client and the object mapper can be shared
+   * between API instances, so connections are pooled and multiplexed across all of them.
+   */
+  public static final class Builder {
+    private HttpClient client;
+    private URI endpoint;
+    private ObjectMapper mapper;
+    private HttpClient.Version version;
+    private Duration connectTimeout;
+    private Executor executor;
+    private HttpClient.Redirect redirect;
+    private ResponseCache cache;
+    private ResponseStore store;
+    private boolean coalescing;
+    private ResiliencePolicy policy;
+    private CircuitBreaker breaker;
+    private RateLimiter limiter;
+    private boolean staleWhileRevalidate;
+    private boolean compression;
+    private APIListener listener;
+    private StringPool pool;
+
+    /**
+     * Use a shared http client. Can not be combined with the http client tuning options of this
+     * builder, which are meant for the client created by the builder.
+     *
+     * @param client the http client to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withHttpClient(final HttpClient client) {
+      this.client = Objects.requireNonNull(client, "Null client");
+      return this;
+    }
+
+    /**
+     * Send the requests to an endpoint other than {@code https://www.hebcal.com/shabbat/}, i.e. a
+     * mirror or a local stand-in of the API. The request query strings are appended to the
+     * endpoint.
+     *
+     * @param endpoint the absolute http or https uri of the endpoint, without a query.
+     * @return the fluent builder instance.
+     */
+    public Builder withEndpoint(final URI endpoint) {
+      Objects.requireNonNull(endpoint, "Null endpoint");
+      var scheme = endpoint.getScheme();
+      if (!"http".equals(scheme) && !"https".equals(scheme)
+          || Objects.isNull(endpoint.getHost())
+          || Objects.nonNull(endpoint.getRawQuery())
+          || Objects.nonNull(endpoint.getRawFragment())) {
+        throw new IllegalArgumentException(
+            "endpoint should be an absolute http uri without a query");
+      }
+      this.endpoint = endpoint;
+      return this;
+    }
+
+    /**
+     * Use a shared object mapper for parsing the responses. The responses are parsed by the
+     * mapper's factory and bound without databind, unknown response properties are ignored
+     * regardless of the mapper configuration.
+     *
+     * @param mapper the object mapper to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withObjectMapper(final ObjectMapper mapper) {
+      this.mapper = Objects.requireNonNull(mapper, "Null mapper");
+      return this;
+    }
+
+    /**
+     * Set the preferred http version of the created http client, i.e. {@link
+     * HttpClient.Version#HTTP_2} for multiplexing concurrent requests over a single connection.
+     *
+     * @param version the preferred http version.
+     * @return the fluent builder instance.
+     */
+    public Builder withHttpVersion(final HttpClient.Version version) {
+      this.version = Objects.requireNonNull(version, "Null version");
+      return this;
+    }
+
+    /**
+     * Set the connect timeout of the created http client.
+     *
+     * @param connectTimeout the connect timeout.
+     * @return the fluent builder instance.
+     */
+    public Builder withConnectTimeout(final Duration connectTimeout) {
+      Objects.requireNonNull(connectTimeout, "Null connectTimeout");
+      if (connectTimeout.isNegative() || connectTimeout.isZero()) {
+        throw new IllegalArgumentException("connect timeout should be a positive duration");
+      }
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /**
+     * Set the executor of the created http client, used for the asynchronous tasks and for
+     * completing the response futures. Any executor can be used, i.e. a fixed thread pool, a
+     * {@link java.util.concurrent.ForkJoinPool}, or a virtual thread per task executor on runtimes
+     * supporting it.
+     *
+     * @param executor the executor to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withExecutor(final Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "Null executor");
+      return this;
+    }
+
+    /**
+     * Set the redirect policy of the created http client.
+     *
+     * @param redirect the redirect policy.
+     * @return the fluent builder instance.
+     */
+    public Builder withRedirectPolicy(final HttpClient.Redirect redirect) {
+      this.redirect = Objects.requireNonNull(redirect, "Null redirect");
+      return this;
+    }
+
+    /**
+     * Serve unexpired responses from a cache instead of calling the API. The cache can be shared
+     * between API instances.
+     *
+     * @param cache the cache to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withResponseCache(final ResponseCache cache) {
+      this.cache = Objects.requireNonNull(cache, "Null cache");
+      return this;
+    }
+
+    /**
+     * Serve unexpired responses persisted in a store instead of calling the API, responses
+     * received from the API are appended to the store in the background on a dedicated thread,
+     * the responses are returned without waiting for the writes. Writes are dropped while the
+     * queue of pending writes is full. Responses found in the store are also cached if a {@link
+     * ResponseCache} was configured.
+     *
+     * @param store the store to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withResponseStore(final ResponseStore store) {
+      this.store = Objects.requireNonNull(store, "Null store");
+      return this;
+    }
+
+    /**
+     * Share a single API call between equal requests sent while the call is in flight. Cancelling
+     * the future returned to one caller does not cancel the shared call.
+     *
+     * @param coalescing true to enable request coalescing.
+     * @return the fluent builder instance.
+     */
+    public Builder withRequestCoalescing(final boolean coalescing) {
+      this.coalescing = coalescing;
+      return this;
+    }
+
+    /**
+     * Retry failed API calls and hedge slow ones. Non successful response statuses fail with an
+     * {@link APIStatusException} regardless of the policy.
+     *
+     * @param policy the resilience policy to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withResiliencePolicy(final ResiliencePolicy policy) {
+      this.policy = Objects.requireNonNull(policy, "Null policy");
+      return this;
+    }
+
+    /**
+     * Stop calling the API after repeated failures. Every attempt made by the {@link
+     * ResiliencePolicy} is guarded by the circuit breaker, calls rejected by an open circuit fail
+     * with a {@link CircuitOpenException} and are not retried. A circuit breaker can be shared
+     * between API instances calling the same endpoint.
+     *
+     * @param breaker the circuit breaker to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withCircuitBreaker(final CircuitBreaker breaker) {
+      this.breaker = Objects.requireNonNull(breaker, "Null breaker");
+      return this;
+    }
+
+    /**
+     * Keep the API calls under a rate. Every attempt made by the {@link ResiliencePolicy} waits
+     * for a permit before it is guarded by the {@link CircuitBreaker}. Calls exceeding the
+     * maximum wait of the limiter fail with a {@link RateLimitedException} and are not retried. A
+     * rate limiter can be shared between API instances calling the same endpoint.
+     *
+     * @param limiter the rate limiter to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withRateLimiter(final RateLimiter limiter) {
+      this.limiter = Objects.requireNonNull(limiter, "Null limiter");
+      return this;
+    }
+
+    /**
+     * Return stale responses retained by the {@link ResponseCache} right away, and refresh them
+     * in the background. Requires a cache built with {@link
+     * ResponseCache.Builder#withMaximumStaleness(Duration)}.
+     *
+     * @param staleWhileRevalidate true to serve stale responses while refreshing them.
+     * @return the fluent builder instance.
+     */
+    public Builder withStaleWhileRevalidate(final boolean staleWhileRevalidate) {
+      this.staleWhileRevalidate = staleWhileRevalidate;
+      return this;
+    }
+
+    /**
+     * Ask the API for gzip or deflate compressed responses. The http client does not decompress
+     * responses, compressed bodies are inflated chunk by chunk as they are received.
+     *
+     * @param compression true to enable compressed transfers.
+     * @return the fluent builder instance.
+     */
+    public Builder withCompression(final boolean compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    /**
+     * Notify a listener on every http exchange with the API, i.e. a {@link PrometheusMetrics}.
+     *
+     * @param listener the listener to notify.
+     * @return the fluent builder instance.
+     */
+    public Builder withListener(final APIListener listener) {
+      this.listener = Objects.requireNonNull(listener, "Null listener");
+      return this;
+    }
+
+    /**
+     * Share the strings of the received and stored responses through a pool, and the locations
+     * of the responses per geonameid, lowering the heap retained by many cached responses. The
+     * pool can be shared between API instances.
+     *
+     * @param pool the string pool to use.
+     * @return the fluent builder instance.
+     */
+    public Builder withStringPool(final StringPool pool) {
+      this.pool = Objects.requireNonNull(pool, "Null pool");
+      return this;
+    }
+
+    public ShabbatAPI build() {
+      if (staleWhileRevalidate && (Objects.isNull(cache) || !cache.retainsStale())) {
+        throw new IllegalStateException(
+            "stale while revalidate requires a cache retaining stale responses");
+      }
+      var tuned =
+          Objects.nonNull(version)
+              || Objects.nonNull(connectTimeout)
+              || Objects.nonNull(executor)
+              || Objects.nonNull(redirect);
+      if (Objects.isNull(client)) {
+        return new ShabbatAPI(this, tuned ? createHttpClient() : HttpClient.newHttpClient());
+      }
+      if (tuned) {
+        throw new IllegalStateException("http client options can not be set for a shared client");
+      }
+      return new ShabbatAPI(this, client);
+    }
+
+    private HttpClient createHttpClient() {
+      var clientBuilder = HttpClient.newBuilder();
+      if (Objects.nonNull(version)) {
+        clientBuilder.version(version);
+      }
+      if (Objects.nonNull(connectTimeout)) {
+        clientBuilder.connectTimeout(connectTimeout);
+      }
+      if (Objects.nonNull(executor)) {
+        clientBuilder.executor(executor);
+      }
+      if (Objects.nonNull(redirect)) {
+        clientBuilder.followRedirects(redirect);
+      }
+      return clientBuilder.build();
+    }
   }
 }
@@ -0,0 +1,311 @@
+package info.tomfi.shabbat;
+
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+import info.tomfi.shabbat.APIRequest.GeoType;
+import info.tomfi.shabbat.APIRequest.ParamKey;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offline calculator of the shabbat candle lighting and havdalah times, computed from the sunset
+ * at a location with no network I/O. Candle lighting is the {@link ParamKey#CANDLE_LIGHTING}
+ * minutes before the friday sunset, and havdalah is the {@link ParamKey#HAVDALAH} minutes after the
+ * saturday sunset. The times are rounded to the minute, and agree with the API to about a minute.
+ *
+ * <p>The shabbat calculated is the one following the request date, or the current date at the
+ * location if the request has no date, a saturday date is the shabbat itself. Note the API forces
+ * its own candle lighting minutes for some locations, i.e. 40 minutes for Jerusalem, while the
+ * calculator always uses the request minutes. Locations where the sun does not set have no times.
+ * A positional request is calculated at its own latitude, longitude and time zone, and is
+ * rejected with a location at a different position.
+ *
+ * <p>The parasha and rosh chodesh come from the {@link HebrewCalendar}, with the Israel reading
+ * schedule for locations in Israel. Festival items are not calculated, a festival shabbat has no
+ * parasha.
+ */
+public final class ShabbatCalculator {
+  private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm");
+
+  private final Clock clock;
+  private final Map<String, ZoneRules> zones = new ConcurrentHashMap<>();
+
+  public ShabbatCalculator() {
+    this(Clock.systemUTC());
+  }
+
+  ShabbatCalculator(final Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Calculate the shabbat times for a positional request, at the latitude, longitude and time zone
+   * of the request.
+   *
+   * @param request the request, its position, date and minutes parameters are used.
+   * @return the calculated shabbat times.
+   * @throws IllegalArgumentException when the request has no position.
+   */
+  public ShabbatTimes calculateTimes(final APIRequest request) {
+    return calculateTimes(request, location(request));
+  }
+
+  /**
+   * Calculate the shabbat times for a request at a location.
+   *
+   * @param request the request, its date and minutes parameters are used.
+   * @param location the location, i.e. of a previous response for an equal geoid.
+   * @return the calculated shabbat times.
+   * @throws IllegalArgumentException when the request position differs from the location.
+   */
+  public ShabbatTimes calculateTimes(
+      final APIRequest request, final APIResponse.Location location) {
+    var rules = rules(request, location);
+    var friday = friday(request, rules);
+    var start = candleLighting(request, location, friday);
+    var end = havdalah(request, location, friday);
+    var saturday = friday.toEpochDay() + 1;
+    var year = HebrewCalendar.yearOf(saturday);
+    var reading = year.reading(saturday, inIsrael(location));
+    return new ShabbatTimes(
+        start,
+        offsetSeconds(rules, start),
+        end,
+        offsetSeconds(rules, end),
+        reading == HebrewCalendar.NO_PARASHA ? null : parasha(reading, false),
+        roshChodesh(saturday - 1) >= 0 || year.roshChodesh(saturday) >= 0);
+  }
+
+  /**
+   * Calculate a response for a positional request, compatible with the API response. The location
+   * of the response is titled by the request coordinates, and is in Israel for the Jerusalem time
+   * zone.
+   *
+   * @param request the request, its position, date and minutes parameters are used.
+   * @return the calculated response.
+   * @throws IllegalArgumentException when the request has no position.
+   */
+  public APIResponse calculate(final APIRequest request) {
+    return calculate(request, location(request));
+  }
+
+  /**
+   * Calculate a response for a request at a location, compatible with the API response. The
+   * response holds the candle lighting and havdalah items.
+   *
+   * @param request the request, its date and minutes parameters are used.
+   * @param location the location, i.e. of a previous response for an equal geoid.
+   * @return the calculated response.
+   * @throws IllegalArgumentException when the request position differs from the location.
+   */
+  public APIResponse calculate(final APIRequest request, final APIResponse.Location location) {
+    var rules = rules(request, location);
+    var friday = friday(request, rules);
+    var start = candleLighting(request, location, friday);
+    var end = havdalah(request, location, friday);
+
+    var saturday = friday.toEpochDay() + 1;
+    var year = HebrewCalendar.yearOf(saturday);
+    var reading = year.reading(saturday, inIsrael(location));
+
+    var items = new ArrayList<APIResponse.Item>(5);
+    roshChodeshItem(friday.toEpochDay()).ifPresent(items::add);
+    if (start != SolarCalculator.NO_SUNSET) {
+      var time = time(rules, start);
+      var candles =
+          new APIResponse.Item.Builder()
+              .withTitle("Candle lighting: " + TIME.format(time))
+              .withDate(ISO_OFFSET_DATE_TIME.format(time))
+              .withCategory(APIResponse.Item.Category.CANDLES.toString())
+              .withTitleOrig("Candle lighting")
+              .withHebrew("הדלקת נרות");
+      if (reading != HebrewCalendar.NO_PARASHA) {
+        candles.withMemo(parasha(reading, false));
+      }
+      items.add(candles.build());
+    }
+    roshChodeshItem(saturday).ifPresent(items::add);
+    if (reading != HebrewCalendar.NO_PARASHA) {
+      items.add(
+          new APIResponse.Item.Builder()
+              .withTitle(parasha(reading, false))
+              .withDate(LocalDate.ofEpochDay(saturday).toString())
+              .withHdate(year.date(saturday))
+              .withCategory(APIResponse.Item.Category.PARASHAT.toString())
+              .withHebrew(parasha(reading, true))
+              .build());
+    }
+    if (end != SolarCalculator.NO_SUNSET) {
+      var time = time(rules, end);
+      var minutes = minutes(request, ParamKey.HAVDALAH);
+      items.add(
+          new APIResponse.Item.Builder()
+              .withTitle("Havdalah (" + minutes + " min): " + TIME.format(time))
+              .withDate(ISO_OFFSET_DATE_TIME.format(time))
+              .withCategory(APIResponse.Item.Category.HAVDALAH.toString())
+              .withTitleOrig("Havdalah")
+              .withHebrew("הבדלה (" + minutes + " דקות)")
+              .build());
+    }
+
+    var month = friday.getMonth().getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+    return new APIResponse.Builder()
+        .withTitle("Hebcal " + location.city + " " + month + " " + friday.getYear())
+        .withDate(Instant.now(clock).truncatedTo(ChronoUnit.MILLIS).toString())
+        .withLocation(location)
+        .withRange(
+            new APIResponse.DateRange.Builder()
+                .withStart(friday.toString())
+                .withEnd(friday.plusDays(1).toString())
+                .build())
+        .withItems(items)
+        .build();
+  }
+
+  private long candleLighting(
+      final APIRequest request, final APIResponse.Location location, final LocalDate friday) {
+    var sunset =
+        SolarCalculator.sunset(location.latitude, location.longitude, friday.toEpochDay());
+    return sunset == SolarCalculator.NO_SUNSET
+        ? sunset
+        : roundToMinute(sunset - minutes(request, ParamKey.CANDLE_LIGHTING) * 60L);
+  }
+
+  private long havdalah(
+      final APIRequest request, final APIResponse.Location location, final LocalDate friday) {
+    var sunset =
+        SolarCalculator.sunset(location.latitude, location.longitude, friday.toEpochDay() + 1);
+    return sunset == SolarCalculator.NO_SUNSET
+        ? sunset
+        : roundToMinute(sunset + minutes(request, ParamKey.HAVDALAH) * 60L);
+  }
+
+  /* the friday of the shabbat following the request date, or of the shabbat on a saturday. */
+  private LocalDate friday(final APIRequest request, final ZoneRules rules) {
+    var params = request.queryParams();
+    LocalDate date;
+    if (params.containsKey(ParamKey.GREGORIAN_YEAR)
+        && params.containsKey(ParamKey.GREGORIAN_MONTH)
+        && params.containsKey(ParamKey.GREGORIAN_DAY)) {
+      date =
+          LocalDate.of(
+              Integer.parseInt(params.get(ParamKey.GREGORIAN_YEAR).toString()),
+              Integer.parseInt(params.get(ParamKey.GREGORIAN_MONTH).toString()),
+              Integer.parseInt(params.get(ParamKey.GREGORIAN_DAY).toString()));
+    } else {
+      var now = clock.instant();
+      date = LocalDate.ofInstant(now, rules.getOffset(now));
+    }
+    return date.getDayOfWeek() == DayOfWeek.SATURDAY
+        ? date.minusDays(1)
+        : date.with(TemporalAdjusters.nextOrSame(DayOfWeek.FRIDAY));
+  }
+
+  /* the rosh chodesh item of a day, if the day is rosh chodesh. */
+  private static Optional<APIResponse.Item> roshChodeshItem(final long epochDay) {
+    var year = HebrewCalendar.yearOf(epochDay);
+    var month = year.roshChodesh(epochDay);
+    if (month < 0) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new APIResponse.Item.Builder()
+            .withTitle("Rosh Chodesh " + year.monthName(month, false))
+            .withDate(LocalDate.ofEpochDay(epochDay).toString())
+            .withHdate(year.date(epochDay))
+            .withCategory(APIResponse.Item.Category.ROSH_CHODESH.toString())
+            .withHebrew("ראש חודש " + year.monthName(month, true))
+            .build());
+  }
+
+  private static int roshChodesh(final long epochDay) {
+    return HebrewCalendar.yearOf(epochDay).roshChodesh(epochDay);
+  }
+
+  private static String parasha(final int reading, final boolean hebrew) {
+    return (hebrew ? "פרשת " : "Parashat ") + HebrewCalendar.parashaName(reading, hebrew);
+  }
+
+  private static boolean inIsrael(final APIResponse.Location location) {
+    return location.cc.filter("IL"::equals).isPresent();
+  }
+
+  /* the location of a positional request, the api is not called so only the position is known. */
+  private static APIResponse.Location location(final APIRequest request) {
+    var params = request.queryParams();
+    if (!params.containsKey(ParamKey.LATITUDE)
+        || !params.containsKey(ParamKey.LONGITUDE)
+        || !params.containsKey(ParamKey.TZID)) {
+      throw new IllegalArgumentException("request should have a latitude, longitude and tzid");
+    }
+    var tzid = params.get(ParamKey.TZID).toString();
+    var title = params.get(ParamKey.LATITUDE) + ", " + params.get(ParamKey.LONGITUDE);
+    var israel = "Asia/Jerusalem".equals(tzid);
+    var location =
+        new APIResponse.Location.Builder()
+            .withTitle(title)
+            .withCity(title)
+            .withCountry(israel ? "Israel" : "")
+            .withGeo(GeoType.POSITIONAL.toString())
+            .withLatitude(Double.parseDouble(params.get(ParamKey.LATITUDE).toString()))
+            .withLongitude(Double.parseDouble(params.get(ParamKey.LONGITUDE).toString()))
+            .withTzid(tzid);
+    if (israel) {
+      location.withCc("IL");
+    }
+    return location.build();
+  }
+
+  /* a request position is never silently replaced by a different location. */
+  private ZoneRules rules(final APIRequest request, final APIResponse.Location location) {
+    Objects.requireNonNull(location, "Null location");
+    var params = request.queryParams();
+    if ((params.containsKey(ParamKey.LATITUDE)
+            && Double.parseDouble(params.get(ParamKey.LATITUDE).toString()) != location.latitude)
+        || (params.containsKey(ParamKey.LONGITUDE)
+            && Double.parseDouble(params.get(ParamKey.LONGITUDE).toString())
+                != location.longitude)
+        || (params.containsKey(ParamKey.TZID)
+            && !location.tzid.equals(Optional.of(params.get(ParamKey.TZID).toString())))) {
+      throw new IllegalArgumentException("request position should match the location");
+    }
+    var tzid =
+        location.tzid.orElseThrow(
+            () -> new IllegalArgumentException("location should have a time zone"));
+    return zones.computeIfAbsent(tzid, id -> ZoneId.of(id).getRules());
+  }
+
+  private static int minutes(final APIRequest request, final ParamKey key) {
+    return Integer.parseInt(request.queryParams().get(key).toString());
+  }
+
+  private static long roundToMinute(final long epochSecond) {
+    return Math.floorDiv(epochSecond + 30, 60) * 60;
+  }
+
+  private static int offsetSeconds(final ZoneRules rules, final long epochSecond) {
+    return epochSecond == SolarCalculator.NO_SUNSET
+        ? 0
+        : rules.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+  }
+
+  private static OffsetDateTime time(final ZoneRules rules, final long epochSecond) {
+    var instant = Instant.ofEpochSecond(epochSecond);
+    return OffsetDateTime.ofInstant(instant, rules.getOffset(instant));
+  }
+}
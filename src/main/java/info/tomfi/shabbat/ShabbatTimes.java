@@ -0,0 +1,130 @@
+package info.tomfi.shabbat;
+
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Compact value class used to represent the shabbat times of an API response, the start and end
+ * times, the parasha, and the rosh chodesh flag. The times are kept as epoch seconds with their
+ * offsets, and are only materialized when accessed.
+ */
+public final class ShabbatTimes {
+  /* the epoch second of an absent time. */
+  static final long NONE = Long.MIN_VALUE;
+
+  private final long start;
+  private final int startOffset;
+  private final long end;
+  private final int endOffset;
+  private final String parasha;
+  private final boolean roshChodesh;
+
+  ShabbatTimes(
+      final long start,
+      final int startOffset,
+      final long end,
+      final int endOffset,
+      final String parasha,
+      final boolean roshChodesh) {
+    this.start = start;
+    this.startOffset = startOffset;
+    this.end = end;
+    this.endOffset = endOffset;
+    this.parasha = parasha;
+    this.roshChodesh = roshChodesh;
+  }
+
+  /**
+   * Project the shabbat times of a full response. The start is the first candles item, the end is
+   * the first havdalah item, and the parasha is the memo of the first candles item.
+   *
+   * @param response the response to project.
+   * @return the shabbat times of the response.
+   */
+  public static ShabbatTimes of(final APIResponse response) {
+    Objects.requireNonNull(response, "Null response");
+    var candlesItems = response.getItems(APIResponse.Item.Category.CANDLES);
+    var havdalahItems = response.getItems(APIResponse.Item.Category.HAVDALAH);
+    var candles = candlesItems.isEmpty() ? null : candlesItems.get(0);
+    var havdalah = havdalahItems.isEmpty() ? null : havdalahItems.get(0);
+    var roshChodesh = !response.getItems(APIResponse.Item.Category.ROSH_CHODESH).isEmpty();
+    var startTime =
+        Objects.isNull(candles) ? null : OffsetDateTime.parse(candles.date, ISO_OFFSET_DATE_TIME);
+    var endTime =
+        Objects.isNull(havdalah) ? null : OffsetDateTime.parse(havdalah.date, ISO_OFFSET_DATE_TIME);
+    return new ShabbatTimes(
+        Objects.isNull(startTime) ? NONE : startTime.toEpochSecond(),
+        Objects.isNull(startTime) ? 0 : startTime.getOffset().getTotalSeconds(),
+        Objects.isNull(endTime) ? NONE : endTime.toEpochSecond(),
+        Objects.isNull(endTime) ? 0 : endTime.getOffset().getTotalSeconds(),
+        Objects.isNull(candles) ? null : candles.memo.orElse(null),
+        roshChodesh);
+  }
+
+  /**
+   * Get the shabbat start time, the candle lighting time.
+   *
+   * @return the start time, or empty if the response had no candles item.
+   */
+  public Optional<OffsetDateTime> shabbatStart() {
+    return time(start, startOffset);
+  }
+
+  /**
+   * Get the shabbat end time, the havdalah time.
+   *
+   * @return the end time, or empty if the response had no havdalah item.
+   */
+  public Optional<OffsetDateTime> shabbatEnd() {
+    return time(end, endOffset);
+  }
+
+  /**
+   * Get the shabbat parasha name.
+   *
+   * @return the parasha name, or empty if the candles item does not state it.
+   */
+  public Optional<String> parasha() {
+    return Optional.ofNullable(parasha);
+  }
+
+  public boolean isRoshChodesh() {
+    return roshChodesh;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof ShabbatTimes)) {
+      return false;
+    }
+    var times = (ShabbatTimes) o;
+    return this.start == times.start
+        && this.startOffset == times.startOffset
+        && this.end == times.end
+        && this.endOffset == times.endOffset
+        && Objects.equals(this.parasha, times.parasha)
+        && this.roshChodesh == times.roshChodesh;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(start, startOffset, end, endOffset, parasha, roshChodesh);
+  }
+
+  private static Optional<OffsetDateTime> time(final long epochSecond, final int offset) {
+    if (epochSecond == NONE) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        OffsetDateTime.ofInstant(
+            Instant.ofEpochSecond(epochSecond), ZoneOffset.ofTotalSeconds(offset)));
+  }
+}
@@ -0,0 +1,182 @@
+package info.tomfi.shabbat;
+
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Reads {@link ShabbatTimes} from the JSON tokens of an API response, keeping only the items the
+ * times are projected from. Every other value is skipped without being materialized, the item
+ * values are compared and parsed in the parser's character buffer. Only the parasha name is
+ * copied into a String. Items of unknown categories are ignored.
+ */
+final class ShabbatTimesReader implements TokenReader<ShabbatTimes> {
+  private static final char[] CANDLES = "candles".toCharArray();
+  private static final char[] HAVDALAH = "havdalah".toCharArray();
+  private static final char[] ROSH_CHODESH = "roshchodesh".toCharArray();
+
+  private enum Category {
+    CANDLES,
+    HAVDALAH,
+    ROSH_CHODESH,
+    OTHER
+  }
+
+  private int depth;
+  private boolean inItems;
+  private boolean done;
+  private String field;
+
+  private Category category;
+  private char[] date = new char[32];
+  private int dateLength = -1;
+  private char[] memo = new char[32];
+  private int memoLength = -1;
+  private int offset;
+
+  private long start = ShabbatTimes.NONE;
+  private int startOffset;
+  private long end = ShabbatTimes.NONE;
+  private int endOffset;
+  private String parasha;
+  private boolean roshChodesh;
+
+  @Override
+  public void next(final JsonParser parser, final JsonToken token) throws IOException {
+    if (done) {
+      return;
+    }
+    switch (token) {
+      case FIELD_NAME:
+        field = parser.currentName();
+        return;
+      case START_OBJECT:
+      case START_ARRAY:
+        depth++;
+        if (depth == 1 && token != JsonToken.START_OBJECT) {
+          throw new JsonParseException(parser, "expected START_OBJECT but found " + token);
+        }
+        if (depth == 2 && token == JsonToken.START_ARRAY && "items".equals(field)) {
+          inItems = true;
+        } else if (depth == 3 && inItems) {
+          category = null;
+          dateLength = -1;
+          memoLength = -1;
+        }
+        return;
+      case END_OBJECT:
+      case END_ARRAY:
+        if (depth == 3 && inItems) {
+          item(parser);
+        } else if (depth == 2) {
+          inItems = false;
+        } else if (depth == 1) {
+          done = true;
+        }
+        depth--;
+        return;
+      default:
+        if (depth == 3 && inItems) {
+          value(parser, token);
+        }
+    }
+  }
+
+  @Override
+  public ShabbatTimes result(final JsonParser parser) throws JsonParseException {
+    if (!done) {
+      throw new JsonParseException(parser, "unexpected end of the response");
+    }
+    return new ShabbatTimes(start, startOffset, end, endOffset, parasha, roshChodesh);
+  }
+
+  /* the values of an item, nested values are ignored as the depth does not match. */
+  private void value(final JsonParser parser, final JsonToken token) throws IOException {
+    if (token != JsonToken.VALUE_STRING) {
+      return;
+    }
+    switch (field) {
+      case "category":
+        category = category(parser);
+        break;
+      case "date":
+        date = copy(parser, date);
+        dateLength = parser.getTextLength();
+        break;
+      case "memo":
+        memo = copy(parser, memo);
+        memoLength = parser.getTextLength();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /* the first candles and havdalah items are kept, as APIResponse#getShabbatItem does. */
+  private void item(final JsonParser parser) throws JsonParseException {
+    if (category == Category.CANDLES && start == ShabbatTimes.NONE) {
+      start = time(parser);
+      startOffset = offset;
+      parasha = memoLength < 0 ? null : new String(memo, 0, memoLength);
+    } else if (category == Category.HAVDALAH && end == ShabbatTimes.NONE) {
+      end = time(parser);
+      endOffset = offset;
+    } else if (category == Category.ROSH_CHODESH) {
+      roshChodesh = true;
+    }
+  }
+
+  /* the epoch second of the item date, the offset seconds are kept in the offset field. */
+  private long time(final JsonParser parser) throws JsonParseException {
+    if (dateLength < 0) {
+      throw new JsonParseException(parser, "invalid response: item has no date");
+    }
+    var epochSecond = IsoDateTimes.epochSecond(date, 0, dateLength);
+    if (epochSecond != IsoDateTimes.UNMATCHED) {
+      offset = IsoDateTimes.offsetSeconds(date, 0, dateLength);
+      return epochSecond;
+    }
+    try {
+      var time = OffsetDateTime.parse(new String(date, 0, dateLength), ISO_OFFSET_DATE_TIME);
+      offset = time.getOffset().getTotalSeconds();
+      return time.toEpochSecond();
+    } catch (final DateTimeParseException exc) {
+      throw new JsonParseException(parser, "invalid response: " + exc.getMessage(), exc);
+    }
+  }
+
+  private static Category category(final JsonParser parser) throws IOException {
+    var chars = parser.getTextCharacters();
+    var offset = parser.getTextOffset();
+    var length = parser.getTextLength();
+    if (matches(chars, offset, length, CANDLES)) {
+      return Category.CANDLES;
+    }
+    if (matches(chars, offset, length, HAVDALAH)) {
+      return Category.HAVDALAH;
+    }
+    if (matches(chars, offset, length, ROSH_CHODESH)) {
+      return Category.ROSH_CHODESH;
+    }
+    return Category.OTHER;
+  }
+
+  private static boolean matches(
+      final char[] chars, final int offset, final int length, final char[] expected) {
+    return Arrays.equals(chars, offset, offset + length, expected, 0, expected.length);
+  }
+
+  /* copies the current text into a reused buffer, growing it if needed. */
+  private static char[] copy(final JsonParser parser, final char[] buffer) throws IOException {
+    var length = parser.getTextLength();
+    var target = buffer.length < length ? new char[Math.max(length, buffer.length * 2)] : buffer;
+    System.arraycopy(parser.getTextCharacters(), parser.getTextOffset(), target, 0, length);
+    return target;
+  }
+}
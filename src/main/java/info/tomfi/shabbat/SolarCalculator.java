@@ -0,0 +1,75 @@
+package info.tomfi.shabbat;
+
+/**
+ * Sunset calculation based on the NOAA solar calculator equations, accurate to about a minute for
+ * latitudes between the polar circles. The calculation is allocation free and involves no I/O.
+ */
+final class SolarCalculator {
+  /* the epoch second of a day with no sunset, the sun is always up or always down. */
+  static final long NO_SUNSET = ShabbatTimes.NONE;
+
+  private static final double JULIAN_DAY_AT_EPOCH = 2440587.5;
+  private static final double JULIAN_DAY_J2000 = 2451545.0;
+  private static final double DAYS_PER_CENTURY = 36525.0;
+  private static final double MINUTES_PER_DAY = 1440.0;
+  // the geometric zenith of sunset, corrected for atmospheric refraction and the solar disk size
+  private static final double COS_SUNSET_ZENITH = Math.cos(Math.toRadians(90.833));
+
+  private SolarCalculator() {}
+
+  /**
+   * Calculate the sunset time of a day at a location.
+   *
+   * @param latitude the location latitude in degrees, positive to the north.
+   * @param longitude the location longitude in degrees, positive to the east.
+   * @param epochDay the day, counted from 1970-01-01 at the location.
+   * @return the epoch second of the sunset, or {@link #NO_SUNSET} if the sun does not set.
+   */
+  static long sunset(final double latitude, final double longitude, final long epochDay) {
+    // the equations are evaluated at about sunset, the local solar noon plus six hours
+    var minutes = 1080 - 4 * longitude;
+    var jc =
+        (JULIAN_DAY_AT_EPOCH + epochDay + minutes / MINUTES_PER_DAY - JULIAN_DAY_J2000)
+            / DAYS_PER_CENTURY;
+
+    var meanLongitude = Math.toRadians((280.46646 + jc * (36000.76983 + jc * 0.0003032)) % 360);
+    var meanAnomaly = Math.toRadians(357.52911 + jc * (35999.05029 - 0.0001537 * jc));
+    var eccentricity = 0.016708634 - jc * (0.000042037 + 0.0000001267 * jc);
+    var center =
+        Math.sin(meanAnomaly) * (1.914602 - jc * (0.004817 + 0.000014 * jc))
+            + Math.sin(2 * meanAnomaly) * (0.019993 - 0.000101 * jc)
+            + Math.sin(3 * meanAnomaly) * 0.000289;
+    var omega = Math.toRadians(125.04 - 1934.136 * jc);
+    var trueLongitude = Math.toDegrees(meanLongitude) + center;
+    var apparentLongitude =
+        Math.toRadians(trueLongitude - 0.00569 - 0.00478 * Math.sin(omega));
+    var meanObliquity =
+        23 + (26 + (21.448 - jc * (46.815 + jc * (0.00059 - jc * 0.001813))) / 60) / 60;
+    var obliquity = Math.toRadians(meanObliquity + 0.00256 * Math.cos(omega));
+    var declination = Math.asin(Math.sin(obliquity) * Math.sin(apparentLongitude));
+
+    var y = Math.tan(obliquity / 2);
+    y *= y;
+    var sinMeanAnomaly = Math.sin(meanAnomaly);
+    var equationOfTime =
+        4
+            * Math.toDegrees(
+                y * Math.sin(2 * meanLongitude)
+                    - 2 * eccentricity * sinMeanAnomaly
+                    + 4 * eccentricity * y * sinMeanAnomaly * Math.cos(2 * meanLongitude)
+                    - 0.5 * y * y * Math.sin(4 * meanLongitude)
+                    - 1.25 * eccentricity * eccentricity * Math.sin(2 * meanAnomaly));
+
+    var lat = Math.toRadians(latitude);
+    var cosHourAngle =
+        COS_SUNSET_ZENITH / (Math.cos(lat) * Math.cos(declination))
+            - Math.tan(lat) * Math.tan(declination);
+    if (cosHourAngle < -1 || cosHourAngle > 1) {
+      return NO_SUNSET;
+    }
+    var hourAngle = Math.toDegrees(Math.acos(cosHourAngle));
+
+    var sunsetMinutes = 720 - 4 * longitude - equationOfTime + 4 * hourAngle;
+    return epochDay * 86400 + Math.round(sunsetMinutes * 60);
+  }
+}
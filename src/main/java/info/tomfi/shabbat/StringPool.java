@@ -0,0 +1,119 @@
+package info.tomfi.shabbat;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded pool of canonical values shared by the responses deserialized with it, used with {@link
+ * ShabbatAPI.Builder#withStringPool(StringPool)}. Responses of many locations and many weeks
+ * repeat the same location names, time zones, item titles and hebrew texts, a pooled response
+ * references the pooled instances of its strings, and of their optional wrappers, instead of
+ * retaining its own copies. Equal locations are shared per geonameid.
+ *
+ * <p>The strings are pooled in a fixed size table, a string replaces the pooled string it collides
+ * with, so the pool never grows and values no longer received are eventually dropped. A pool is
+ * safe to share between threads and between API instances.
+ */
+public final class StringPool {
+  private final Optional<?>[] strings;
+  private final int mask;
+  private final Map<Integer, APIResponse.Location> locations;
+  private final int maximumLocations;
+
+  private StringPool(final Builder builder) {
+    var capacity = Integer.highestOneBit(Math.max(builder.maximumStrings - 1, 1)) << 1;
+    this.strings = new Optional<?>[capacity];
+    this.mask = this.strings.length - 1;
+    this.locations = new ConcurrentHashMap<>();
+    this.maximumLocations = builder.maximumLocations;
+  }
+
+  /**
+   * Get the pooled instance of a string, pooling the string if no equal string is pooled.
+   *
+   * @param value the string to look up.
+   * @return an equal pooled string.
+   */
+  public String intern(final String value) {
+    return optional(value).get();
+  }
+
+  /* the optional wrapper of a pooled string, a racy read sees a complete optional or none. */
+  @SuppressWarnings("unchecked")
+  Optional<String> optional(final String value) {
+    var hash = value.hashCode();
+    var index = (hash ^ (hash >>> 16)) & mask;
+    var pooled = (Optional<String>) strings[index];
+    if (Objects.nonNull(pooled) && pooled.get().equals(value)) {
+      return pooled;
+    }
+    var optional = Optional.of(value);
+    strings[index] = optional;
+    return optional;
+  }
+
+  /* the pooled location of a geonameid, replaced when the location changed. */
+  APIResponse.Location location(final APIResponse.Location location) {
+    var pooled = locations.get(location.geonameid);
+    if (location.equals(pooled)) {
+      return pooled;
+    }
+    if (Objects.nonNull(pooled) || locations.size() < maximumLocations) {
+      locations.put(location.geonameid, location);
+    }
+    return location;
+  }
+
+  static String intern(final StringPool pool, final String value) {
+    return Objects.isNull(pool) ? value : pool.intern(value);
+  }
+
+  static Optional<String> optional(final StringPool pool, final String value) {
+    return Objects.isNull(pool) ? Optional.of(value) : pool.optional(value);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder class for {@link StringPool}, sized for 65536 strings and 16384 locations. */
+  public static final class Builder {
+    private int maximumStrings = 1 << 16;
+    private int maximumLocations = 1 << 14;
+
+    /**
+     * Set the number of strings the pool can hold, rounded up to a power of two.
+     *
+     * @param maximumStrings the maximum number of pooled strings.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaximumStrings(final int maximumStrings) {
+      if (maximumStrings <= 0 || maximumStrings > 1 << 30) {
+        throw new IllegalArgumentException("maximum strings should be a positive number");
+      }
+      this.maximumStrings = maximumStrings;
+      return this;
+    }
+
+    /**
+     * Set the number of locations the pool can hold, locations received once the pool is full are
+     * not shared.
+     *
+     * @param maximumLocations the maximum number of pooled locations.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaximumLocations(final int maximumLocations) {
+      if (maximumLocations <= 0) {
+        throw new IllegalArgumentException("maximum locations should be a positive number");
+      }
+      this.maximumLocations = maximumLocations;
+      return this;
+    }
+
+    public StringPool build() {
+      return new StringPool(this);
+    }
+  }
+}
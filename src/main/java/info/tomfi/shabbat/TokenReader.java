@@ -0,0 +1,29 @@
+package info.tomfi.shabbat;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+
+/**
+ * Binds a value from JSON tokens pushed one at a time, as a non-blocking parser produces them. A
+ * reader binds a single value and is not reused.
+ */
+interface TokenReader<T> {
+  /**
+   * Push the current token of a parser.
+   *
+   * @param parser the parser positioned on the token.
+   * @param token the current token.
+   * @throws IOException when the token does not fit the bound value.
+   */
+  void next(JsonParser parser, JsonToken token) throws IOException;
+
+  /**
+   * Get the bound value once all the tokens were pushed.
+   *
+   * @param parser the parser the tokens were read from, for error reporting.
+   * @return the bound value.
+   * @throws IOException when the value did not end.
+   */
+  T result(JsonParser parser) throws IOException;
+}
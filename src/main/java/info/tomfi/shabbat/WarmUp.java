@@ -0,0 +1,228 @@
+package info.tomfi.shabbat;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Plan for warming up the shabbat times of a set of locations for the upcoming weeks, used with
+ * {@link ShabbatAPI#warmUp(WarmUp)}. A request is made for every location and every friday of the
+ * horizon, starting at the current week, the nearest weeks are loaded first. The locations are
+ * added by geonameid with the default request parameters, or as request templates with their own
+ * parameters. The current week is the week of the current date in UTC, unless the zone of the
+ * locations was set.
+ *
+ * <p>The requests are sent with a bounded number of calls in flight, and optionally throttled to a
+ * minimal interval between call launches. The progress is reported by the returned {@link
+ * BatchResponse}, out of {@link #requestCount()} requests.
+ */
+public final class WarmUp {
+  private final List<APIRequest.Template> templates;
+  private final int weeks;
+  private final int maxInFlight;
+  private final Duration launchInterval;
+  private final ZoneId zone;
+  private final Clock clock;
+
+  private WarmUp(final Builder builder) {
+    var templates = new ArrayList<APIRequest.Template>(builder.geoIds.size());
+    for (var geoId : builder.geoIds) {
+      templates.add(APIRequest.builder().forGeoId(geoId).template());
+    }
+    templates.addAll(builder.templates);
+    this.templates = List.copyOf(templates);
+    this.weeks = builder.weeks;
+    this.maxInFlight = builder.maxInFlight;
+    this.launchInterval = builder.launchInterval;
+    this.zone = builder.zone;
+    this.clock = builder.clock;
+  }
+
+  /**
+   * Get the number of requests a warm up sends, a request for every location and every week.
+   *
+   * @return the number of requests.
+   */
+  public int requestCount() {
+    return templates.size() * weeks;
+  }
+
+  int maxInFlight() {
+    return maxInFlight;
+  }
+
+  /* the requests of the horizon, week by week, the fridays are counted from the current date. */
+  Iterator<APIRequest> requests() {
+    var today = LocalDate.ofInstant(clock.instant(), zone);
+    var friday =
+        today.getDayOfWeek() == DayOfWeek.SATURDAY
+            ? today.minusDays(1)
+            : today.with(TemporalAdjusters.nextOrSame(DayOfWeek.FRIDAY));
+    return new Iterator<>() {
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index < requestCount();
+      }
+
+      @Override
+      public APIRequest next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        var week = index / templates.size();
+        var template = templates.get(index % templates.size());
+        index++;
+        return template.forDate(friday.plusWeeks(week));
+      }
+    };
+  }
+
+  /* wraps a sender, delaying every call to its launch slot, spaced by the launch interval. */
+  Function<APIRequest, CompletableFuture<APIResponse>> throttle(
+      final Function<APIRequest, CompletableFuture<APIResponse>> sender) {
+    if (Objects.isNull(launchInterval)) {
+      return sender;
+    }
+    var interval = launchInterval.toNanos();
+    var nextSlot = new AtomicLong(System.nanoTime());
+    return request -> {
+      var now = System.nanoTime();
+      var slot = nextSlot.getAndUpdate(next -> Math.max(next, now) + interval);
+      var delay = slot - now;
+      if (delay <= 0) {
+        return sender.apply(request);
+      }
+      return CompletableFuture.runAsync(
+              () -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS))
+          .thenCompose(nothing -> sender.apply(request));
+    };
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder class for {@link WarmUp}, a horizon of one week and 4 calls in flight by default. */
+  public static final class Builder {
+    private final Collection<Integer> geoIds = new LinkedHashSet<>();
+    private final List<APIRequest.Template> templates = new ArrayList<>();
+    private int weeks = 1;
+    private int maxInFlight = 4;
+    private Duration launchInterval;
+    private ZoneId zone = ZoneOffset.UTC;
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Add the locations to warm up.
+     *
+     * @param geoIds the geonameids of the locations.
+     * @return the fluent builder instance.
+     */
+    public Builder forGeoIds(final Collection<Integer> geoIds) {
+      Objects.requireNonNull(geoIds, "Null geoIds");
+      for (var geoId : geoIds) {
+        this.geoIds.add(Objects.requireNonNull(geoId, "Null geoId"));
+      }
+      return this;
+    }
+
+    /**
+     * Add the locations to warm up with their own request parameters, i.e. the candle lighting
+     * minutes, a request is made from every template for every week of the horizon.
+     *
+     * @param templates the request templates of the locations.
+     * @return the fluent builder instance.
+     */
+    public Builder forTemplates(final Collection<APIRequest.Template> templates) {
+      Objects.requireNonNull(templates, "Null templates");
+      for (var template : templates) {
+        this.templates.add(Objects.requireNonNull(template, "Null template"));
+      }
+      return this;
+    }
+
+    /**
+     * Set the number of weeks to warm up, including the current week.
+     *
+     * @param weeks the horizon in weeks.
+     * @return the fluent builder instance.
+     */
+    public Builder withHorizon(final int weeks) {
+      if (weeks <= 0) {
+        throw new IllegalArgumentException("horizon should be a positive number of weeks");
+      }
+      this.weeks = weeks;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of calls in flight.
+     *
+     * @param maxInFlight the maximum number of calls in flight.
+     * @return the fluent builder instance.
+     */
+    public Builder withMaxInFlight(final int maxInFlight) {
+      if (maxInFlight <= 0) {
+        throw new IllegalArgumentException("max in flight should be a positive integer");
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * Throttle the warm up, spacing the call launches by a minimal interval.
+     *
+     * @param launchInterval the minimal interval between call launches.
+     * @return the fluent builder instance.
+     */
+    public Builder withLaunchInterval(final Duration launchInterval) {
+      Objects.requireNonNull(launchInterval, "Null launch interval");
+      if (launchInterval.isNegative() || launchInterval.isZero()) {
+        throw new IllegalArgumentException("launch interval should be a positive duration");
+      }
+      this.launchInterval = launchInterval;
+      return this;
+    }
+
+    /**
+     * Set the zone the current date is taken in, i.e. of the warmed up locations, so the current
+     * week turns over at their saturday midnight. If not set, the current date is taken in UTC.
+     *
+     * @param zone the zone of the locations.
+     * @return the fluent builder instance.
+     */
+    public Builder withZone(final ZoneId zone) {
+      this.zone = Objects.requireNonNull(zone, "Null zone");
+      return this;
+    }
+
+    Builder withClock(final Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    public WarmUp build() {
+      if (geoIds.isEmpty() && templates.isEmpty()) {
+        throw new IllegalArgumentException("warm up should have at least one location");
+      }
+      return new WarmUp(this);
+    }
+  }
+}
@@ -16,7 +16,8 @@
 class APIRequestTest {
   @Test
   void verify_equals_and_hashcode() {
-    EqualsVerifier.forClass(APIRequest.class).verify();
+    // the query string and the uri are derived from the query parameters
+    EqualsVerifier.forClass(APIRequest.class).withIgnoredFields("query", "uri").verify();
   }
 
   @Test
@@ -100,4 +101,48 @@ void verify_a_request_built_with_the_query_params_builder() {
 
     Assertions.assertThat(request.queryParams()).containsAllEntriesOf(expectedParams);
   }
+
+  @Test
+  void the_query_string_values_are_percent_encoded() {
+    var request =
+        APIRequest.builder()
+            .forGeoId(281184)
+            .addParam(ParamKey.CITY)
+            .withValue("Tel Aviv/יפו")
+            .build();
+
+    Assertions.assertThat(request.query())
+        .isEqualTo(
+            "a=off&b=18&city=Tel%20Aviv%2F%D7%99%D7%A4%D7%95&geonameid=281184&geo=geoname&m=50"
+                + "&leyning=off&cfg=json");
+    Assertions.assertThat(request.uri().getRawQuery()).isEqualTo(request.query());
+    Assertions.assertThat(request.uri().getQuery()).contains("city=Tel Aviv/יפו&");
+  }
+
+  @Test
+  void a_built_request_is_not_modified_by_a_reused_builder() {
+    var builder = APIRequest.builder().forGeoId(281184);
+    var request = builder.build();
+    builder.withMinutesAfterSundown(42);
+
+    Assertions.assertThat(request.queryParams())
+        .containsEntry(ParamKey.HAVDALAH, IntWrapper.of(50));
+    Assertions.assertThat(request.query()).contains("m=50");
+  }
+
+  @Test
+  void requests_created_from_a_template_equal_the_requests_built_for_the_same_date() {
+    var builder =
+        APIRequest.builder().forGeoId(281184).withMinutesAfterSundown(42).withDate(LocalDate.MIN);
+    var template = builder.template();
+
+    for (var date : new LocalDate[] {LocalDate.of(2021, 1, 1), LocalDate.of(2024, 12, 31)}) {
+      var request = template.forDate(date);
+      var expected = builder.withDate(date).build();
+
+      Assertions.assertThat(request).isEqualTo(expected);
+      Assertions.assertThat(request.query()).isEqualTo(expected.query());
+      Assertions.assertThat(request.uri()).isEqualTo(expected.uri());
+    }
+  }
 }
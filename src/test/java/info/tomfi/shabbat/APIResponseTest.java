@@ -1,12 +1,20 @@
 package info.tomfi.shabbat;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 
 import com.fasterxml.jackson.core.exc.StreamReadException;
 import com.fasterxml.jackson.databind.DatabindException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import info.tomfi.shabbat.APIResponse.ShabbatItem;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import nl.jqno.equalsverifier.Warning;
 import org.junit.jupiter.api.Test;
@@ -16,6 +24,15 @@ class APIResponseTest {
   void verify_equals_and_hashcode() {
     EqualsVerifier.forClass(APIResponse.class)
         .suppress(Warning.ALL_NONFINAL_FIELDS_SHOULD_BE_USED)
+        .withIgnoredFields(
+            "hasItems",
+            "index",
+            "candlesItem",
+            "havdalahItem",
+            "parashaItem",
+            "roshChodeshItem",
+            "shabbatStart",
+            "shabbatEnd")
         .verify();
     EqualsVerifier.forClass(APIResponse.DateRange.class).verify();
     EqualsVerifier.forClass(APIResponse.Item.class).verify();
@@ -172,4 +189,144 @@ void verify_serialization_of_a_real_rosh_chodesh_response_object()
     var roshChodeshItem = response.getShabbatItem(ShabbatItem.ROSH_CHODESH).get();
     assertThat(roshChodeshItem.title).isEqualTo("Rosh Chodesh Adar II");
   }
+
+  @Test
+  void items_are_indexed_by_category_and_accessors_return_the_same_instances() throws IOException {
+    var response =
+        new ObjectMapper()
+            .readValue(
+                getClass().getModule().getResourceAsStream("api-responses/real_response.json"),
+                APIResponse.class);
+
+    assertThat(response.getItems(APIResponse.Item.Category.PARASHAT))
+        .singleElement()
+        .extracting(item -> item.title)
+        .isEqualTo("Parashat Vayechi");
+    assertThat(response.getItems(APIResponse.Item.Category.HOLIDAY)).isEmpty();
+    assertThat(response.getShabbatStart()).isSameAs(response.getShabbatStart());
+    assertThat(response.getShabbatEnd()).isSameAs(response.getShabbatEnd());
+    assertThat(response.getShabbatItem(ShabbatItem.PARASHAT_SHABBAT))
+        .isSameAs(response.getShabbatItem(ShabbatItem.PARASHAT_SHABBAT));
+  }
+
+  @Test
+  void a_response_without_items_or_a_parasha_fails_its_accessors() {
+    var location =
+        new APIResponse.Location.Builder()
+            .withCity("Jerusalem")
+            .withCountry("Israel")
+            .withGeo("geoname")
+            .withGeonameid(281184)
+            .withLatitude(31.76904)
+            .withLongitude(35.21633)
+            .withTitle("Jerusalem, Israel")
+            .build();
+    var empty = new APIResponse.Builder().withDate("d").withTitle("t").withLocation(location);
+    var candles =
+        new APIResponse.Item.Builder()
+            .withTitle("Candle lighting: 16:06")
+            .withDate("2021-01-01T16:06:00+02:00")
+            .withCategory("candles")
+            .build();
+    var noItems = empty.build();
+    var noParasha = empty.withItems(List.of(candles)).build();
+
+    assertThatIllegalArgumentException()
+        .isThrownBy(noItems::isRoshChodesh)
+        .withMessage("response has no items");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> noParasha.getShabbatItem(ShabbatItem.PARASHAT_SHABBAT))
+        .withMessage("candles item has doesn't states parasha");
+    assertThatIllegalArgumentException()
+        .isThrownBy(noParasha::getShabbatEnd)
+        .withMessage("no havdala item found");
+    assertThat(noParasha.getShabbatStart()).isEqualTo("2021-01-01T16:06:00+02:00");
+    var havdalah =
+        new APIResponse.Item.Builder()
+            .withTitle("Havdalah: 17:20")
+            .withDate("2021-01-02T17:20:00+02:00")
+            .withCategory("havdalah")
+            .build();
+    var noCandles = empty.withItems(List.of(havdalah)).build();
+
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> noCandles.getShabbatItem(ShabbatItem.PARASHAT_SHABBAT))
+        .withMessage("no candles item found");
+  }
+
+  @Test
+  void the_items_are_copied_from_the_builder() {
+    var location =
+        new APIResponse.Location.Builder()
+            .withCity("Jerusalem")
+            .withCountry("Israel")
+            .withGeo("geoname")
+            .withGeonameid(281184)
+            .withLatitude(31.76904)
+            .withLongitude(35.21633)
+            .withTitle("Jerusalem, Israel")
+            .build();
+    var candles =
+        new APIResponse.Item.Builder()
+            .withTitle("Candle lighting: 16:06")
+            .withDate("2021-01-01T16:06:00+02:00")
+            .withCategory("candles")
+            .build();
+    var items = new ArrayList<>(List.of(candles));
+    var response =
+        new APIResponse.Builder()
+            .withDate("d")
+            .withTitle("t")
+            .withLocation(location)
+            .withItems(items)
+            .build();
+
+    items.clear();
+
+    assertThat(response.items).hasValue(List.of(candles));
+    assertThat(response.getItems(APIResponse.Item.Category.CANDLES)).containsExactly(candles);
+  }
+
+  @Test
+  void a_response_published_racily_across_threads_is_read_consistently()
+      throws IOException, InterruptedException, ExecutionException {
+    var body =
+        getClass()
+            .getModule()
+            .getResourceAsStream("api-responses/real_response_rosh_chodesh.json")
+            .readAllBytes();
+    var mapper = new ObjectMapper();
+    var expected = mapper.readValue(body, APIResponse.class);
+    var readers = Math.max(2, Runtime.getRuntime().availableProcessors());
+    var executor = Executors.newFixedThreadPool(readers);
+    try {
+      for (var round = 0; round < 200; round++) {
+        // opaque access publishes without a happens before edge, only final fields are safe
+        var shared = new AtomicReference<APIResponse>();
+        var checks = new ArrayList<Future<?>>();
+        for (var reader = 0; reader < readers; reader++) {
+          checks.add(
+              executor.submit(
+                  () -> {
+                    APIResponse response;
+                    while (Objects.isNull(response = shared.getOpaque())) {
+                      Thread.onSpinWait();
+                    }
+                    assertThat(response.getShabbatStart()).isEqualTo(expected.getShabbatStart());
+                    assertThat(response.getShabbatEnd()).isEqualTo(expected.getShabbatEnd());
+                    assertThat(response.getShabbatParasha()).isEqualTo("Parashat Pekudei");
+                    assertThat(response.isRoshChodesh()).isTrue();
+                    assertThat(response.getShabbatItem(ShabbatItem.PARASHAT_SHABBAT))
+                        .isEqualTo(expected.getShabbatItem(ShabbatItem.PARASHAT_SHABBAT));
+                  }));
+        }
+        shared.setOpaque(mapper.readValue(body, APIResponse.class));
+        for (var check : checks) {
+          check.get();
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,114 @@
+package info.tomfi.shabbat;
+
+import static info.tomfi.shabbat.Fixtures.requestsFor;
+import static info.tomfi.shabbat.Fixtures.response;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class BatchResponseTest {
+  private static final APIResponse DUMMY_RESPONSE = response(281184);
+
+  @Test
+  void a_batch_never_exceeds_the_max_in_flight_calls()
+      throws InterruptedException, ExecutionException {
+    var pending = Collections.synchronizedList(new ArrayList<CompletableFuture<APIResponse>>());
+    var batch =
+        BatchResponse.send(
+            requestsFor(10).iterator(),
+            3,
+            request -> {
+              var future = new CompletableFuture<APIResponse>();
+              pending.add(future);
+              return future;
+            });
+
+    assertThat(pending).hasSize(3);
+    while (!batch.isDone()) {
+      assertThat(pending.stream().filter(f -> !f.isDone()).count()).isLessThanOrEqualTo(3);
+      pending.stream().filter(f -> !f.isDone()).findFirst().get().complete(DUMMY_RESPONSE);
+    }
+
+    assertThat(pending).hasSize(10);
+    assertThat(batch.completion().get().responses()).hasSize(10);
+    assertThat(batch.completedCount()).isEqualTo(10);
+  }
+
+  @Test
+  void failed_requests_are_collected_without_aborting_the_batch()
+      throws InterruptedException, ExecutionException {
+    var requests = requestsFor(6);
+    var batch =
+        BatchResponse.send(
+            requests.iterator(),
+            2,
+            request ->
+                requests.indexOf(request) % 2 == 0
+                    ? CompletableFuture.completedFuture(DUMMY_RESPONSE)
+                    : CompletableFuture.supplyAsync(
+                        () -> {
+                          throw new IllegalStateException("dummy failure");
+                        }));
+
+    batch.completion().get();
+    assertThat(batch.responses())
+        .containsOnlyKeys(requests.get(0), requests.get(2), requests.get(4));
+    assertThat(batch.failures())
+        .extracting(BatchResponse.Failure::request)
+        .containsExactlyInAnyOrder(requests.get(1), requests.get(3), requests.get(5));
+    assertThat(batch.failures())
+        .extracting(BatchResponse.Failure::cause)
+        .allMatch(IllegalStateException.class::isInstance);
+  }
+
+  @Test
+  void a_large_batch_of_synchronously_completed_requests_does_not_overflow_the_stack() {
+    var count = new AtomicInteger();
+    Iterator<APIRequest> requests =
+        new Iterator<>() {
+          private final APIRequest request = APIRequest.builder().forGeoId(1).build();
+
+          @Override
+          public boolean hasNext() {
+            return count.get() < 100_000;
+          }
+
+          @Override
+          public APIRequest next() {
+            count.incrementAndGet();
+            return request;
+          }
+        };
+
+    var batch =
+        BatchResponse.send(
+            requests, 4, request -> CompletableFuture.completedFuture(DUMMY_RESPONSE));
+
+    assertThat(batch.isDone()).isTrue();
+    assertThat(batch.completedCount()).isEqualTo(100_000);
+  }
+
+  @Test
+  void an_empty_batch_is_completed_immediately() {
+    var batch = BatchResponse.send(Collections.emptyIterator(), 1, request -> null);
+
+    assertThat(batch.isDone()).isTrue();
+    assertThat(batch.responses()).isEmpty();
+    assertThat(batch.failures()).isEmpty();
+  }
+
+  @Test
+  void sending_a_batch_with_a_non_positive_max_in_flight_throws_an_IllegalArgumentException() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> BatchResponse.send(Collections.emptyIterator(), 0, request -> null))
+        .withMessage("max in flight should be a positive integer");
+  }
+}
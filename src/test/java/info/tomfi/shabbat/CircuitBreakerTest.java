@@ -0,0 +1,193 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import info.tomfi.shabbat.CircuitBreaker.State;
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+  private MutableClock clock;
+  private CircuitBreaker breaker;
+  private AtomicInteger calls;
+
+  @BeforeEach
+  void initialize() {
+    clock = new MutableClock(Instant.parse("2021-01-01T00:00:00Z"));
+    breaker =
+        CircuitBreaker.builder()
+            .withFailureThreshold(3)
+            .withOpenDuration(Duration.ofSeconds(30))
+            .withClock(clock)
+            .build();
+    calls = new AtomicInteger();
+  }
+
+  @Test
+  void repeated_failures_open_the_circuit_and_calls_fail_fast() {
+    for (var i = 0; i < 3; i++) {
+      assertThat(breaker.state()).isEqualTo(State.CLOSED);
+      call(CompletableFuture.failedFuture(new APIStatusException(503)));
+    }
+
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    assertThat(call(CompletableFuture.completedFuture("response")))
+        .failsWithin(Duration.ZERO)
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(CircuitOpenException.class);
+    assertThat(calls).hasValue(3);
+  }
+
+  @Test
+  void a_success_resets_the_consecutive_failures() {
+    call(CompletableFuture.failedFuture(new IOException("reset")));
+    call(CompletableFuture.failedFuture(new IOException("reset")));
+    call(CompletableFuture.completedFuture("response"));
+    call(CompletableFuture.failedFuture(new IOException("reset")));
+    call(CompletableFuture.failedFuture(new IOException("reset")));
+
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void client_errors_do_not_open_the_circuit() {
+    for (var i = 0; i < 5; i++) {
+      call(CompletableFuture.failedFuture(new APIStatusException(404)));
+    }
+
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void a_single_probe_is_let_through_once_the_open_duration_elapses() {
+    openCircuit();
+    clock.now = clock.now.plusSeconds(30);
+
+    var probe = new CompletableFuture<String>();
+    assertThat(call(probe)).isSameAs(probe);
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+    assertThat(call(CompletableFuture.completedFuture("response")))
+        .isCompletedExceptionally();
+
+    // a failed probe opens the circuit for another open duration
+    probe.completeExceptionally(new IOException("reset"));
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    clock.now = clock.now.plusSeconds(29);
+    assertThat(call(CompletableFuture.completedFuture("response")))
+        .isCompletedExceptionally();
+
+    // a successful probe closes the circuit
+    clock.now = clock.now.plusSeconds(1);
+    assertThat(call(CompletableFuture.completedFuture("response")))
+        .isCompletedWithValue("response");
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void a_cancelled_probe_opens_the_circuit_for_another_open_duration() {
+    openCircuit();
+    clock.now = clock.now.plusSeconds(30);
+
+    call(new CompletableFuture<>()).cancel(true);
+
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    assertThat(call(CompletableFuture.completedFuture("response")))
+        .isCompletedExceptionally();
+    clock.now = clock.now.plusSeconds(30);
+    assertThat(call(CompletableFuture.completedFuture("response")))
+        .isCompletedWithValue("response");
+  }
+
+  @Test
+  void a_late_success_of_a_call_let_through_while_closed_does_not_close_an_open_circuit() {
+    var slow = new CompletableFuture<String>();
+    call(slow);
+    openCircuit();
+
+    slow.complete("response");
+
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    assertThat(call(CompletableFuture.completedFuture("response")))
+        .isCompletedExceptionally();
+  }
+
+  @Test
+  void a_late_outcome_of_a_call_let_through_while_closed_does_not_decide_the_probe() {
+    var slowSuccess = new CompletableFuture<String>();
+    var slowCancelled = new CompletableFuture<String>();
+    call(slowSuccess);
+    call(slowCancelled);
+    openCircuit();
+    clock.now = clock.now.plusSeconds(30);
+    var probe = new CompletableFuture<String>();
+    call(probe);
+
+    slowSuccess.complete("response");
+    slowCancelled.cancel(true);
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+
+    probe.completeExceptionally(new IOException("reset"));
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+  }
+
+  @Test
+  void a_hung_probe_times_out_and_opens_the_circuit_again() {
+    breaker =
+        CircuitBreaker.builder()
+            .withFailureThreshold(3)
+            .withProbeTimeout(Duration.ofMillis(50))
+            .withClock(clock)
+            .build();
+    openCircuit();
+    clock.now = clock.now.plusSeconds(30);
+
+    var probe = call(new CompletableFuture<>());
+    assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+
+    assertThat(probe)
+        .failsWithin(Duration.ofSeconds(5))
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(HttpTimeoutException.class);
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+    clock.now = clock.now.plusSeconds(30);
+    assertThat(call(CompletableFuture.completedFuture("response")))
+        .isCompletedWithValue("response");
+    assertThat(breaker.state()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void building_a_circuit_breaker_with_invalid_values_throws_an_IllegalArgumentException() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> CircuitBreaker.builder().withFailureThreshold(0))
+        .withMessage("failure threshold should be a positive integer");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> CircuitBreaker.builder().withOpenDuration(Duration.ZERO))
+        .withMessage("open duration should be a positive duration");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> CircuitBreaker.builder().withProbeTimeout(Duration.ZERO))
+        .withMessage("probe timeout should be a positive duration");
+  }
+
+  private void openCircuit() {
+    for (var i = 0; i < 3; i++) {
+      call(CompletableFuture.failedFuture(new IOException("reset")));
+    }
+    assertThat(breaker.state()).isEqualTo(State.OPEN);
+  }
+
+  private CompletableFuture<String> call(final CompletableFuture<String> result) {
+    return breaker.call(
+        () -> {
+          calls.incrementAndGet();
+          return result;
+        });
+  }
+}
@@ -0,0 +1,35 @@
+package info.tomfi.shabbat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/** Requests and minimal Jerusalem responses shared by the batch and publisher tests. */
+final class Fixtures {
+  private Fixtures() {}
+
+  /* a response titled and located by the geonameid, telling the responses apart. */
+  static APIResponse response(final int geoId) {
+    return new APIResponse.Builder()
+        .withDate("2022-10-23T06:37:49.996Z")
+        .withTitle(String.valueOf(geoId))
+        .withLocation(
+            new APIResponse.Location.Builder()
+                .withCity("Jerusalem")
+                .withCountry("Israel")
+                .withGeo("geoname")
+                .withGeonameid(geoId)
+                .withLatitude(31.76904)
+                .withLongitude(35.21633)
+                .withTitle("Jerusalem, Israel")
+                .build())
+        .build();
+  }
+
+  /* requests for the geonameids 1 to count, in order. */
+  static List<APIRequest> requestsFor(final int count) {
+    return IntStream.rangeClosed(1, count)
+        .mapToObj(id -> APIRequest.builder().forGeoId(id).build())
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,111 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class HebrewCalendarTest {
+  @ParameterizedTest
+  @CsvSource({
+    "2021-01-02, 18 Tevet 5781",
+    "2022-03-04, 1 Adar II 5782",
+    "2022-03-05, 2 Adar II 5782",
+    "2022-02-02, 1 Adar I 5782",
+    "2021-09-07, 1 Tishrei 5782",
+    "2021-09-06, 29 Elul 5781",
+    "2023-02-22, 1 Adar 5783",
+    "1970-01-01, 23 Tevet 5730"
+  })
+  void gregorian_days_are_converted_to_hebrew_dates(final LocalDate date, final String expected) {
+    var epochDay = date.toEpochDay();
+
+    assertThat(HebrewCalendar.yearOf(epochDay).date(epochDay)).isEqualTo(expected);
+  }
+
+  @Test
+  void rosh_chodesh_is_the_first_and_the_thirtieth_day_but_not_rosh_hashana() {
+    var adar = LocalDate.of(2022, 3, 3).toEpochDay(); // 30 adar i 5782
+    var year = HebrewCalendar.yearOf(adar);
+
+    assertThat(year.roshChodesh(adar)).isEqualTo(HebrewCalendar.ADAR);
+    assertThat(year.roshChodesh(adar + 1)).isEqualTo(HebrewCalendar.ADAR);
+    assertThat(year.monthName(HebrewCalendar.ADAR, false)).isEqualTo("Adar II");
+    assertThat(year.monthName(HebrewCalendar.ADAR, true)).isEqualTo("אדר ב׳");
+    assertThat(year.roshChodesh(adar + 2)).isEqualTo(-1);
+    var roshHashana = LocalDate.of(2021, 9, 7).toEpochDay();
+    assertThat(HebrewCalendar.yearOf(roshHashana).roshChodesh(roshHashana)).isEqualTo(-1);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "2021-01-02, Vayechi, Vayechi",
+    "2022-03-05, Pekudei, Pekudei",
+    "2021-09-04, Nitzavim, Nitzavim",
+    "2021-09-11, Vayeilech, Vayeilech",
+    "2021-09-18, Ha'Azinu, Ha'Azinu",
+    "2023-09-09, Nitzavim-Vayeilech, Nitzavim-Vayeilech",
+    "2023-10-14, Bereshit, Bereshit",
+    "2024-03-16, Pekudei, Pekudei",
+    "2024-04-20, Metzora, Metzora",
+    // 5785 is a complete common year starting on thursday, vayakhel and pekudei are separate
+    "2025-03-22, Vayakhel, Vayakhel",
+    "2025-03-29, Pekudei, Pekudei",
+    "2025-04-12, Tzav, Tzav",
+    "2025-05-24, Behar-Bechukotai, Behar-Bechukotai",
+    "2025-05-31, Bamidbar, Bamidbar",
+    // pesach 5778 started on shabbat, israel was ahead until behar and bechukotai
+    "2018-04-07, Shmini, ",
+    "2018-05-12, Bechukotai, Behar-Bechukotai",
+    // pesach 5779 started on shabbat in a leap year, israel was ahead until matot and masei
+    "2019-06-08, Nasso, Bamidbar",
+    "2019-08-03, Masei, Matot-Masei",
+    "2019-08-10, Devarim, Devarim"
+  })
+  void shabbatot_are_scheduled_their_parasha(
+      final LocalDate saturday, final String israel, final String diaspora) {
+    var epochDay = saturday.toEpochDay();
+    var year = HebrewCalendar.yearOf(epochDay);
+
+    assertThat(name(year.reading(epochDay, true))).isEqualTo(israel);
+    assertThat(name(year.reading(epochDay, false))).isEqualTo(diaspora);
+  }
+
+  @Test
+  void every_portion_is_read_once_a_cycle_in_israel_and_the_diaspora() {
+    for (var number = 5660; number < 6200; number++) {
+      var year = HebrewCalendar.year(number);
+      var next = HebrewCalendar.year(number + 1);
+      for (var israel : new boolean[] {true, false}) {
+        var portions = new ArrayList<Integer>();
+        // from bereshit of this year, to ha'azinu of the next year
+        var saturday = year.start + Math.floorMod(2 - year.start, 7);
+        var bereshit = false;
+        for (; saturday < next.start + 14; saturday += 7) {
+          var reading = (saturday < next.start ? year : next).reading(saturday, israel);
+          bereshit |= reading == 0;
+          if (bereshit && reading != HebrewCalendar.NO_PARASHA) {
+            portions.add(reading & 0xff);
+            if ((reading & 0x100) != 0) {
+              portions.add((reading & 0xff) + 1);
+            }
+          }
+          if (bereshit && reading == 52) {
+            break;
+          }
+        }
+        assertThat(portions)
+            .as("year %d in israel %b", number, israel)
+            .containsExactlyElementsOf(() -> IntStream.rangeClosed(0, 52).iterator());
+      }
+    }
+  }
+
+  private static String name(final int reading) {
+    return reading == HebrewCalendar.NO_PARASHA ? null : HebrewCalendar.parashaName(reading, false);
+  }
+}
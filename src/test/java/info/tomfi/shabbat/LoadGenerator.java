@@ -0,0 +1,214 @@
+package info.tomfi.shabbat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Open loop load generator driving {@link ShabbatAPI#sendAsync(APIRequest)} at a target rate. The
+ * calls are launched on a schedule regardless of the responses, and every latency is measured from
+ * the scheduled launch, so a stalled client shows in the percentiles instead of lowering the rate.
+ *
+ * <p>Run against a {@link StubServer} with {@code mvn -B -q test-compile dependency:build-classpath
+ * -Dmdep.outputFile=target/cp.txt} and then {@code java -cp
+ * target/classes:target/test-classes:$(cat target/cp.txt) info.tomfi.shabbat.LoadGenerator [qps]
+ * [seconds] [latency ms] [jitter ms] [error rate] [throttle qps]}.
+ */
+final class LoadGenerator {
+  private LoadGenerator() {}
+
+  /** The outcome of a load run. */
+  static final class Report {
+    private final long sent;
+    private final long succeeded;
+    private final Map<String, Long> failures;
+    private final long elapsed;
+    private final LogLinearHistogram latencies;
+
+    private Report(
+        final long sent,
+        final long succeeded,
+        final Map<String, Long> failures,
+        final long elapsed,
+        final LogLinearHistogram latencies) {
+      this.sent = sent;
+      this.succeeded = succeeded;
+      this.failures = failures;
+      this.elapsed = elapsed;
+      this.latencies = latencies;
+    }
+
+    long sent() {
+      return sent;
+    }
+
+    long succeeded() {
+      return succeeded;
+    }
+
+    /**
+     * Get the number of failed calls by exception type, calls not completed in time are counted
+     * as timeouts.
+     *
+     * @return the failure counts.
+     */
+    Map<String, Long> failures() {
+      return failures;
+    }
+
+    /**
+     * Get the number of successful calls per second, from the first launch until the last call
+     * completed.
+     *
+     * @return the throughput.
+     */
+    double throughput() {
+      return succeeded * 1e9 / elapsed;
+    }
+
+    /**
+     * Get the approximate latency of the completed calls at a percentile.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the latency at the percentile.
+     */
+    Duration latency(final double percentile) {
+      return Duration.ofNanos(latencies.valueAt(percentile));
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "sent %d, succeeded %d, failed %s in %.2fs: %.1f/s, "
+              + "latency p50 %.2fms, p90 %.2fms, p99 %.2fms, p99.9 %.2fms, max %.2fms",
+          sent,
+          succeeded,
+          failures,
+          elapsed / 1e9,
+          throughput(),
+          millis(50),
+          millis(90),
+          millis(99),
+          millis(99.9),
+          millis(100));
+    }
+
+    private double millis(final double percentile) {
+      return latencies.valueAt(percentile) / 1e6;
+    }
+  }
+
+  /**
+   * Send requests at a target rate for a duration, and wait for the calls in flight.
+   *
+   * @param api the api to send the requests with.
+   * @param requests the request to send for every launch index.
+   * @param qps the number of requests launched per second.
+   * @param duration the duration of the launches.
+   * @param timeout how long to wait for the calls in flight once the launches are done.
+   * @return the report of the run.
+   */
+  static Report run(
+      final ShabbatAPI api,
+      final IntFunction<APIRequest> requests,
+      final double qps,
+      final Duration duration,
+      final Duration timeout) {
+    if (!(qps > 0)) {
+      throw new IllegalArgumentException("qps should be a positive number");
+    }
+    var interval = 1e9 / qps;
+    var count = (int) (duration.toNanos() / interval);
+    // from about a microsecond up to about 68 seconds
+    var latencies = new LogLinearHistogram(10, 36);
+    var succeeded = new LongAdder();
+    var failures = new ConcurrentHashMap<String, LongAdder>();
+    var calls = new ArrayList<CompletableFuture<APIResponse>>(count);
+
+    var start = System.nanoTime();
+    for (var i = 0; i < count; i++) {
+      var scheduled = start + (long) (i * interval);
+      var wait = scheduled - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      CompletableFuture<APIResponse> call;
+      try {
+        call = api.sendAsync(requests.apply(i));
+      } catch (final RuntimeException exc) {
+        call = CompletableFuture.failedFuture(exc);
+      }
+      calls.add(
+          call.whenComplete(
+              (response, throwable) -> {
+                latencies.record(System.nanoTime() - scheduled);
+                if (Objects.isNull(throwable)) {
+                  succeeded.increment();
+                } else {
+                  var cause =
+                      throwable instanceof CompletionException
+                              && Objects.nonNull(throwable.getCause())
+                          ? throwable.getCause()
+                          : throwable;
+                  failures
+                      .computeIfAbsent(cause.getClass().getSimpleName(), type -> new LongAdder())
+                      .increment();
+                }
+              }));
+    }
+
+    var pending = CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new));
+    try {
+      pending.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (final TimeoutException exc) {
+      var timedOut = calls.stream().filter(call -> !call.isDone()).count();
+      failures.computeIfAbsent("Timeout", type -> new LongAdder()).add(timedOut);
+    } catch (final InterruptedException exc) {
+      Thread.currentThread().interrupt();
+    } catch (final Exception exc) {
+      // failed calls are counted by their own callbacks
+    }
+    var elapsed = System.nanoTime() - start;
+
+    var counts = new TreeMap<String, Long>();
+    failures.forEach((type, adder) -> counts.put(type, adder.sum()));
+    return new Report(count, succeeded.sum(), counts, elapsed, latencies);
+  }
+
+  public static void main(final String[] args) throws Exception {
+    var qps = args.length > 0 ? Double.parseDouble(args[0]) : 500;
+    var seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    var latency = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    var jitter = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+    var errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+    var throttle = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+
+    try (var server =
+        StubServer.builder()
+            .withLatency(Duration.ofMillis(latency), Duration.ofMillis(jitter))
+            .withErrorRate(errorRate)
+            .withThrottling(throttle, (int) Math.max(1, throttle))
+            .start()) {
+      var api = ShabbatAPI.builder().withEndpoint(server.endpoint()).build();
+      // a short warm up, the jit compiles the client and the calculator
+      run(api, LoadGenerator::request, qps, Duration.ofSeconds(2), Duration.ofSeconds(10));
+      var duration = Duration.ofSeconds(seconds);
+      var report = run(api, LoadGenerator::request, qps, duration, Duration.ofSeconds(30));
+      System.out.println(report);
+    }
+  }
+
+  private static APIRequest request(final int index) {
+    return APIRequest.builder().forGeoId(1 + index % 10_000).build();
+  }
+}
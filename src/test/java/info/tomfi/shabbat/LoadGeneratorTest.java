@@ -0,0 +1,57 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class LoadGeneratorTest {
+  @Test
+  void a_load_run_against_a_stub_server_reports_the_outcome_of_every_call() throws IOException {
+    try (var server =
+        StubServer.builder()
+            .withLatency(Duration.ofMillis(10), Duration.ofMillis(10))
+            .withThrottling(50, 20)
+            .start()) {
+      var api = ShabbatAPI.builder().withEndpoint(server.endpoint()).build();
+
+      var report =
+          LoadGenerator.run(
+              api,
+              index -> APIRequest.builder().forGeoId(index + 1).build(),
+              100,
+              Duration.ofSeconds(1),
+              Duration.ofSeconds(10));
+
+      assertThat(report.sent()).isEqualTo(100);
+      assertThat(report.succeeded()).isPositive();
+      assertThat(report.failures())
+          .containsOnlyKeys("APIStatusException")
+          .containsEntry("APIStatusException", server.throttledCount());
+      assertThat(report.succeeded() + server.throttledCount()).isEqualTo(100);
+      assertThat(report.latency(100)).isGreaterThanOrEqualTo(report.latency(50));
+      assertThat(report.throughput()).isPositive();
+    }
+  }
+
+  @Test
+  void a_stub_server_answers_a_malformed_request_with_a_bad_request_status()
+      throws IOException, InterruptedException {
+    try (var server = StubServer.builder().start()) {
+      var client = HttpClient.newHttpClient();
+
+      for (var query : new String[] {"geonameid=jerusalem", "gy=2021&gm=2&gd=30"}) {
+        var request =
+            HttpRequest.newBuilder(server.endpoint().resolve("?" + query))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+
+        assertThat(client.send(request, BodyHandlers.discarding()).statusCode()).isEqualTo(400);
+      }
+    }
+  }
+}
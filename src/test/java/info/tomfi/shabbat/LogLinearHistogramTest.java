@@ -0,0 +1,56 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import org.junit.jupiter.api.Test;
+
+class LogLinearHistogramTest {
+  @Test
+  void every_power_of_two_range_is_split_into_four_upper_inclusive_buckets() {
+    var histogram = new LogLinearHistogram(4, 6);
+
+    assertThat(histogram.buckets()).isEqualTo(10);
+    assertThat(histogram.bound(0)).isEqualTo(16);
+    assertThat(histogram.bound(1)).isEqualTo(20);
+    assertThat(histogram.bound(4)).isEqualTo(32);
+    assertThat(histogram.bound(5)).isEqualTo(40);
+    assertThat(histogram.bound(8)).isEqualTo(64);
+    assertThat(histogram.bound(9)).isEqualTo(Long.MAX_VALUE);
+
+    for (var value : new long[] {-3, 0, 16, 17, 20, 21, 32, 33, 64, 65, Long.MAX_VALUE}) {
+      histogram.record(value);
+    }
+
+    assertThat(histogram.count(0)).isEqualTo(3);
+    assertThat(histogram.count(1)).isEqualTo(2);
+    assertThat(histogram.count(2)).isEqualTo(1);
+    assertThat(histogram.count(4)).isEqualTo(1);
+    assertThat(histogram.count(5)).isEqualTo(1);
+    assertThat(histogram.count(8)).isEqualTo(1);
+    assertThat(histogram.count(9)).isEqualTo(2);
+  }
+
+  @Test
+  void the_value_at_a_percentile_is_the_bound_of_its_bucket() {
+    var histogram = new LogLinearHistogram(4, 10);
+    assertThat(histogram.valueAt(95)).isZero();
+
+    for (var value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+
+    assertThat(histogram.valueAt(0)).isEqualTo(16);
+    assertThat(histogram.valueAt(50)).isEqualTo(56);
+    assertThat(histogram.valueAt(95)).isEqualTo(96);
+    assertThat(histogram.valueAt(100)).isEqualTo(112);
+    assertThat(histogram.sum()).isEqualTo(5050);
+  }
+
+  @Test
+  void creating_a_histogram_with_invalid_exponents_throws_an_IllegalArgumentException() {
+    assertThatIllegalArgumentException().isThrownBy(() -> new LogLinearHistogram(1, 10));
+    assertThatIllegalArgumentException().isThrownBy(() -> new LogLinearHistogram(10, 10));
+    assertThatIllegalArgumentException().isThrownBy(() -> new LogLinearHistogram(10, 63));
+  }
+}
@@ -0,0 +1,81 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import info.tomfi.shabbat.APIListener.Phase;
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class PrometheusMetricsTest {
+  private final APIRequest request = APIRequest.builder().forGeoId(281184).build();
+
+  @Test
+  void recorded_exchanges_are_rendered_in_the_prometheus_text_format() {
+    var metrics = new PrometheusMetrics();
+    metrics.onExchangeStart(request);
+    metrics.onPhase(request, Phase.NETWORK, 1_000_000);
+    metrics.onResponseBytes(request, 3000);
+    metrics.onExchangeEnd(request, null);
+    metrics.onExchangeStart(request);
+    metrics.onExchangeEnd(request, new HttpTimeoutException("timeout"));
+    metrics.onExchangeStart(request);
+
+    var scraped = metrics.scrape();
+
+    assertThat(scraped)
+        .contains("# TYPE shabbat_api_phase_seconds histogram\n")
+        .contains("shabbat_api_phase_seconds_bucket{phase=\"network\",le=\"9.17504E-4\"} 0\n")
+        .contains("shabbat_api_phase_seconds_bucket{phase=\"network\",le=\"0.001048576\"} 1\n")
+        .contains("shabbat_api_phase_seconds_bucket{phase=\"network\",le=\"+Inf\"} 1\n")
+        .contains("shabbat_api_phase_seconds_sum{phase=\"network\"} 0.001\n")
+        .contains("shabbat_api_phase_seconds_count{phase=\"network\"} 1\n")
+        .contains("shabbat_api_phase_seconds_count{phase=\"deserialize\"} 0\n")
+        .contains("shabbat_api_response_bytes_bucket{le=\"2560\"} 0\n")
+        .contains("shabbat_api_response_bytes_bucket{le=\"3072\"} 1\n")
+        .contains("shabbat_api_response_bytes_sum 3000.0\n")
+        .contains("# TYPE shabbat_api_in_flight_exchanges gauge\n")
+        .contains("shabbat_api_in_flight_exchanges 1\n")
+        .contains("shabbat_api_exchanges_total 3\n")
+        .contains("shabbat_api_errors_total{type=\"java.net.http.HttpTimeoutException\"} 1\n");
+    assertThat(metrics.inFlight()).isEqualTo(1);
+  }
+
+  @Test
+  void the_duration_of_a_phase_at_a_percentile_is_approximated_by_its_bucket() {
+    var metrics = new PrometheusMetrics("custom");
+    for (var i = 1; i <= 100; i++) {
+      metrics.onPhase(request, Phase.NETWORK, i * 1_000_000L);
+    }
+
+    var p95 = metrics.percentile(Phase.NETWORK, 95);
+
+    // the bucket bound is at most 25% above the actual value
+    assertThat(p95).isBetween(Duration.ofMillis(95), Duration.ofMillis(119));
+    assertThat(metrics.percentile(Phase.DESERIALIZE, 95)).isZero();
+    assertThat(metrics.scrape()).startsWith("# HELP custom_phase_seconds ");
+  }
+
+  @Test
+  void rendering_to_an_appendable_and_scraping_render_the_same_metrics() throws IOException {
+    var metrics = new PrometheusMetrics();
+    metrics.onPhase(request, Phase.BODY_READ, 12345);
+    var out = new StringBuilder();
+
+    metrics.writeTo(out);
+
+    assertThat(out.toString()).isEqualTo(metrics.scrape());
+  }
+
+  @Test
+  void invalid_arguments_throw_an_IllegalArgumentException() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> new PrometheusMetrics("shabbat-api"))
+        .withMessage("prefix should be a valid metric name");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> new PrometheusMetrics().percentile(Phase.NETWORK, 101))
+        .withMessage("percentile should be between 0 and 100");
+  }
+}
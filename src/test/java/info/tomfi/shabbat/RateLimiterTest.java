@@ -0,0 +1,151 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+  private AtomicLong ticker;
+  private AtomicInteger calls;
+
+  @BeforeEach
+  void initialize() {
+    // nano time readings can be negative
+    ticker = new AtomicLong(-5_000_000_000L);
+    calls = new AtomicInteger();
+  }
+
+  @Test
+  void a_burst_is_sent_right_away_and_the_following_calls_are_delayed() {
+    var limiter = limiter(20, 3, null);
+
+    for (var i = 0; i < 3; i++) {
+      assertThat(call(limiter)).isCompletedWithValue("response");
+    }
+    var delayed = call(limiter);
+
+    assertThat(calls).hasValue(3);
+    assertThat(limiter.stats().queueDepth()).isEqualTo(1);
+    assertThat(delayed).succeedsWithin(Duration.ofSeconds(5)).isEqualTo("response");
+    assertThat(calls).hasValue(4);
+    assertThat(limiter.stats().queueDepth()).isZero();
+    assertThat(limiter.stats().delayedCount()).isEqualTo(1);
+    assertThat(limiter.stats().acquiredCount()).isEqualTo(4);
+    assertThat(limiter.waitTime(100)).isBetween(Duration.ofMillis(37), Duration.ofMillis(63));
+  }
+
+  @Test
+  void permits_are_refilled_at_the_rate() {
+    var limiter = limiter(1, 2, Duration.ZERO);
+    call(limiter);
+    call(limiter);
+    assertThat(call(limiter)).isCompletedExceptionally();
+
+    ticker.addAndGet(Duration.ofSeconds(1).toNanos());
+    assertThat(call(limiter)).isCompletedWithValue("response");
+    assertThat(call(limiter)).isCompletedExceptionally();
+
+    ticker.addAndGet(Duration.ofSeconds(10).toNanos());
+    assertThat(call(limiter)).isCompletedWithValue("response");
+    assertThat(call(limiter)).isCompletedWithValue("response");
+    assertThat(calls).hasValue(5);
+  }
+
+  @Test
+  void calls_exceeding_the_maximum_wait_fail_fast_without_being_sent() {
+    var limiter = limiter(1, 1, Duration.ofMillis(500));
+    call(limiter);
+
+    assertThat(call(limiter))
+        .failsWithin(Duration.ZERO)
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(RateLimitedException.class);
+    assertThat(calls).hasValue(1);
+    assertThat(limiter.stats().rejectedCount()).isEqualTo(1);
+    assertThat(limiter.stats().queueDepth()).isZero();
+  }
+
+  @Test
+  void delayed_calls_are_sent_in_the_order_they_arrived() {
+    var limiter = limiter(200, 1, null);
+    List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+    var futures = new ArrayList<CompletableFuture<Integer>>();
+    for (var i = 0; i < 10; i++) {
+      var order = i;
+      futures.add(
+          limiter.call(
+              () -> {
+                sent.add(order);
+                return CompletableFuture.completedFuture(order);
+              }));
+    }
+
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    assertThat(sent).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+  }
+
+  @Test
+  void a_call_cancelled_while_waiting_is_not_sent_and_gives_its_permit_back() {
+    var limiter = limiter(1, 1, Duration.ofMillis(1500));
+    call(limiter);
+    var waiting = call(limiter);
+
+    waiting.cancel(true);
+
+    assertThat(limiter.stats().queueDepth()).isZero();
+    // the cancelled permit is reused, otherwise this call would wait two seconds
+    var reused = call(limiter);
+    assertThat(reused).isNotDone();
+    reused.cancel(true);
+    assertThat(calls).hasValue(1);
+  }
+
+  @Test
+  void building_with_invalid_arguments_throws_an_IAE() {
+    var builder = RateLimiter.builder();
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> builder.withRequestsPerSecond(0))
+        .withMessage("requests per second should be a positive number");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> builder.withRequestsPerSecond(Double.NaN))
+        .withMessage("requests per second should be a positive number");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> builder.withBurst(0))
+        .withMessage("burst should be a positive integer");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> builder.withMaximumWait(Duration.ofMillis(-1)))
+        .withMessage("maximum wait should be a non negative duration");
+  }
+
+  private CompletableFuture<String> call(final RateLimiter limiter) {
+    return limiter.call(
+        () -> {
+          calls.incrementAndGet();
+          return CompletableFuture.completedFuture("response");
+        });
+  }
+
+  private RateLimiter limiter(
+      final double requestsPerSecond, final int burst, final Duration maximumWait) {
+    var builder =
+        RateLimiter.builder()
+            .withRequestsPerSecond(requestsPerSecond)
+            .withBurst(burst)
+            .withTicker(ticker::get);
+    if (Objects.nonNull(maximumWait)) {
+      builder.withMaximumWait(maximumWait);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,212 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ResiliencePolicyTest {
+  @Test
+  void a_failed_call_is_retried_until_it_succeeds()
+      throws InterruptedException, ExecutionException {
+    var policy =
+        ResiliencePolicy.builder()
+            .withMaximumRetries(3)
+            .withInitialBackoff(Duration.ofMillis(1))
+            .build();
+    var calls = new AtomicInteger();
+
+    var result =
+        policy.call(
+            () ->
+                calls.incrementAndGet() < 3
+                    ? CompletableFuture.failedFuture(new APIStatusException(503))
+                    : CompletableFuture.completedFuture("response"));
+
+    assertThat(result.get()).isEqualTo("response");
+    assertThat(calls).hasValue(3);
+    assertThat(policy.stats().retryCount()).isEqualTo(2);
+  }
+
+  @Test
+  void a_call_failing_more_than_the_maximum_retries_fails_with_the_last_failure() {
+    var policy =
+        ResiliencePolicy.builder()
+            .withMaximumRetries(2)
+            .withInitialBackoff(Duration.ofMillis(1))
+            .build();
+    var calls = new AtomicInteger();
+
+    var result =
+        policy.call(
+            () ->
+                CompletableFuture.failedFuture(
+                    new HttpTimeoutException("timeout " + calls.incrementAndGet())));
+
+    assertThat(result)
+        .failsWithin(Duration.ofSeconds(5))
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(HttpTimeoutException.class)
+        .withMessageEndingWith("timeout 3");
+    assertThat(policy.stats().retryCount()).isEqualTo(2);
+  }
+
+  @Test
+  void client_errors_and_malformed_bodies_are_not_retried() {
+    assertThat(ResiliencePolicy.isRetryable(new APIStatusException(500))).isTrue();
+    assertThat(ResiliencePolicy.isRetryable(new APIStatusException(429))).isTrue();
+    assertThat(ResiliencePolicy.isRetryable(new IOException("reset"))).isTrue();
+    assertThat(ResiliencePolicy.isRetryable(new APIStatusException(404))).isFalse();
+    assertThat(ResiliencePolicy.isRetryable(new JsonParseException(null, "broken"))).isFalse();
+    assertThat(ResiliencePolicy.isRetryable(new IllegalStateException())).isFalse();
+
+    var policy = ResiliencePolicy.builder().withMaximumRetries(3).build();
+    var calls = new AtomicInteger();
+    var result =
+        policy.call(
+            () -> {
+              calls.incrementAndGet();
+              return CompletableFuture.failedFuture(new APIStatusException(400));
+            });
+
+    assertThat(result).isCompletedExceptionally();
+    assertThat(calls).hasValue(1);
+  }
+
+  @Test
+  void a_hedged_call_wins_over_a_stuck_original_call_which_is_then_cancelled()
+      throws InterruptedException, ExecutionException {
+    var policy = ResiliencePolicy.builder().withHedgeDelay(Duration.ofMillis(10)).build();
+    var calls = new ArrayList<CompletableFuture<String>>();
+
+    var result =
+        policy.call(
+            () -> {
+              synchronized (calls) {
+                var call =
+                    calls.isEmpty()
+                        ? new CompletableFuture<String>()
+                        : CompletableFuture.completedFuture("hedge");
+                calls.add(call);
+                return call;
+              }
+            });
+
+    assertThat(result.get()).isEqualTo("hedge");
+    assertThat(calls.get(0)).isCancelled();
+    assertThat(policy.stats().hedgeCount()).isEqualTo(1);
+    assertThat(policy.stats().hedgeWinCount()).isEqualTo(1);
+    assertThat(policy.stats().hedgeWinRate()).isEqualTo(1.0);
+  }
+
+  @Test
+  void a_call_completing_within_the_hedge_delay_is_not_hedged()
+      throws InterruptedException, ExecutionException {
+    var policy = ResiliencePolicy.builder().withHedgeDelay(Duration.ofMillis(10)).build();
+    var calls = new AtomicInteger();
+
+    var result =
+        policy.call(
+            () -> {
+              calls.incrementAndGet();
+              return CompletableFuture.completedFuture("original");
+            });
+
+    assertThat(result.get()).isEqualTo("original");
+    Thread.sleep(50);
+    assertThat(calls).hasValue(1);
+    assertThat(policy.stats().hedgeCount()).isZero();
+    assertThat(policy.stats().hedgeWinRate()).isZero();
+  }
+
+  @Test
+  void a_failed_hedge_waits_for_the_original_call() throws InterruptedException {
+    var policy = ResiliencePolicy.builder().withHedgeDelay(Duration.ofMillis(10)).build();
+    var original = new CompletableFuture<String>();
+    var calls = new AtomicInteger();
+
+    var result =
+        policy.call(
+            () ->
+                calls.getAndIncrement() == 0
+                    ? original
+                    : CompletableFuture.failedFuture(new IOException("hedge failed")));
+
+    while (policy.stats().hedgeCount() == 0) {
+      Thread.sleep(5);
+    }
+    assertThat(result).isNotDone();
+    original.complete("original");
+    assertThat(result).isCompletedWithValue("original");
+    assertThat(policy.stats().hedgeWinCount()).isZero();
+  }
+
+  @Test
+  void cancelling_the_result_cancels_the_calls_in_flight_and_the_pending_retries()
+      throws InterruptedException {
+    var hedged = ResiliencePolicy.builder().withHedgeDelay(Duration.ofMillis(10)).build();
+    var calls = new ArrayList<CompletableFuture<String>>();
+    var result =
+        hedged.call(
+            () -> {
+              synchronized (calls) {
+                var call = new CompletableFuture<String>();
+                calls.add(call);
+                return call;
+              }
+            });
+    while (hedged.stats().hedgeCount() == 0) {
+      Thread.sleep(5);
+    }
+
+    result.cancel(true);
+    synchronized (calls) {
+      assertThat(calls).hasSize(2).allMatch(CompletableFuture::isCancelled);
+    }
+
+    var retried =
+        ResiliencePolicy.builder()
+            .withMaximumRetries(3)
+            .withInitialBackoff(Duration.ofMillis(1))
+            .build();
+    var attempts = new AtomicInteger();
+    var attempt = new CompletableFuture<String>();
+    var cancelled =
+        retried.call(
+            () -> {
+              attempts.incrementAndGet();
+              return attempt;
+            });
+    cancelled.cancel(true);
+    assertThat(attempt).isCancelled();
+    Thread.sleep(50);
+    // the cancelled attempt failure is not retried
+    assertThat(attempts).hasValue(1);
+  }
+
+  @Test
+  void building_a_policy_with_invalid_values_throws_an_IllegalArgumentException() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> ResiliencePolicy.builder().withMaximumRetries(-1))
+        .withMessage("maximum retries should be a non negative integer");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> ResiliencePolicy.builder().withHedgeDelay(Duration.ZERO))
+        .withMessage("hedge delay should be a positive duration");
+    assertThatIllegalArgumentException()
+        .isThrownBy(
+            () ->
+                ResiliencePolicy.builder()
+                    .withInitialBackoff(Duration.ofSeconds(2))
+                    .withMaximumBackoff(Duration.ofSeconds(1))
+                    .build())
+        .withMessage("maximum backoff should not be less than the initial");
+  }
+}
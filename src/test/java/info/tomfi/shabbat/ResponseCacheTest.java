@@ -0,0 +1,175 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ResponseCacheTest {
+  private MutableClock clock;
+  private APIResponse response;
+
+  @BeforeEach
+  void initialize() throws IOException {
+    clock = new MutableClock(Instant.parse("2021-01-01T00:00:00Z"));
+    response =
+        new ObjectMapper()
+            .readValue(
+                getClass().getModule().getResourceAsStream("api-responses/real_response.json"),
+                APIResponse.class);
+  }
+
+  @Test
+  void a_cached_response_is_served_until_the_shabbat_ends() {
+    var cache = ResponseCache.builder().withMaximumEntries(10).withClock(clock).build();
+    var request = APIRequest.builder().forGeoId(281184).build();
+
+    assertThat(cache.getIfPresent(request)).isEmpty();
+    cache.put(request, response);
+    assertThat(cache.getIfPresent(request)).containsSame(response);
+
+    // havdalah is on 2021-01-02T17:37:00+02:00
+    clock.now = Instant.parse("2021-01-02T15:36:59Z");
+    assertThat(cache.getIfPresent(request)).containsSame(response);
+    clock.now = Instant.parse("2021-01-02T15:37:00Z");
+    assertThat(cache.getIfPresent(request)).isEmpty();
+    assertThat(cache.size()).isZero();
+
+    var stats = cache.stats();
+    assertThat(stats.hitCount()).isEqualTo(2);
+    assertThat(stats.missCount()).isEqualTo(2);
+    assertThat(stats.evictionCount()).isZero();
+    assertThat(stats.hitRate()).isEqualTo(0.5);
+  }
+
+  @Test
+  void a_cached_response_with_no_items_is_served_until_the_date_range_ends() {
+    var cache = ResponseCache.builder().withMaximumEntries(10).withClock(clock).build();
+    var request = APIRequest.builder().forGeoId(281184).build();
+    var noItems =
+        new APIResponse.Builder()
+            .withDate(response.date)
+            .withLocation(response.location)
+            .withTitle(response.title)
+            .withRange(response.range.get())
+            .build();
+
+    cache.put(request, noItems);
+
+    // the range ends on 2021-01-02 in Asia/Jerusalem
+    clock.now = Instant.parse("2021-01-02T21:59:59Z");
+    assertThat(cache.getIfPresent(request)).containsSame(noItems);
+    clock.now = Instant.parse("2021-01-02T22:00:00Z");
+    assertThat(cache.getIfPresent(request)).isEmpty();
+  }
+
+  @Test
+  void an_expired_response_is_not_cached() {
+    var cache = ResponseCache.builder().withMaximumEntries(10).withClock(clock).build();
+    var request = APIRequest.builder().forGeoId(281184).build();
+    clock.now = Instant.parse("2021-01-03T00:00:00Z");
+
+    cache.put(request, response);
+
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void a_full_cache_admits_a_new_entry_only_if_requested_as_often_as_the_victim() {
+    var cache = ResponseCache.builder().withMaximumEntries(2).withClock(clock).build();
+    var requestA = APIRequest.builder().forGeoId(1).build();
+    var requestB = APIRequest.builder().forGeoId(2).build();
+    var requestC = APIRequest.builder().forGeoId(3).build();
+    var requestD = APIRequest.builder().forGeoId(4).build();
+
+    cache.put(requestA, response);
+    cache.put(requestB, response);
+    for (var i = 0; i < 3; i++) {
+      cache.getIfPresent(requestB);
+      cache.getIfPresent(requestA);
+    }
+
+    // a one hit wonder loses the admission to the least recently used entry
+    cache.getIfPresent(requestC);
+    cache.put(requestC, response);
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.stats().evictionCount()).isEqualTo(1);
+
+    // a popular entry replaces the least recently used entry
+    for (var i = 0; i < 6; i++) {
+      cache.getIfPresent(requestD);
+    }
+    cache.put(requestD, response);
+    assertThat(cache.stats().evictionCount()).isEqualTo(2);
+
+    assertThat(cache.getIfPresent(requestA)).isPresent();
+    assertThat(cache.getIfPresent(requestB)).isEmpty();
+    assertThat(cache.getIfPresent(requestC)).isEmpty();
+    assertThat(cache.getIfPresent(requestD)).isPresent();
+  }
+
+  @Test
+  void a_cache_bounded_by_weight_does_not_keep_responses_heavier_than_the_bound() {
+    var cache = ResponseCache.builder().withMaximumWeight(100).withClock(clock).build();
+    var request = APIRequest.builder().forGeoId(281184).build();
+
+    cache.put(request, response);
+
+    assertThat(cache.size()).isZero();
+    assertThat(cache.stats().evictionCount()).isEqualTo(1);
+  }
+
+  @Test
+  void invalidating_entries_removes_them_from_the_cache() {
+    var cache = ResponseCache.builder().withMaximumEntries(10).withClock(clock).build();
+    var requestA = APIRequest.builder().forGeoId(1).build();
+    var requestB = APIRequest.builder().forGeoId(2).build();
+    cache.put(requestA, response);
+    cache.put(requestB, response);
+
+    cache.invalidate(requestA);
+    assertThat(cache.size()).isEqualTo(1);
+    cache.invalidateAll();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void an_expired_response_is_retained_as_stale_up_to_the_maximum_staleness() {
+    var cache =
+        ResponseCache.builder()
+            .withMaximumEntries(10)
+            .withMaximumStaleness(Duration.ofDays(7))
+            .withClock(clock)
+            .build();
+    var request = APIRequest.builder().forGeoId(281184).build();
+    cache.put(request, response);
+
+    // a fresh response is not counted as stale
+    assertThat(cache.getStale(request)).containsSame(response);
+    assertThat(cache.stats().staleHitCount()).isZero();
+
+    // havdalah is on 2021-01-02T17:37:00+02:00
+    clock.now = Instant.parse("2021-01-09T15:36:59Z");
+    assertThat(cache.getIfPresent(request)).isEmpty();
+    assertThat(cache.getStale(request)).containsSame(response);
+    assertThat(cache.stats().staleHitCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(1);
+
+    clock.now = Instant.parse("2021-01-09T15:37:00Z");
+    assertThat(cache.getStale(request)).isEmpty();
+    assertThat(cache.getIfPresent(request)).isEmpty();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void building_an_unbounded_cache_throws_an_IllegalArgumentException() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> ResponseCache.builder().build())
+        .withMessage("cache should be bounded by entries or weight");
+  }
+}
@@ -0,0 +1,142 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ResponseCodecTest {
+  @ParameterizedTest
+  @ValueSource(strings = {"real_response.json", "real_response_rosh_chodesh.json"})
+  void fixture_responses_are_decoded_equal_to_the_original(final String fixture)
+      throws IOException {
+    var body =
+        getClass().getModule().getResourceAsStream("api-responses/" + fixture).readAllBytes();
+    var response = new ObjectMapper().readValue(body, APIResponse.class);
+
+    var encoded = ResponseCodec.encode(response);
+
+    assertThat(encoded.remaining()).isLessThan(body.length * 2 / 3);
+    assertThat(ResponseCodec.decode(encoded.duplicate())).isEqualTo(response);
+    var direct = ByteBuffer.allocateDirect(encoded.remaining()).put(encoded.duplicate()).flip();
+    assertThat(ResponseCodec.decode(direct)).isEqualTo(response);
+    assertThat(direct.hasRemaining()).isFalse();
+  }
+
+  @Test
+  void consecutive_responses_are_decoded_from_a_slice_of_a_larger_buffer() throws IOException {
+    var first = response("2021-01-01", List.of(item("2021-01-01T16:00:00+02:00", true)));
+    var second = response("2021-01-01T10:15:30.120Z", null);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 7);
+    buffer.put(ResponseCodec.encode(first)).put(ResponseCodec.encode(second)).flip();
+
+    var slice = buffer.position(1).slice();
+
+    assertThat(ResponseCodec.decode(slice)).isEqualTo(first);
+    assertThat(ResponseCodec.decode(slice)).isEqualTo(second);
+    assertThat(slice.hasRemaining()).isFalse();
+  }
+
+  @Test
+  void dates_not_formatted_back_the_same_are_kept_as_text() throws IOException {
+    var items =
+        List.of(
+            item("2021-01-01T16:00:00.5+02:00", false),
+            item("2021-01-01T16:00:00+02:00:30", null),
+            item("2021-01-01T16:00+02:00", null),
+            item("2021-01-01T10:15:30Z", null),
+            item("2021-01-01", null),
+            item("next friday", null));
+    var response = response("+12021-01-01", items);
+
+    assertThat(ResponseCodec.decode(ResponseCodec.encode(response))).isEqualTo(response);
+  }
+
+  @Test
+  void responses_with_no_items_are_decoded_with_empty_or_absent_items() throws IOException {
+    var empty = response("2021-01-01", List.of());
+    var absent = response("2021-01-01", null);
+
+    assertThat(ResponseCodec.decode(ResponseCodec.encode(empty)).items).contains(List.of());
+    assertThat(ResponseCodec.decode(ResponseCodec.encode(absent)).items).isEmpty();
+  }
+
+  @Test
+  void decoding_an_invalid_buffer_throws_an_IOException() {
+    var encoded = ResponseCodec.encode(response("2021-01-01", List.of(item("2021-01-01", true))));
+
+    assertThatExceptionOfType(IOException.class)
+        .isThrownBy(() -> ResponseCodec.decode(encoded.duplicate().limit(encoded.limit() - 1)))
+        .withMessage("truncated encoded response");
+    assertThatExceptionOfType(IOException.class)
+        .isThrownBy(() -> ResponseCodec.decode(ByteBuffer.wrap(new byte[] {2})))
+        .withMessage("unsupported encoded response version 2");
+    // the category byte of the last item is the eighth from the end
+    var corrupted = ByteBuffer.allocate(encoded.remaining()).put(encoded.duplicate());
+    corrupted.put(corrupted.limit() - 8, (byte) 42).flip();
+    assertThatExceptionOfType(IOException.class)
+        .isThrownBy(() -> ResponseCodec.decode(corrupted))
+        .withMessage("invalid encoded response: unknown category 42");
+  }
+
+  @ParameterizedTest
+  @CsvSource({"candles,0", "havdalah,1", "holiday,2", "parashat,3", "roshchodesh,4"})
+  void categories_are_encoded_with_stable_codes(final String category, final byte code)
+      throws IOException {
+    var response = response("2021-01-01", List.of(item("2021-01-01", true, category)));
+
+    var encoded = ResponseCodec.encode(response);
+
+    // the category byte of the last item is the eighth from the end
+    assertThat(encoded.get(encoded.limit() - 8)).isEqualTo(code);
+    assertThat(ResponseCodec.decode(encoded)).isEqualTo(response);
+  }
+
+  private static APIResponse response(final String date, final List<APIResponse.Item> items) {
+    var range = new APIResponse.DateRange.Builder().withStart("2021-01-01").withEnd("2021-01-02");
+    var builder =
+        new APIResponse.Builder()
+            .withTitle("Hebcal Jerusalem January 2021")
+            .withDate(date)
+            .withRange(range.build())
+            .withLocation(
+                new APIResponse.Location.Builder()
+                    .withTitle("Jerusalem, Israel")
+                    .withCity("Jerusalem")
+                    .withCountry("Israel")
+                    .withGeo("geoname")
+                    .withGeonameid(281184)
+                    .withLatitude(31.76904)
+                    .withLongitude(-35.21633)
+                    .withTzid("Asia/Jerusalem")
+                    .build());
+    if (Objects.nonNull(items)) {
+      builder.withItems(items);
+    }
+    return builder.build();
+  }
+
+  private static APIResponse.Item item(final String date, final Boolean yomtov) {
+    return item(date, yomtov, "candles");
+  }
+
+  private static APIResponse.Item item(
+      final String date, final Boolean yomtov, final String category) {
+    return new APIResponse.Item.Builder()
+        .withTitle("Candle lighting: 16:00")
+        .withDate(date)
+        .withCategory(category)
+        .withHebrew("הדלקת נרות")
+        .withMemo("Parashat Vayechi")
+        .withYomtov(yomtov)
+        .build();
+  }
+}
@@ -0,0 +1,201 @@
+package info.tomfi.shabbat;
+
+import static info.tomfi.shabbat.Fixtures.requestsFor;
+import static info.tomfi.shabbat.Fixtures.response;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class ResponsePublisherTest {
+  private final List<APIRequest> requests = requestsFor(10);
+  private final List<CompletableFuture<APIResponse>> calls =
+      Collections.synchronizedList(new ArrayList<>());
+  private final Function<APIRequest, CompletableFuture<APIResponse>> sender =
+      request -> {
+        var future = new CompletableFuture<APIResponse>();
+        calls.add(future);
+        return future;
+      };
+
+  @Test
+  void calls_are_sent_only_for_the_subscriber_demand() {
+    var subscriber = new RecordingSubscriber();
+    new ResponsePublisher(ResponsePublisher.of(requests), 5, false, sender).subscribe(subscriber);
+
+    assertThat(calls).isEmpty();
+    subscriber.subscription.request(2);
+    assertThat(calls).hasSize(2);
+
+    respond(0);
+    respond(1);
+    assertThat(subscriber.titles()).containsExactly("1", "2");
+    assertThat(calls).hasSize(2);
+
+    subscriber.subscription.request(3);
+    assertThat(calls).hasSize(5);
+  }
+
+  @Test
+  void calls_in_flight_never_exceed_the_maximum_regardless_of_the_demand() {
+    var subscriber = new RecordingSubscriber();
+    new ResponsePublisher(ResponsePublisher.of(requests), 3, false, sender).subscribe(subscriber);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertThat(calls).hasSize(3);
+    for (var i = 0; i < requests.size(); i++) {
+      assertThat(calls.stream().filter(call -> !call.isDone()).count()).isLessThanOrEqualTo(3);
+      respond(i);
+    }
+
+    assertThat(subscriber.titles()).hasSize(10);
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test
+  void responses_are_emitted_as_they_complete_or_in_the_order_of_the_requests() {
+    var unordered = new RecordingSubscriber();
+    new ResponsePublisher(ResponsePublisher.of(requests.subList(0, 3)), 3, false, sender)
+        .subscribe(unordered);
+    unordered.subscription.request(3);
+    respond(2);
+    respond(0);
+    respond(1);
+
+    calls.clear();
+    var ordered = new RecordingSubscriber();
+    new ResponsePublisher(ResponsePublisher.of(requests.subList(0, 3)), 3, true, sender)
+        .subscribe(ordered);
+    ordered.subscription.request(3);
+    respond(2);
+    assertThat(ordered.titles()).isEmpty();
+    respond(0);
+    respond(1);
+
+    assertThat(unordered.titles()).containsExactly("3", "1", "2");
+    assertThat(ordered.titles()).containsExactly("1", "2", "3");
+    assertThat(unordered.completed).isTrue();
+    assertThat(ordered.completed).isTrue();
+  }
+
+  @Test
+  void a_failed_call_fails_the_subscription_and_cancels_the_requests() {
+    var iterated = new AtomicInteger();
+    Iterable<APIRequest> endless =
+        () ->
+            new Iterator<>() {
+              @Override
+              public boolean hasNext() {
+                return true;
+              }
+
+              @Override
+              public APIRequest next() {
+                return APIRequest.builder().forGeoId(iterated.incrementAndGet()).build();
+              }
+            };
+    var subscriber = new RecordingSubscriber();
+    new ResponsePublisher(ResponsePublisher.of(endless), 2, false, sender).subscribe(subscriber);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    calls.get(1).completeExceptionally(new IllegalStateException("dummy failure"));
+    calls.get(0).complete(response(1));
+
+    assertThat(subscriber.error).isInstanceOf(IllegalStateException.class);
+    assertThat(subscriber.titles()).isEmpty();
+    assertThat(iterated).hasValue(2);
+    assertThat(calls).hasSize(2);
+  }
+
+  @Test
+  void a_failing_requests_publisher_fails_the_subscription() {
+    Iterable<APIRequest> failing =
+        () -> {
+          throw new IllegalStateException("dummy failure");
+        };
+    var subscriber = new RecordingSubscriber();
+    new ResponsePublisher(ResponsePublisher.of(failing), 2, false, sender).subscribe(subscriber);
+
+    assertThat(subscriber.error).isInstanceOf(IllegalStateException.class);
+    assertThat(calls).isEmpty();
+  }
+
+  @Test
+  void a_cancelled_subscription_emits_nothing_more() {
+    var subscriber = new RecordingSubscriber();
+    new ResponsePublisher(ResponsePublisher.of(requests), 2, false, sender).subscribe(subscriber);
+
+    subscriber.subscription.request(5);
+    subscriber.subscription.cancel();
+    respond(0);
+    respond(1);
+
+    assertThat(subscriber.titles()).isEmpty();
+    assertThat(subscriber.completed).isFalse();
+    assertThat(calls).hasSize(2);
+  }
+
+  @Test
+  void a_non_positive_demand_fails_the_subscription() {
+    var subscriber = new RecordingSubscriber();
+    new ResponsePublisher(ResponsePublisher.of(requests), 2, false, sender).subscribe(subscriber);
+
+    subscriber.subscription.request(0);
+
+    assertThat(subscriber.error)
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("requested demand should be positive, got 0");
+  }
+
+  @Test
+  void creating_a_publisher_with_a_non_positive_max_in_flight_throws_an_IAE() {
+    var publisher = ResponsePublisher.of(requests);
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> new ResponsePublisher(publisher, 0, false, sender))
+        .withMessage("max in flight should be a positive integer");
+  }
+
+  private void respond(final int index) {
+    calls.get(index).complete(response(index + 1));
+  }
+
+  private static final class RecordingSubscriber implements Flow.Subscriber<APIResponse> {
+    private final List<APIResponse> responses = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private Throwable error;
+    private boolean completed;
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(final APIResponse response) {
+      responses.add(response);
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+
+    List<String> titles() {
+      return responses.stream().map(response -> response.title).collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package info.tomfi.shabbat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ResponseReaderTest {
+  private static final JsonFactory FACTORY = new JsonFactory();
+  private static final String LOCATION =
+      "{\"title\":\"Jerusalem\",\"city\":\"Jerusalem\",\"country\":\"Israel\",\"geo\":\"geoname\","
+          + "\"geonameid\":281184,\"latitude\":31.76904,\"longitude\":35.21633}";
+
+  @ParameterizedTest
+  @ValueSource(strings = {"real_response.json", "real_response_rosh_chodesh.json"})
+  void fixture_responses_are_read_equal_to_the_databind_responses(final String fixture)
+      throws IOException, InterruptedException, ExecutionException {
+    var body =
+        getClass().getModule().getResourceAsStream("api-responses/" + fixture).readAllBytes();
+    var expected = new ObjectMapper().readValue(body, APIResponse.class);
+
+    assertThat(ResponseReader.read(FACTORY.createParser(body))).isEqualTo(expected);
+    assertThat(ResponseBodySubscriber.parse(FACTORY, ByteBuffer.wrap(body))).isEqualTo(expected);
+
+    // a body arriving a byte at a time is bound as it arrives
+    var subscriber = new ResponseBodySubscriber<>(FACTORY, new ResponseReader(), null);
+    subscriber.onSubscribe(new NoopSubscription());
+    for (var b : body) {
+      subscriber.onNext(List.of(ByteBuffer.wrap(new byte[] {b})));
+    }
+    subscriber.onComplete();
+    assertThat(subscriber.getBody().toCompletableFuture().get()).isEqualTo(expected);
+  }
+
+  @Test
+  void unknown_properties_are_skipped_and_null_values_are_absent() throws IOException {
+    var body =
+        "{\"title\":\"t\",\"date\":\"d\",\"link\":null,\"unknown\":{\"nested\":[1,{\"a\":[]}]},"
+            + "\"location\":"
+            + LOCATION
+            + ",\"items\":[{\"title\":\"i\",\"date\":\"2021-01-02\",\"category\":\"parashat\","
+            + "\"extra\":[[]],\"yomtov\":true}]}";
+
+    var response = ResponseReader.read(FACTORY.createParser(body));
+
+    assertThat(response.title).isEqualTo("t");
+    assertThat(response.link).isEmpty();
+    assertThat(response.location.geonameid).isEqualTo(281184);
+    assertThat(response.items).hasValueSatisfying(items -> assertThat(items).hasSize(1));
+    assertThat(response.items.get().get(0).yomtov).isTrue();
+    assertThat(response.items.get().get(0).category).isEqualTo(APIResponse.Item.Category.PARASHAT);
+  }
+
+  @Test
+  void a_response_missing_a_mandatory_property_fails_to_read() {
+    var body = "{\"date\":\"d\",\"location\":" + LOCATION + "}";
+
+    assertThatExceptionOfType(JsonParseException.class)
+        .isThrownBy(() -> ResponseReader.read(FACTORY.createParser(body)))
+        .withMessageContaining("invalid response");
+  }
+
+  @Test
+  void a_property_of_an_unexpected_type_fails_to_read() {
+    var body = "{\"title\":\"t\",\"date\":\"d\",\"items\":\"none\"}";
+
+    assertThatExceptionOfType(JsonParseException.class)
+        .isThrownBy(() -> ResponseReader.read(FACTORY.createParser(body)))
+        .withMessageContaining("expected START_ARRAY");
+  }
+
+  @Test
+  void truncated_and_empty_responses_fail_to_read() {
+    var body = "{\"title\":\"t\",\"date\":\"d\",\"location\":" + LOCATION;
+    var truncated = ByteBuffer.wrap(body.getBytes(UTF_8));
+
+    assertThatExceptionOfType(JsonParseException.class)
+        .isThrownBy(() -> ResponseBodySubscriber.parse(FACTORY, truncated));
+    assertThatExceptionOfType(JsonParseException.class)
+        .isThrownBy(() -> ResponseBodySubscriber.parse(FACTORY, ByteBuffer.allocate(0)))
+        .withMessageContaining("unexpected end of the response");
+  }
+
+  private static final class NoopSubscription implements Flow.Subscription {
+    @Override
+    public void request(final long n) {}
+
+    @Override
+    public void cancel() {}
+  }
+}
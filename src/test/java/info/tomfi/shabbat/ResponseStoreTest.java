@@ -0,0 +1,221 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResponseStoreTest {
+  // havdalah of the fixture response is on 2021-01-02T17:37:00+02:00
+  private static final Clock BEFORE_END =
+      Clock.fixed(Instant.parse("2021-01-01T00:00:00Z"), ZoneOffset.UTC);
+  private static final Clock AFTER_END =
+      Clock.fixed(Instant.parse("2021-01-02T15:37:00Z"), ZoneOffset.UTC);
+
+  @TempDir Path directory;
+
+  private Path file;
+  private APIResponse response;
+  private APIResponse roshChodeshResponse;
+
+  @BeforeEach
+  void initialize() throws IOException {
+    file = directory.resolve("responses.store");
+    var mapper = new ObjectMapper();
+    response =
+        mapper.readValue(
+            getClass().getModule().getResourceAsStream("api-responses/real_response.json"),
+            APIResponse.class);
+    roshChodeshResponse =
+        mapper.readValue(
+            getClass()
+                .getModule()
+                .getResourceAsStream("api-responses/real_response_rosh_chodesh.json"),
+            APIResponse.class);
+  }
+
+  @Test
+  void a_stored_response_is_read_back_equal_to_the_original() throws IOException {
+    var request = APIRequest.builder().forGeoId(281184).build();
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      assertThat(store.get(request)).isEmpty();
+      store.put(request, response);
+
+      assertThat(store.get(request)).contains(response);
+      assertThat(store.size()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void stored_responses_survive_reopening_the_store() throws IOException {
+    var request = APIRequest.builder().forGeoId(281184).build();
+    var otherRequest = APIRequest.builder().forGeoId(281184).withMinutesBeforeSunset(30).build();
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      store.put(request, response);
+      store.put(otherRequest, response);
+    }
+
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      assertThat(store.size()).isEqualTo(2);
+      assertThat(store.get(request)).contains(response);
+      assertThat(store.get(otherRequest)).contains(response);
+      assertThat(store.get(APIRequest.builder().forGeoId(1).build())).isEmpty();
+    }
+  }
+
+  @Test
+  void an_expired_response_is_neither_served_nor_stored() throws IOException {
+    var request = APIRequest.builder().forGeoId(281184).build();
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      store.put(request, response);
+    }
+
+    try (var store = ResponseStore.open(file, AFTER_END)) {
+      assertThat(store.get(request)).isEmpty();
+
+      var otherRequest = APIRequest.builder().forGeoId(1).build();
+      store.put(otherRequest, response);
+      assertThat(store.get(otherRequest)).isEmpty();
+    }
+  }
+
+  @Test
+  void compacting_the_store_removes_superseded_records() throws IOException {
+    var request = APIRequest.builder().forGeoId(281184).build();
+    var otherRequest = APIRequest.builder().forGeoId(293397).build();
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      store.put(request, roshChodeshResponse);
+      store.put(request, response);
+      store.put(otherRequest, response);
+    }
+    var sizeBefore = Files.size(file);
+
+    // two of the three records are live, the store is not compacted when opened
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      assertThat(Files.size(file)).isEqualTo(sizeBefore);
+      assertThat(store.compact()).isEqualTo(1);
+      assertThat(store.size()).isEqualTo(2);
+      assertThat(store.get(request)).contains(response);
+      assertThat(store.get(otherRequest)).contains(response);
+    }
+    assertThat(Files.size(file)).isLessThan(sizeBefore);
+    assertThat(directory.resolve("responses.store.compact")).doesNotExist();
+  }
+
+  @Test
+  void a_store_with_a_majority_of_dead_records_is_compacted_when_opened() throws IOException {
+    var request = APIRequest.builder().forGeoId(281184).build();
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      store.put(request, response);
+    }
+
+    try (var store = ResponseStore.open(file, AFTER_END)) {
+      assertThat(store.size()).isZero();
+    }
+    // only the file header is left
+    assertThat(Files.size(file)).isEqualTo(8);
+  }
+
+  @Test
+  void the_file_is_remapped_only_once_it_outgrows_the_mapping() throws IOException {
+    var mappings = new HashSet<Integer>();
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      for (var geoId = 1; geoId <= 200; geoId++) {
+        var request = APIRequest.builder().forGeoId(geoId).build();
+        store.put(request, response);
+        assertThat(store.get(request)).contains(response);
+        mappings.add(store.mappedSize());
+      }
+
+      // the records appended past the mapping are read from the file
+      assertThat(store.mappedSize()).isLessThan((int) Files.size(file));
+      assertThat(store.get(APIRequest.builder().forGeoId(1).build())).contains(response);
+      assertThat(store.get(APIRequest.builder().forGeoId(200).build())).contains(response);
+    }
+    // the mapping at least doubles every remap instead of following every append
+    assertThat(mappings).hasSizeBetween(2, 6);
+  }
+
+  @Test
+  void stores_sharing_a_file_see_each_other_appends_and_compactions() throws IOException {
+    var request = APIRequest.builder().forGeoId(281184).build();
+    var otherRequest = APIRequest.builder().forGeoId(293397).build();
+    try (var writer = ResponseStore.open(file, BEFORE_END);
+        var reader = ResponseStore.open(file, BEFORE_END)) {
+      writer.put(request, response);
+      assertThat(reader.get(request)).contains(response);
+
+      writer.put(request, response);
+      assertThat(writer.compact()).isEqualTo(1);
+
+      // the reader reopens the replaced file and appends to it
+      reader.put(otherRequest, response);
+      assertThat(writer.get(otherRequest)).contains(response);
+      assertThat(writer.get(request)).contains(response);
+    }
+  }
+
+  @Test
+  void a_torn_record_at_the_end_of_the_file_is_ignored_and_overwritten() throws IOException {
+    var request = APIRequest.builder().forGeoId(281184).build();
+    var otherRequest = APIRequest.builder().forGeoId(293397).build();
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      store.put(request, response);
+    }
+    var intactSize = Files.size(file);
+
+    // simulate a writer crashing half way through appending a record
+    Files.write(file, new byte[] {0, 0, 1, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      assertThat(store.get(request)).contains(response);
+      store.put(otherRequest, response);
+      assertThat(store.get(otherRequest)).contains(response);
+    }
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      assertThat(store.size()).isEqualTo(2);
+      assertThat(Files.size(file) - intactSize).isEqualTo(intactSize - 8);
+    }
+  }
+
+  @Test
+  void the_records_of_an_older_store_version_are_dropped_when_opened() throws IOException {
+    var request = APIRequest.builder().forGeoId(281184).build();
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      store.put(request, response);
+    }
+    try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4).putInt(0, 1), 4);
+    }
+
+    try (var store = ResponseStore.open(file, BEFORE_END)) {
+      assertThat(store.size()).isZero();
+      assertThat(store.get(request)).isEmpty();
+      store.put(request, response);
+      assertThat(store.get(request)).contains(response);
+    }
+  }
+
+  @Test
+  void opening_a_file_that_is_not_a_store_throws_an_IOException() throws IOException {
+    Files.write(file, "not a store".getBytes(StandardCharsets.UTF_8));
+
+    assertThatExceptionOfType(IOException.class)
+        .isThrownBy(() -> ResponseStore.open(file))
+        .withMessageStartingWith("not a response store file");
+  }
+}
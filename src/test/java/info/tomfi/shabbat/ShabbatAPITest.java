@@ -1,35 +1,56 @@
 package info.tomfi.shabbat;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
 
 class ShabbatAPITest {
   @Test
-  @SuppressWarnings("unchecked")
   void test_invocation_of_the_api_and_verify_http_response()
       throws JsonProcessingException, IOException, InterruptedException, ExecutionException {
-    // mock http response and stub with string response body
-    var strResponse =
-        new String(
-            getClass()
-                .getModule()
-                .getResourceAsStream("api-responses/real_response.json")
-                .readAllBytes(),
-            StandardCharsets.UTF_8);
-    var mockHttpResponse = mock(HttpResponse.class);
-    when(mockHttpResponse.body()).thenReturn(strResponse);
+    var body = fixture("api-responses/real_response.json");
 
     // create a dummy request and an argument matcher for stubbing the http client
     var dummyRequest = APIRequest.builder().forGeoId(1234).build();
@@ -38,10 +59,10 @@ void test_invocation_of_the_api_and_verify_http_response()
             "https://www.hebcal.com/shabbat/?a=off&b=18&geonameid=1234&geo=geoname&m=50&leyning=off&cfg=json"
                 .equals(r.uri().toString());
 
-    // mock http client and stub with the mock response for the matched request
+    // mock http client and feed the response body to the handler for the matched request
     var mockHttpClient = mock(HttpClient.class);
     when(mockHttpClient.sendAsync(argThat(matchesDummyRequest), any()))
-        .thenReturn(CompletableFuture.completedFuture(mockHttpResponse));
+        .thenAnswer(invocation -> respond(invocation, body, 7));
 
     // instantiate the api with the mock client, send the dummy request and verify the response
     var api = new ShabbatAPI(mockHttpClient);
@@ -49,4 +70,1023 @@ void test_invocation_of_the_api_and_verify_http_response()
     assertThat(response.range.get().start).isEqualTo("2021-01-01");
     assertThat(response.range.get().end).isEqualTo("2021-01-02");
   }
+
+  @Test
+  void a_response_body_split_across_chunks_is_parsed_as_a_whole()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response_rosh_chodesh.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1));
+
+    var api = new ShabbatAPI(mockHttpClient);
+    var response = api.sendAsync(APIRequest.builder().forGeoId(1234).build()).get();
+
+    // a single byte chunk size splits the hebrew multi-byte characters as well
+    assertThat(response.isRoshChodesh()).isTrue();
+    assertThat(response.getShabbatItem(APIResponse.ShabbatItem.ROSH_CHODESH).get().hebrew)
+        .contains("ראש חודש אדר ב׳");
+  }
+
+  @Test
+  void sending_a_request_for_shabbat_times_projects_the_response_body()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response_rosh_chodesh.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 5));
+
+    var api = new ShabbatAPI(mockHttpClient);
+    var times = api.sendTimesAsync(APIRequest.builder().forGeoId(1234).build()).get();
+
+    var expected = new ObjectMapper().readValue(body, APIResponse.class);
+    assertThat(times).isEqualTo(ShabbatTimes.of(expected));
+    assertThat(times.shabbatStart()).contains(expected.getShabbatStart());
+    assertThat(times.shabbatEnd()).contains(expected.getShabbatEnd());
+    assertThat(times.parasha()).contains(expected.getShabbatParasha());
+    assertThat(times.isRoshChodesh()).isTrue();
+  }
+
+  @Test
+  void a_malformed_response_body_completes_the_response_exceptionally() {
+    var body = "{\"title\": \"broken\", ".getBytes(StandardCharsets.UTF_8);
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 4));
+
+    var api = new ShabbatAPI(mockHttpClient);
+
+    assertThat(api.sendAsync(APIRequest.builder().forGeoId(1234).build()))
+        .failsWithin(Duration.ofSeconds(5))
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(IOException.class);
+  }
+
+  @Test
+  void a_non_successful_response_status_completes_the_response_with_an_APIStatusException() {
+    var body = "<html>Service Unavailable</html>".getBytes(StandardCharsets.UTF_8);
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, 503, Map.of(), body, 8));
+
+    var api = new ShabbatAPI(mockHttpClient);
+
+    assertThat(api.sendAsync(APIRequest.builder().forGeoId(1234).build()))
+        .failsWithin(Duration.ofSeconds(5))
+        .withThrowableOfType(ExecutionException.class)
+        .havingCause()
+        .isInstanceOfSatisfying(
+            APIStatusException.class, exc -> assertThat(exc.statusCode()).isEqualTo(503));
+  }
+
+  @Test
+  void a_blocking_send_returns_the_response_or_throws_the_call_failure()
+      throws IOException, InterruptedException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 64))
+        .thenAnswer(invocation -> respond(invocation, 503, Map.of(), new byte[0], 1));
+    var api = new ShabbatAPI(mockHttpClient);
+    var request = APIRequest.builder().forGeoId(1234).build();
+
+    assertThat(api.send(request).location.geonameid).isEqualTo(281184);
+    assertThatExceptionOfType(APIStatusException.class)
+        .isThrownBy(() -> api.send(request))
+        .satisfies(exc -> assertThat(exc.statusCode()).isEqualTo(503));
+  }
+
+  @Test
+  void sending_all_requests_returns_every_response_in_the_order_of_the_requests()
+      throws IOException, InterruptedException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 64));
+    var api = new ShabbatAPI(mockHttpClient);
+    var requests =
+        List.of(
+            APIRequest.builder().forGeoId(1).build(),
+            APIRequest.builder().forGeoId(2).build(),
+            APIRequest.builder().forGeoId(3).build());
+    var executor = Executors.newCachedThreadPool();
+
+    try {
+      assertThat(api.sendAll(requests, executor)).hasSize(3).doesNotContainNull();
+    } finally {
+      executor.shutdown();
+    }
+    verify(mockHttpClient, times(3)).sendAsync(any(), any());
+  }
+
+  @Test
+  void the_first_failure_of_sending_all_requests_is_thrown_and_cancels_the_rest()
+      throws InterruptedException {
+    var mockHttpClient = mock(HttpClient.class);
+    var hanging = new CompletableFuture<HttpResponse<Object>>();
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> hanging)
+        .thenAnswer(invocation -> respond(invocation, 503, Map.of(), new byte[0], 1));
+    var api = new ShabbatAPI(mockHttpClient);
+    var requests =
+        List.of(APIRequest.builder().forGeoId(1).build(), APIRequest.builder().forGeoId(2).build());
+    var executor = Executors.newCachedThreadPool();
+
+    try {
+      assertThatExceptionOfType(APIStatusException.class)
+          .isThrownBy(() -> api.sendAll(requests, executor));
+      executor.shutdown();
+      // the waiting task is interrupted and cancels its call
+      assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(hanging).isCancelled();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void cancelling_a_guarded_call_cancels_the_http_exchange() throws InterruptedException {
+    var mockHttpClient = mock(HttpClient.class);
+    var hanging = new CompletableFuture<HttpResponse<Object>>();
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> hanging)
+        .thenAnswer(invocation -> respond(invocation, 503, Map.of(), new byte[0], 1));
+    var api =
+        ShabbatAPI.builder()
+            .withHttpClient(mockHttpClient)
+            .withResiliencePolicy(ResiliencePolicy.builder().withMaximumRetries(2).build())
+            .withCircuitBreaker(CircuitBreaker.builder().build())
+            .withRateLimiter(RateLimiter.builder().withRequestsPerSecond(100).build())
+            .withResponseCache(ResponseCache.builder().withMaximumEntries(10).build())
+            .build();
+    var requests =
+        List.of(APIRequest.builder().forGeoId(1).build(), APIRequest.builder().forGeoId(2).build());
+    var executor = Executors.newCachedThreadPool();
+
+    try {
+      assertThatExceptionOfType(APIStatusException.class)
+          .isThrownBy(() -> api.sendAll(requests, executor));
+      executor.shutdown();
+      assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(hanging).isCancelled();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void a_request_failing_with_a_server_error_is_retried_by_the_resilience_policy()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, 502, Map.of(), new byte[0], 1))
+        .thenAnswer(invocation -> respond(invocation, body, 1024));
+
+    var policy =
+        ResiliencePolicy.builder()
+            .withMaximumRetries(1)
+            .withInitialBackoff(Duration.ofMillis(1))
+            .build();
+    var api =
+        ShabbatAPI.builder().withHttpClient(mockHttpClient).withResiliencePolicy(policy).build();
+
+    var response = api.sendAsync(APIRequest.builder().forGeoId(1234).build()).get();
+
+    assertThat(response.range.get().start).isEqualTo("2021-01-01");
+    verify(mockHttpClient, times(2)).sendAsync(any(), any());
+    assertThat(policy.stats().retryCount()).isEqualTo(1);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 7, 1 << 16})
+  void a_compressed_response_body_is_inflated_as_it_is_received(final int chunkSize)
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response_rosh_chodesh.json");
+    var encodings =
+        List.of(
+            Map.entry("gzip", gzip(body, false)),
+            Map.entry("gzip", gzip(body, true)),
+            Map.entry("deflate", deflate(body, false)),
+            Map.entry("deflate", deflate(body, true)));
+    var expected = new ObjectMapper().readValue(body, APIResponse.class);
+
+    for (var encoding : encodings) {
+      var mockHttpClient = mock(HttpClient.class);
+      when(mockHttpClient.sendAsync(any(), any()))
+          .thenAnswer(
+              invocation ->
+                  respond(
+                      invocation,
+                      200,
+                      Map.of("Content-Encoding", List.of(encoding.getKey())),
+                      encoding.getValue(),
+                      chunkSize));
+      var api = ShabbatAPI.builder().withHttpClient(mockHttpClient).withCompression(true).build();
+
+      var response = api.sendAsync(APIRequest.builder().forGeoId(1234).build()).get();
+
+      assertThat(response).isEqualTo(expected);
+      assertThat(api.bytesSavedByCompression())
+          .isEqualTo(body.length - encoding.getValue().length);
+      verify(mockHttpClient)
+          .sendAsync(
+              argThat(
+                  r ->
+                      r.headers()
+                          .firstValue("Accept-Encoding")
+                          .equals(Optional.of("gzip, deflate"))),
+              any());
+    }
+  }
+
+  @Test
+  void a_corrupt_compressed_response_body_completes_the_response_with_a_ZipException()
+      throws IOException {
+    var compressed = gzip(fixture("api-responses/real_response.json"), false);
+    compressed[compressed.length - 5] ^= 1;
+    var mockHttpClient = mock(HttpClient.class);
+    var headers = Map.of("Content-Encoding", List.of("gzip"));
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, 200, headers, compressed, 64));
+
+    var api = ShabbatAPI.builder().withHttpClient(mockHttpClient).withCompression(true).build();
+
+    assertThat(api.sendAsync(APIRequest.builder().forGeoId(1234).build()))
+        .failsWithin(Duration.ofSeconds(5))
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(ZipException.class);
+  }
+
+  @Test
+  void the_listener_is_notified_on_every_phase_of_an_exchange()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 100))
+        .thenAnswer(invocation -> respond(invocation, 503, Map.of(), new byte[0], 1));
+
+    var events = new ArrayList<String>();
+    var listener =
+        new APIListener() {
+          @Override
+          public void onExchangeStart(final APIRequest request) {
+            events.add("start");
+          }
+
+          @Override
+          public void onPhase(final APIRequest request, final Phase phase, final long nanos) {
+            assertThat(nanos).isNotNegative();
+            events.add(phase.name());
+          }
+
+          @Override
+          public void onResponseBytes(final APIRequest request, final long bytes) {
+            events.add("bytes " + bytes);
+          }
+
+          @Override
+          public void onExchangeEnd(final APIRequest request, final Throwable failure) {
+            events.add("end " + (failure == null ? "ok" : failure.getClass().getSimpleName()));
+          }
+        };
+    var api = ShabbatAPI.builder().withHttpClient(mockHttpClient).withListener(listener).build();
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+
+    api.sendAsync(dummyRequest).get();
+    assertThat(events)
+        .containsExactly(
+            "start",
+            "REQUEST_BUILD",
+            "NETWORK",
+            "BODY_READ",
+            "bytes " + body.length,
+            "DESERIALIZE",
+            "end ok");
+
+    events.clear();
+    assertThat(api.sendAsync(dummyRequest)).failsWithin(Duration.ofSeconds(5));
+    assertThat(events)
+        .containsExactly("start", "REQUEST_BUILD", "NETWORK", "end APIStatusException");
+  }
+
+  @Test
+  void sending_a_request_with_a_cached_response_does_not_invoke_the_api()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1024));
+
+    // the fixture shabbat ends on 2021-01-02, the cache clock is set before it
+    var cache =
+        ResponseCache.builder()
+            .withMaximumEntries(10)
+            .withClock(Clock.fixed(Instant.parse("2021-01-01T00:00:00Z"), ZoneOffset.UTC))
+            .build();
+    var api = ShabbatAPI.builder().withHttpClient(mockHttpClient).withResponseCache(cache).build();
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+
+    var first = api.sendAsync(dummyRequest).get();
+    var second = api.sendAsync(dummyRequest).get();
+
+    assertThat(second).isSameAs(first);
+    verify(mockHttpClient, times(1)).sendAsync(any(), any());
+    assertThat(cache.stats().hitCount()).isEqualTo(1);
+    assertThat(cache.stats().missCount()).isEqualTo(1);
+  }
+
+  @Test
+  void published_responses_are_emitted_for_the_subscriber_demand()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1024));
+    var api = ShabbatAPI.builder().withHttpClient(mockHttpClient).build();
+    var requests =
+        List.of(
+            APIRequest.builder().forGeoId(281184).build(),
+            APIRequest.builder().forGeoId(293397).build(),
+            APIRequest.builder().forGeoId(294801).build());
+    var received = new CompletableFuture<List<APIResponse>>();
+
+    api.publishAll(requests, 2, true)
+        .subscribe(
+            new Flow.Subscriber<>() {
+              private final List<APIResponse> responses = new ArrayList<>();
+
+              @Override
+              public void onSubscribe(final Flow.Subscription subscription) {
+                subscription.request(3);
+              }
+
+              @Override
+              public void onNext(final APIResponse response) {
+                responses.add(response);
+              }
+
+              @Override
+              public void onError(final Throwable throwable) {
+                received.completeExceptionally(throwable);
+              }
+
+              @Override
+              public void onComplete() {
+                received.complete(responses);
+              }
+            });
+
+    assertThat(received.get()).hasSize(3);
+    verify(mockHttpClient, times(3)).sendAsync(any(), any());
+  }
+
+  @Test
+  void a_warm_up_populates_the_cache_with_the_upcoming_weeks()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1024));
+    var clock = Clock.fixed(Instant.parse("2021-01-01T00:00:00Z"), ZoneOffset.UTC);
+    var cache = ResponseCache.builder().withMaximumEntries(10).withClock(clock).build();
+    var api = ShabbatAPI.builder().withHttpClient(mockHttpClient).withResponseCache(cache).build();
+    var warmUp =
+        WarmUp.builder().forGeoIds(List.of(281184, 293397)).withHorizon(2).withClock(clock).build();
+
+    var batch = api.warmUp(warmUp).completion().get();
+
+    assertThat(batch.completedCount()).isEqualTo(warmUp.requestCount());
+    assertThat(batch.failures()).isEmpty();
+    assertThat(cache.size()).isEqualTo(4);
+    verify(mockHttpClient, times(4)).sendAsync(any(), any());
+  }
+
+  @Test
+  void responses_received_with_a_string_pool_share_their_strings_and_location()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 7));
+    var api =
+        ShabbatAPI.builder()
+            .withHttpClient(mockHttpClient)
+            .withStringPool(StringPool.builder().build())
+            .build();
+
+    var first = api.sendAsync(APIRequest.builder().forGeoId(1234).build()).get();
+    var second = api.sendAsync(APIRequest.builder().forGeoId(5678).build()).get();
+
+    assertThat(second).isEqualTo(first).isNotSameAs(first);
+    assertThat(second.location).isSameAs(first.location);
+    assertThat(second.title).isSameAs(first.title);
+    var firstItem = first.items.get().get(0);
+    var secondItem = second.items.get().get(0);
+    assertThat(secondItem.title).isSameAs(firstItem.title);
+    assertThat(secondItem.hebrew).isSameAs(firstItem.hebrew);
+  }
+
+  @Test
+  void sending_a_request_with_a_stored_response_does_not_invoke_the_api(@TempDir final Path dir)
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1024));
+
+    // the fixture shabbat ends on 2021-01-02, the store clock is set before it
+    var clock = Clock.fixed(Instant.parse("2021-01-01T00:00:00Z"), ZoneOffset.UTC);
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+    APIResponse first;
+    try (var store = ResponseStore.open(dir.resolve("responses.store"), clock)) {
+      var api =
+          ShabbatAPI.builder().withHttpClient(mockHttpClient).withResponseStore(store).build();
+      first = api.sendAsync(dummyRequest).get();
+      awaitStored(store, dummyRequest);
+    }
+
+    // a new api instance reopening the store is served from it
+    try (var store = ResponseStore.open(dir.resolve("responses.store"), clock)) {
+      var api =
+          ShabbatAPI.builder().withHttpClient(mockHttpClient).withResponseStore(store).build();
+      assertThat(api.sendAsync(dummyRequest).get()).isEqualTo(first);
+    }
+    verify(mockHttpClient, times(1)).sendAsync(any(), any());
+  }
+
+  @Test
+  void a_blocked_store_does_not_delay_the_response(@TempDir final Path dir)
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1024));
+    var clock = Clock.fixed(Instant.parse("2021-01-01T00:00:00Z"), ZoneOffset.UTC);
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+
+    try (var store = ResponseStore.open(dir.resolve("responses.store"), clock)) {
+      var api =
+          ShabbatAPI.builder().withHttpClient(mockHttpClient).withResponseStore(store).build();
+      // the store methods are synchronized, holding its monitor blocks the writer
+      synchronized (store) {
+        assertThat(api.sendAsync(dummyRequest).get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(store.size()).isZero();
+      }
+      awaitStored(store, dummyRequest);
+    }
+  }
+
+  /* the responses are stored in the background. */
+  private static void awaitStored(final ResponseStore store, final APIRequest request)
+      throws IOException, InterruptedException {
+    var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (store.get(request).isEmpty()) {
+      assertThat(System.nanoTime()).as("stored in time").isLessThan(deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  void a_stale_response_is_served_when_the_api_fails_or_the_circuit_is_open()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1024))
+        .thenAnswer(invocation -> respond(invocation, 503, Map.of(), new byte[0], 1));
+
+    var clock = new MutableClock(Instant.parse("2021-01-01T00:00:00Z"));
+    var cache =
+        ResponseCache.builder()
+            .withMaximumEntries(10)
+            .withMaximumStaleness(Duration.ofDays(7))
+            .withClock(clock)
+            .build();
+    var breaker = CircuitBreaker.builder().withFailureThreshold(1).build();
+    var api =
+        ShabbatAPI.builder()
+            .withHttpClient(mockHttpClient)
+            .withResponseCache(cache)
+            .withCircuitBreaker(breaker)
+            .build();
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+    var first = api.sendAsync(dummyRequest).get();
+
+    // the fixture shabbat ended, the api fails and opens the circuit
+    clock.now = Instant.parse("2021-01-03T00:00:00Z");
+    assertThat(api.sendAsync(dummyRequest).get()).isSameAs(first);
+    assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+    // the open circuit fails fast without calling the api
+    assertThat(api.sendAsync(dummyRequest).get()).isSameAs(first);
+    verify(mockHttpClient, times(2)).sendAsync(any(), any());
+    assertThat(cache.stats().staleHitCount()).isEqualTo(2);
+
+    // with no stale response the failure reaches the caller
+    assertThat(api.sendAsync(APIRequest.builder().forGeoId(5678).build()))
+        .failsWithin(Duration.ofSeconds(5))
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(CircuitOpenException.class);
+  }
+
+  @Test
+  void requests_are_sent_to_a_configured_endpoint()
+      throws IOException, InterruptedException, ExecutionException {
+    try (var server =
+        StubServer.builder().withFixture("api-responses/real_response.json").start()) {
+      var api = ShabbatAPI.builder().withEndpoint(server.endpoint()).build();
+      var request = APIRequest.builder().forGeoId(281184).build();
+
+      assertThat(api.uri(request).toString())
+          .isEqualTo(server.endpoint() + "?" + request.query());
+      assertThat(api.sendAsync(request).get().title).isEqualTo("Hebcal Jerusalem January 2021");
+      assertThat(server.requestCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void a_stub_server_calculates_responses_and_fails_and_throttles_requests()
+      throws IOException, InterruptedException, ExecutionException {
+    try (var server =
+        StubServer.builder()
+            .withLatency(Duration.ofMillis(5), Duration.ofMillis(5))
+            .withThrottling(0.1, 2)
+            .start()) {
+      var api = ShabbatAPI.builder().withEndpoint(server.endpoint()).build();
+      var request =
+          APIRequest.builder().forGeoId(1234).template().forDate(LocalDate.of(2021, 1, 1));
+      var response = api.sendAsync(request).get();
+
+      assertThat(response.location.geonameid).isEqualTo(1234);
+      assertThat(response.getShabbatStart().toLocalDate()).isEqualTo(LocalDate.of(2021, 1, 1));
+      assertThat(response.getShabbatEnd().toLocalDate()).isEqualTo(LocalDate.of(2021, 1, 2));
+      assertThat(api.sendAsync(request).get().getShabbatStart())
+          .isEqualTo(response.getShabbatStart());
+      assertThat(api.sendAsync(request))
+          .failsWithin(Duration.ofSeconds(5))
+          .withThrowableOfType(ExecutionException.class)
+          .withCauseInstanceOf(APIStatusException.class)
+          .withMessageContaining("429");
+      assertThat(server.throttledCount()).isEqualTo(1);
+    }
+
+    try (var server = StubServer.builder().withErrorRate(1).start()) {
+      var api = ShabbatAPI.builder().withEndpoint(server.endpoint()).build();
+      assertThat(api.sendAsync(APIRequest.builder().forGeoId(1234).build()))
+          .failsWithin(Duration.ofSeconds(5))
+          .withThrowableOfType(ExecutionException.class)
+          .withCauseInstanceOf(APIStatusException.class);
+      assertThat(server.failedCount()).isEqualTo(1);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {"/shabbat/", "ftp://localhost/shabbat/", "http://localhost/shabbat/?cfg=json"})
+  void building_with_an_invalid_endpoint_throws_an_IAE(final String endpoint) {
+    var builder = ShabbatAPI.builder();
+    var uri = URI.create(endpoint);
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> builder.withEndpoint(uri))
+        .withMessage("endpoint should be an absolute http uri without a query");
+  }
+
+  @Test
+  void calls_over_the_rate_limit_fail_fast_and_are_not_retried()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1024));
+
+    var limiter =
+        RateLimiter.builder()
+            .withRequestsPerSecond(0.1)
+            .withBurst(1)
+            .withMaximumWait(Duration.ZERO)
+            .build();
+    var api =
+        ShabbatAPI.builder()
+            .withHttpClient(mockHttpClient)
+            .withRateLimiter(limiter)
+            .withResiliencePolicy(ResiliencePolicy.builder().withMaximumRetries(3).build())
+            .build();
+
+    assertThat(api.sendAsync(APIRequest.builder().forGeoId(1234).build()).get()).isNotNull();
+    assertThat(api.sendAsync(APIRequest.builder().forGeoId(5678).build()))
+        .failsWithin(Duration.ofSeconds(5))
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(RateLimitedException.class);
+    verify(mockHttpClient, times(1)).sendAsync(any(), any());
+    assertThat(limiter.stats().rejectedCount()).isEqualTo(1);
+  }
+
+  @Test
+  void a_stale_response_is_returned_right_away_and_revalidated_once_in_the_background()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var gate = new CompletableFuture<Void>();
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(invocation -> respond(invocation, body, 1024))
+        .thenAnswer(invocation -> gate.thenCompose(v -> respond(invocation, body, 1024)));
+
+    var clock = new MutableClock(Instant.parse("2021-01-01T00:00:00Z"));
+    var cache =
+        ResponseCache.builder()
+            .withMaximumEntries(10)
+            .withMaximumStaleness(Duration.ofDays(7))
+            .withClock(clock)
+            .build();
+    var api =
+        ShabbatAPI.builder()
+            .withHttpClient(mockHttpClient)
+            .withResponseCache(cache)
+            .withStaleWhileRevalidate(true)
+            .build();
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+    var first = api.sendAsync(dummyRequest).get();
+
+    clock.now = Instant.parse("2021-01-03T00:00:00Z");
+    var second = api.sendAsync(dummyRequest);
+    var third = api.sendAsync(dummyRequest);
+
+    // both stale responses are returned while a single refresh is in flight
+    assertThat(second).isCompletedWithValue(first);
+    assertThat(third).isCompletedWithValue(first);
+    verify(mockHttpClient, times(2)).sendAsync(any(), any());
+
+    gate.complete(null);
+    api.sendAsync(dummyRequest).get();
+    verify(mockHttpClient, times(3)).sendAsync(any(), any());
+  }
+
+  @Test
+  void a_cached_response_is_revalidated_and_reused_when_not_modified()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var validators =
+        Map.of(
+            "ETag", List.of("\"v1\""),
+            "Last-Modified", List.of("Fri, 01 Jan 2021 00:00:00 GMT"));
+    var requests = new ArrayList<HttpRequest>();
+    var mockHttpClient = mock(HttpClient.class);
+    // a not modified body is never parsed
+    var notModifiedBody = "not json".getBytes(StandardCharsets.UTF_8);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              requests.add(invocation.getArgument(0));
+              return requests.size() == 1
+                  ? respond(invocation, 200, validators, body, 1024)
+                  : respond(invocation, 304, Map.of(), notModifiedBody, 1);
+            });
+
+    var clock = new MutableClock(Instant.parse("2021-01-01T00:00:00Z"));
+    var cache =
+        ResponseCache.builder()
+            .withMaximumEntries(10)
+            .withMaximumStaleness(Duration.ofDays(7))
+            .withClock(clock)
+            .build();
+    var api = ShabbatAPI.builder().withHttpClient(mockHttpClient).withResponseCache(cache).build();
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+    var first = api.sendAsync(dummyRequest).get();
+    assertThat(requests.get(0).headers().firstValue("If-None-Match")).isEmpty();
+
+    clock.now = Instant.parse("2021-01-03T00:00:00Z");
+    var second = api.sendAsync(dummyRequest).get();
+    // the not modified response is fresh for an hour, it has no max age
+    var third = api.sendAsync(dummyRequest).get();
+    assertThat(requests).hasSize(2);
+
+    clock.now = Instant.parse("2021-01-03T01:00:00Z");
+    var fourth = api.sendAsync(dummyRequest).get();
+
+    assertThat(second).isSameAs(first);
+    assertThat(third).isSameAs(first);
+    assertThat(fourth).isSameAs(first);
+    assertThat(cache.stats().hitCount()).isEqualTo(1);
+    // the validators are kept after a not modified response with no validators
+    for (var conditional : requests.subList(1, 3)) {
+      assertThat(conditional.headers().firstValue("If-None-Match")).contains("\"v1\"");
+      assertThat(conditional.headers().firstValue("If-Modified-Since"))
+          .contains("Fri, 01 Jan 2021 00:00:00 GMT");
+    }
+  }
+
+  @Test
+  void an_expired_response_is_revalidated_by_a_cache_retaining_no_stale_responses()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var requests = new ArrayList<HttpRequest>();
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              requests.add(invocation.getArgument(0));
+              return requests.size() == 1
+                  ? respond(invocation, 200, Map.of("ETag", List.of("\"v1\"")), body, 1024)
+                  : respond(invocation, 304, Map.of(), new byte[0], 1);
+            });
+
+    var clock = new MutableClock(Instant.parse("2021-01-01T00:00:00Z"));
+    var cache = ResponseCache.builder().withMaximumEntries(10).withClock(clock).build();
+    var api = ShabbatAPI.builder().withHttpClient(mockHttpClient).withResponseCache(cache).build();
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+    var first = api.sendAsync(dummyRequest).get();
+
+    clock.now = Instant.parse("2021-01-10T00:00:00Z");
+    assertThat(cache.getIfPresent(dummyRequest)).isEmpty();
+    assertThat(api.sendAsync(dummyRequest).get()).isSameAs(first);
+
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(1).headers().firstValue("If-None-Match")).contains("\"v1\"");
+  }
+
+  @Test
+  void a_stale_response_revalidated_as_not_modified_is_a_hit_for_the_max_age_of_the_reply()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+    var requests = new ArrayList<HttpRequest>();
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              requests.add(invocation.getArgument(0));
+              return requests.size() == 1
+                  ? respond(invocation, 200, Map.of("ETag", List.of("\"v1\"")), body, 1024)
+                  : respond(
+                      invocation,
+                      304,
+                      Map.of(
+                          "ETag", List.of("\"v2\""),
+                          "Cache-Control", List.of("public, max-age=600")),
+                      new byte[0],
+                      1);
+            });
+
+    var clock = new MutableClock(Instant.parse("2021-01-01T00:00:00Z"));
+    var cache =
+        ResponseCache.builder()
+            .withMaximumEntries(10)
+            .withMaximumStaleness(Duration.ofDays(7))
+            .withClock(clock)
+            .build();
+    var api =
+        ShabbatAPI.builder()
+            .withHttpClient(mockHttpClient)
+            .withResponseCache(cache)
+            .withStaleWhileRevalidate(true)
+            .build();
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+    var first = api.sendAsync(dummyRequest).get();
+
+    clock.now = Instant.parse("2021-01-03T00:00:00Z");
+    assertThat(api.sendAsync(dummyRequest).get()).isSameAs(first);
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(1).headers().firstValue("If-None-Match")).contains("\"v1\"");
+
+    // the revalidated response is a hit, no further conditional request is sent
+    clock.now = Instant.parse("2021-01-03T00:09:59Z");
+    assertThat(cache.getIfPresent(dummyRequest)).containsSame(first);
+    assertThat(api.sendAsync(dummyRequest).get()).isSameAs(first);
+    assertThat(requests).hasSize(2);
+
+    // once the max age passed, it is revalidated with the refreshed validators
+    clock.now = Instant.parse("2021-01-03T00:10:00Z");
+    api.sendAsync(dummyRequest).get();
+    assertThat(requests).hasSize(3);
+    assertThat(requests.get(2).headers().firstValue("If-None-Match")).contains("\"v2\"");
+  }
+
+  @Test
+  void building_the_api_with_stale_while_revalidate_and_no_stale_cache_throws_an_ISE() {
+    var builder =
+        ShabbatAPI.builder()
+            .withResponseCache(ResponseCache.builder().withMaximumEntries(10).build())
+            .withStaleWhileRevalidate(true);
+
+    assertThatIllegalStateException()
+        .isThrownBy(builder::build)
+        .withMessage("stale while revalidate requires a cache retaining stale responses");
+  }
+
+  @Test
+  void equal_requests_sent_while_a_call_is_in_flight_share_the_call()
+      throws IOException, InterruptedException, ExecutionException {
+    var body = fixture("api-responses/real_response.json");
+
+    // the upstream call is completed manually to keep it in flight
+    var gate = new CompletableFuture<Void>();
+    var upstreams = new ArrayList<CompletableFuture<HttpResponse<Object>>>();
+    var mockHttpClient = mock(HttpClient.class);
+    when(mockHttpClient.sendAsync(any(), any()))
+        .thenAnswer(
+            invocation -> {
+              var upstream = gate.thenCompose(v -> respond(invocation, body, 1024));
+              upstreams.add(upstream);
+              return upstream;
+            });
+
+    var api =
+        ShabbatAPI.builder().withHttpClient(mockHttpClient).withRequestCoalescing(true).build();
+    var dummyRequest = APIRequest.builder().forGeoId(1234).build();
+
+    var first = api.sendAsync(dummyRequest);
+    var second = api.sendAsync(dummyRequest);
+    verify(mockHttpClient, times(1)).sendAsync(any(), any());
+
+    // cancelling one caller does not cancel the shared call
+    first.cancel(true);
+    gate.complete(null);
+    assertThat(upstreams.get(0)).isNotCancelled();
+    assertThat(second.get().range.get().start).isEqualTo("2021-01-01");
+
+    // once completed, the next request starts a new call
+    api.sendAsync(dummyRequest).get();
+    verify(mockHttpClient, times(2)).sendAsync(any(), any());
+  }
+
+  @Test
+  void building_the_api_with_http_client_options_creates_a_tuned_client() {
+    var executor = Executors.newSingleThreadExecutor();
+    try {
+      var api =
+          ShabbatAPI.builder()
+              .withHttpVersion(HttpClient.Version.HTTP_2)
+              .withConnectTimeout(Duration.ofSeconds(3))
+              .withExecutor(executor)
+              .withRedirectPolicy(HttpClient.Redirect.NORMAL)
+              .build();
+
+      var client = api.httpClient();
+      assertThat(client.version()).isEqualTo(HttpClient.Version.HTTP_2);
+      assertThat(client.connectTimeout()).contains(Duration.ofSeconds(3));
+      assertThat(client.executor()).containsSame(executor);
+      assertThat(client.followRedirects()).isEqualTo(HttpClient.Redirect.NORMAL);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void api_instances_built_with_a_shared_http_client_use_the_same_client() {
+    var sharedClient = HttpClient.newHttpClient();
+    var sharedMapper = new ObjectMapper();
+
+    var builder = ShabbatAPI.builder().withHttpClient(sharedClient).withObjectMapper(sharedMapper);
+    var api1 = builder.build();
+    var api2 = builder.build();
+
+    assertThat(api1.httpClient()).isSameAs(sharedClient).isSameAs(api2.httpClient());
+  }
+
+  @Test
+  void building_the_api_with_a_shared_client_and_client_options_throws_an_IllegalStateException() {
+    var builder =
+        ShabbatAPI.builder()
+            .withHttpClient(HttpClient.newHttpClient())
+            .withConnectTimeout(Duration.ofSeconds(1));
+
+    assertThatIllegalStateException()
+        .isThrownBy(builder::build)
+        .withMessage("http client options can not be set for a shared client");
+  }
+
+  @Test
+  void building_the_api_with_a_non_positive_connect_timeout_throws_an_IllegalArgumentException() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> ShabbatAPI.builder().withConnectTimeout(Duration.ZERO))
+        .withMessage("connect timeout should be a positive duration");
+  }
+
+  /* gzip with the optional header fields set, or as written by GZIPOutputStream. */
+  private static byte[] gzip(final byte[] body, final boolean headerFields) throws IOException {
+    if (!headerFields) {
+      var out = new ByteArrayOutputStream();
+      try (var gzip = new GZIPOutputStream(out)) {
+        gzip.write(body);
+      }
+      return out.toByteArray();
+    }
+    var out = new ByteArrayOutputStream();
+    // magic, deflate, FHCRC | FEXTRA | FNAME | FCOMMENT, mtime, xfl, os
+    out.write(new byte[] {0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, 3});
+    out.write(new byte[] {3, 0, 'a', 'b', 'c'});
+    out.write("response.json\0a comment\0".getBytes(StandardCharsets.ISO_8859_1));
+    out.write(new byte[] {0, 0});
+    out.write(deflate(body, true));
+    var crc = new CRC32();
+    crc.update(body);
+    out.write(
+        ByteBuffer.allocate(8)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putInt((int) crc.getValue())
+            .putInt(body.length)
+            .array());
+    return out.toByteArray();
+  }
+
+  private static byte[] deflate(final byte[] body, final boolean raw) {
+    var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+    deflater.setInput(body);
+    deflater.finish();
+    var out = new ByteArrayOutputStream();
+    var chunk = new byte[1024];
+    while (!deflater.finished()) {
+      out.write(chunk, 0, deflater.deflate(chunk));
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  static byte[] fixture(final String name) throws IOException {
+    return ShabbatAPITest.class.getModule().getResourceAsStream(name).readAllBytes();
+  }
+
+  /**
+   * Answer a stubbed {@link HttpClient#sendAsync} invocation by feeding a body to the body handler
+   * it was invoked with, splitting the body into chunks the way the http client does.
+   */
+  static CompletableFuture<HttpResponse<Object>> respond(
+      final InvocationOnMock invocation, final byte[] body, final int chunkSize) {
+    return respond(invocation, 200, Map.of(), body, chunkSize);
+  }
+
+  @SuppressWarnings("unchecked")
+  static CompletableFuture<HttpResponse<Object>> respond(
+      final InvocationOnMock invocation,
+      final int status,
+      final Map<String, List<String>> headers,
+      final byte[] body,
+      final int chunkSize) {
+    var httpHeaders = HttpHeaders.of(headers, (k, v) -> true);
+    HttpResponse.BodyHandler<Object> handler = invocation.getArgument(1);
+    var subscriber =
+        handler.apply(
+            new HttpResponse.ResponseInfo() {
+              @Override
+              public int statusCode() {
+                return status;
+              }
+
+              @Override
+              public HttpHeaders headers() {
+                return httpHeaders;
+              }
+
+              @Override
+              public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+              }
+            });
+    subscriber.onSubscribe(
+        new Flow.Subscription() {
+          private int position;
+          private long demand;
+          private boolean emitting;
+          private boolean done;
+
+          @Override
+          public void request(final long n) {
+            demand += n;
+            if (emitting) {
+              return;
+            }
+            emitting = true;
+            while (demand > 0 && !done) {
+              demand--;
+              if (position >= body.length) {
+                done = true;
+                subscriber.onComplete();
+              } else {
+                var length = Math.min(chunkSize, body.length - position);
+                var chunk = ByteBuffer.wrap(body, position, length).slice();
+                position += length;
+                subscriber.onNext(List.of(chunk));
+              }
+            }
+            emitting = false;
+          }
+
+          @Override
+          public void cancel() {
+            done = true;
+          }
+        });
+    return subscriber
+        .getBody()
+        .toCompletableFuture()
+        .thenApply(
+            parsed -> {
+              HttpResponse<Object> mockHttpResponse = mock(HttpResponse.class);
+              when(mockHttpResponse.statusCode()).thenReturn(status);
+              when(mockHttpResponse.headers()).thenReturn(httpHeaders);
+              when(mockHttpResponse.body()).thenReturn(parsed);
+              return mockHttpResponse;
+            });
+  }
 }
@@ -0,0 +1,210 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.within;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ShabbatCalculatorTest {
+  private final ShabbatCalculator calculator =
+      new ShabbatCalculator(new MutableClock(Instant.parse("2021-01-01T00:00:00Z")));
+
+  @ParameterizedTest
+  @CsvSource({"real_response.json, 2021-01-01", "real_response_rosh_chodesh.json, 2022-03-04"})
+  void calculated_times_agree_with_the_fixture_responses_to_a_minute(
+      final String fixture, final LocalDate date) throws IOException {
+    var response =
+        new ObjectMapper()
+            .readValue(
+                getClass().getModule().getResourceAsStream("api-responses/" + fixture),
+                APIResponse.class);
+    // the api forces 40 candle lighting minutes for jerusalem
+    var request =
+        APIRequest.builder()
+            .forGeoId(response.location.geonameid)
+            .withMinutesBeforeSunset(40)
+            .withDate(date)
+            .build();
+
+    var calculated = calculator.calculate(request, response.location);
+
+    assertThat(calculated.getShabbatStart())
+        .isCloseTo(response.getShabbatStart(), within(1, ChronoUnit.MINUTES));
+    assertThat(calculated.getShabbatEnd())
+        .isCloseTo(response.getShabbatEnd(), within(1, ChronoUnit.MINUTES));
+    assertThat(calculated.getShabbatStart().getOffset())
+        .isEqualTo(response.getShabbatStart().getOffset());
+    assertThat(calculated.range).isEqualTo(response.range);
+    assertThat(calculated.title).isEqualTo(response.title);
+    assertThat(calculated.getShabbatParasha()).isEqualTo(response.getShabbatParasha());
+    assertThat(calculated.isRoshChodesh()).isEqualTo(response.isRoshChodesh());
+    assertThat(ShabbatTimes.of(calculated))
+        .isEqualTo(calculator.calculateTimes(request, response.location));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"real_response.json", "real_response_rosh_chodesh.json"})
+  void calendar_items_equal_the_fixture_responses_items(final String fixture)
+      throws IOException {
+    var response =
+        new ObjectMapper()
+            .readValue(
+                getClass().getModule().getResourceAsStream("api-responses/" + fixture),
+                APIResponse.class);
+    var friday = response.range.get().start;
+    var request = APIRequest.builder().forGeoId(281184).withDate(friday).build();
+
+    var calculated = calculator.calculate(request, response.location);
+
+    assertThat(calendarItems(calculated))
+        .usingRecursiveFieldByFieldElementComparatorIgnoringFields("link", "memo")
+        .containsExactlyElementsOf(calendarItems(response));
+  }
+
+  @Test
+  void a_saturday_date_calculates_its_own_shabbat_and_no_date_uses_the_clock()
+      throws IOException {
+    var location =
+        new ObjectMapper()
+            .readValue(
+                getClass().getModule().getResourceAsStream("api-responses/real_response.json"),
+                APIResponse.class)
+            .location;
+    var saturday =
+        APIRequest.builder().forGeoId(281184).withDate(LocalDate.of(2021, 1, 2)).build();
+    var sunday = APIRequest.builder().forGeoId(281184).withDate(LocalDate.of(2021, 1, 3)).build();
+    var undated = APIRequest.builder().forGeoId(281184).build();
+
+    assertThat(calculator.calculate(saturday, location).range.get().start)
+        .isEqualTo("2021-01-01");
+    assertThat(calculator.calculate(sunday, location).range.get().start)
+        .isEqualTo("2021-01-08");
+    // the clock is at 2021-01-01T02:00:00+02:00, a friday at jerusalem
+    assertThat(calculator.calculate(undated, location).range.get().start)
+        .isEqualTo("2021-01-01");
+  }
+
+  @Test
+  void a_location_where_the_sun_does_not_set_has_no_times() {
+    var location =
+        new APIResponse.Location.Builder()
+            .withCity("Longyearbyen")
+            .withCountry("Svalbard")
+            .withGeo("geoname")
+            .withGeonameid(2729907)
+            .withLatitude(78.22)
+            .withLongitude(15.64)
+            .withTitle("Longyearbyen, Svalbard")
+            .withTzid("Arctic/Longyearbyen")
+            .build();
+    var request =
+        APIRequest.builder().forGeoId(2729907).withDate(LocalDate.of(2021, 6, 18)).build();
+
+    assertThat(calculator.calculate(request, location).items.get())
+        .extracting(item -> item.category)
+        .containsExactly(APIResponse.Item.Category.PARASHAT);
+    var times = calculator.calculateTimes(request, location);
+    assertThat(times.shabbatStart()).isEmpty();
+    assertThat(times.shabbatEnd()).isEmpty();
+    assertThat(times.parasha()).contains("Parashat Chukat");
+  }
+
+  @Test
+  void a_location_without_a_time_zone_is_illegal() {
+    var location =
+        new APIResponse.Location.Builder()
+            .withCity("Jerusalem")
+            .withCountry("Israel")
+            .withGeo("geoname")
+            .withGeonameid(281184)
+            .withLatitude(31.76904)
+            .withLongitude(35.21633)
+            .withTitle("Jerusalem, Israel")
+            .build();
+    var request = APIRequest.builder().forGeoId(281184).build();
+
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> calculator.calculate(request, location))
+        .withMessage("location should have a time zone");
+  }
+
+  @Test
+  void a_positional_request_is_calculated_at_its_own_position() throws IOException {
+    var response =
+        new ObjectMapper()
+            .readValue(
+                getClass().getModule().getResourceAsStream("api-responses/real_response.json"),
+                APIResponse.class);
+    var request =
+        positional(response.location.geonameid, "31.76904", "35.21633", "Asia/Jerusalem");
+
+    var calculated = calculator.calculate(request);
+
+    assertThat(calculated.location.geo).isEqualTo("pos");
+    assertThat(calculated.location.latitude).isEqualTo(31.76904);
+    assertThat(calculated.location.longitude).isEqualTo(35.21633);
+    assertThat(calculated.location.cc).contains("IL");
+    assertThat(calculated.items).isEqualTo(calculator.calculate(request, response.location).items);
+    assertThat(calculator.calculateTimes(request))
+        .isEqualTo(calculator.calculateTimes(request, response.location));
+  }
+
+  @Test
+  void a_request_position_differing_from_the_location_is_illegal() throws IOException {
+    var location =
+        new ObjectMapper()
+            .readValue(
+                getClass().getModule().getResourceAsStream("api-responses/real_response.json"),
+                APIResponse.class)
+            .location;
+    var elsewhere = positional(location.geonameid, "40.71427", "-74.00597", "America/New_York");
+    var otherZone = positional(location.geonameid, "31.76904", "35.21633", "Asia/Amman");
+
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> calculator.calculate(elsewhere, location))
+        .withMessage("request position should match the location");
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> calculator.calculateTimes(otherZone, location))
+        .withMessage("request position should match the location");
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> calculator.calculate(APIRequest.builder().forGeoId(281184).build()))
+        .withMessage("request should have a latitude, longitude and tzid");
+  }
+
+  private static APIRequest positional(
+      final int geoId, final String latitude, final String longitude, final String tzid) {
+    return APIRequest.builder()
+        .forGeoId(geoId)
+        .withMinutesBeforeSunset(40)
+        .withDate(LocalDate.of(2021, 1, 1))
+        .addParam(APIRequest.ParamKey.GEO_TYPE)
+        .withValue(APIRequest.GeoType.POSITIONAL)
+        .addParam(APIRequest.ParamKey.LATITUDE)
+        .withValue(latitude)
+        .addParam(APIRequest.ParamKey.LONGITUDE)
+        .withValue(longitude)
+        .addParam(APIRequest.ParamKey.TZID)
+        .withValue(tzid)
+        .build();
+  }
+
+  private static List<APIResponse.Item> calendarItems(final APIResponse response) {
+    return response.items.get().stream()
+        .filter(
+            item ->
+                item.category == APIResponse.Item.Category.PARASHAT
+                    || item.category == APIResponse.Item.Category.ROSH_CHODESH)
+        .collect(Collectors.toList());
+  }
+}
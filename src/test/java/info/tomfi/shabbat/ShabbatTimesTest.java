@@ -0,0 +1,104 @@
+package info.tomfi.shabbat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.OffsetDateTime;
+import nl.jqno.equalsverifier.EqualsVerifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class ShabbatTimesTest {
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  @Test
+  void verify_equals_and_hashcode() {
+    EqualsVerifier.forClass(ShabbatTimes.class).verify();
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"real_response.json", "real_response_rosh_chodesh.json"})
+  void fixture_responses_are_projected_equal_to_the_full_responses(final String fixture)
+      throws IOException {
+    var body =
+        getClass().getModule().getResourceAsStream("api-responses/" + fixture).readAllBytes();
+    var response = new ObjectMapper().readValue(body, APIResponse.class);
+
+    var times = ResponseBodySubscriber.parse(FACTORY, new ShabbatTimesReader(), wrap(body));
+
+    assertThat(times).isEqualTo(ShabbatTimes.of(response));
+    assertThat(times.shabbatStart()).contains(response.getShabbatStart());
+    assertThat(times.shabbatEnd()).contains(response.getShabbatEnd());
+    assertThat(times.parasha()).contains(response.getShabbatParasha());
+    assertThat(times.isRoshChodesh()).isEqualTo(response.isRoshChodesh());
+  }
+
+  @Test
+  void unused_values_are_skipped_and_absent_items_are_empty() throws IOException {
+    var body =
+        "{\"title\":\"t\",\"location\":{\"items\":[{\"category\":\"candles\"}]},\"items\":["
+            + "{\"category\":\"holiday\",\"date\":\"2021-01-01\",\"extra\":{\"category\":\"x\"}},"
+            + "{\"date\":\"2021-01-01T16:06:00.5-05:30\",\"memo\":null,\"category\":\"candles\"}"
+            + "]}";
+
+    var times = ResponseBodySubscriber.parse(FACTORY, new ShabbatTimesReader(), wrap(body));
+
+    // a date time the fast path does not match is parsed by java.time
+    assertThat(times.shabbatStart())
+        .contains(OffsetDateTime.parse("2021-01-01T16:06:00.5-05:30").withNano(0));
+    assertThat(times.shabbatEnd()).isEmpty();
+    assertThat(times.parasha()).isEmpty();
+    assertThat(times.isRoshChodesh()).isFalse();
+  }
+
+  @Test
+  void fast_parsed_date_times_equal_the_java_time_parsed_ones() {
+    for (var text :
+        new String[] {
+          "2021-01-01T16:06:00+02:00",
+          "1969-12-31T23:59:59Z",
+          "2024-02-29T00:00:00-11:45",
+          "0001-03-01T12:30:15+14:00"
+        }) {
+      var chars = ("  " + text).toCharArray();
+      var expected = OffsetDateTime.parse(text);
+
+      assertThat(IsoDateTimes.epochSecond(chars, 2, text.length()))
+          .isEqualTo(expected.toEpochSecond());
+      assertThat(IsoDateTimes.offsetSeconds(chars, 2, text.length()))
+          .isEqualTo(expected.getOffset().getTotalSeconds());
+    }
+    for (var text : new String[] {"2021-02-29T16:06:00+02:00", "2021-01-01 16:06:00Z", "x"}) {
+      assertThat(IsoDateTimes.epochSecond(text.toCharArray(), 0, text.length()))
+          .isEqualTo(IsoDateTimes.UNMATCHED);
+    }
+  }
+
+  @Test
+  void an_item_without_a_date_or_a_truncated_response_fails_to_project() {
+    var undated = wrap("{\"items\":[{\"category\":\"havdalah\"}]}");
+    var truncated = wrap("{\"items\":[]");
+
+    assertThatExceptionOfType(JsonParseException.class)
+        .isThrownBy(() -> ResponseBodySubscriber.parse(FACTORY, new ShabbatTimesReader(), undated))
+        .withMessageContaining("item has no date");
+    assertThatExceptionOfType(JsonParseException.class)
+        .isThrownBy(
+            () -> ResponseBodySubscriber.parse(FACTORY, new ShabbatTimesReader(), truncated));
+  }
+
+  private static ByteBuffer wrap(final byte[] body) {
+    return ByteBuffer.wrap(body);
+  }
+
+  private static ByteBuffer wrap(final String body) {
+    return ByteBuffer.wrap(body.getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,72 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import org.junit.jupiter.api.Test;
+
+class StringPoolTest {
+  @Test
+  void equal_strings_are_interned_to_the_first_pooled_instance() {
+    var pool = StringPool.builder().build();
+    var first = new String("Candle lighting");
+    var second = new String("Candle lighting");
+
+    assertThat(pool.intern(first)).isSameAs(first);
+    assertThat(pool.intern(second)).isSameAs(first);
+    assertThat(pool.optional(second)).isSameAs(pool.optional(first)).contains(first);
+  }
+
+  @Test
+  void a_string_replaces_the_pooled_string_it_collides_with() {
+    var pool = StringPool.builder().build();
+    // equal hash codes, the strings are pooled in the same slot
+    var first = new String("Aa");
+    var colliding = new String("BB");
+    var second = new String("Aa");
+
+    pool.intern(first);
+
+    assertThat(pool.intern(colliding)).isSameAs(colliding);
+    assertThat(pool.intern(second)).isSameAs(second);
+  }
+
+  @Test
+  void equal_locations_are_shared_per_geonameid_up_to_the_maximum() {
+    var pool = StringPool.builder().withMaximumLocations(1).build();
+    var jerusalem = location(281184, "Jerusalem");
+
+    assertThat(pool.location(jerusalem)).isSameAs(jerusalem);
+    assertThat(pool.location(location(281184, "Jerusalem"))).isSameAs(jerusalem);
+
+    // a changed location replaces the pooled one, locations beyond the maximum are not pooled
+    var renamed = location(281184, "Yerushalayim");
+    assertThat(pool.location(renamed)).isSameAs(renamed);
+    assertThat(pool.location(location(281184, "Yerushalayim"))).isSameAs(renamed);
+    var telAviv = location(293397, "Tel Aviv");
+    assertThat(pool.location(telAviv)).isSameAs(telAviv);
+    assertThat(pool.location(location(293397, "Tel Aviv"))).isNotSameAs(telAviv);
+  }
+
+  @Test
+  void building_a_pool_with_illegal_arguments_throws_an_IllegalArgumentException() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> StringPool.builder().withMaximumStrings(0))
+        .withMessage("maximum strings should be a positive number");
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> StringPool.builder().withMaximumLocations(0))
+        .withMessage("maximum locations should be a positive number");
+  }
+
+  private static APIResponse.Location location(final int geonameid, final String city) {
+    return new APIResponse.Location.Builder()
+        .withTitle(city + ", Israel")
+        .withCity(city)
+        .withCountry("Israel")
+        .withGeo("geoname")
+        .withGeonameid(geonameid)
+        .withLatitude(31.76904)
+        .withLongitude(35.21633)
+        .build();
+  }
+}
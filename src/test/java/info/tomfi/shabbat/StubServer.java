@@ -0,0 +1,358 @@
+package info.tomfi.shabbat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in of the API for tests and load runs, serving on the loopback interface with the
+ * JDK http server. Every request is answered with a fixture, or by default with a response
+ * calculated by the {@link ShabbatCalculator} for the requested geonameid and date. Responses are
+ * delayed by a latency with a random jitter without blocking the server threads, a ratio of the
+ * requests is failed with a server error, and requests over a rate are throttled with a too many
+ * requests status.
+ */
+final class StubServer implements AutoCloseable {
+  private static final JsonFactory FACTORY = new JsonFactory();
+  private static final String[][] ZONES = {
+    {"Israel", "IL", "Asia/Jerusalem", "31.7", "35.2"},
+    {"United States", "US", "America/New_York", "40.7", "-74.0"},
+    {"United Kingdom", "GB", "Europe/London", "51.5", "-0.1"},
+    {"Argentina", "AR", "America/Argentina/Buenos_Aires", "-34.6", "-58.4"},
+    {"Australia", "AU", "Australia/Sydney", "-33.8", "151.2"}
+  };
+
+  private final HttpServer server;
+  private final ScheduledExecutorService scheduler;
+  private final ShabbatCalculator calculator = new ShabbatCalculator();
+  private final byte[] fixture;
+  private final long latency;
+  private final long jitter;
+  private final double errorRate;
+  private final RateLimiter throttle;
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+
+  private StubServer(final Builder builder) throws IOException {
+    this.fixture = builder.fixture;
+    this.latency = builder.latency.toNanos();
+    this.jitter = builder.jitter.toNanos();
+    this.errorRate = builder.errorRate;
+    this.throttle =
+        builder.requestsPerSecond <= 0
+            ? null
+            : RateLimiter.builder()
+                .withRequestsPerSecond(builder.requestsPerSecond)
+                .withBurst(builder.burst)
+                .withMaximumWait(Duration.ZERO)
+                .build();
+    this.scheduler = Executors.newScheduledThreadPool(builder.threads);
+    this.server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+    this.server.setExecutor(scheduler);
+    this.server.createContext("/shabbat/", this::handle);
+    this.server.start();
+  }
+
+  /**
+   * Get the endpoint to configure the API with.
+   *
+   * @return the endpoint uri.
+   */
+  URI endpoint() {
+    var address = server.getAddress();
+    return URI.create(
+        "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/shabbat/");
+  }
+
+  long requestCount() {
+    return requests.sum();
+  }
+
+  long failedCount() {
+    return failed.sum();
+  }
+
+  long throttledCount() {
+    return throttled.sum();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    scheduler.shutdownNow();
+  }
+
+  /* the exchange is answered later by the scheduler, the handler returns right away. */
+  private void handle(final HttpExchange exchange) {
+    requests.increment();
+    if (throttled()) {
+      exchange.getResponseHeaders().add("Retry-After", "1");
+      respond(exchange, 429, new byte[0]);
+      return;
+    }
+    var random = ThreadLocalRandom.current();
+    var delay = latency + (jitter > 0 ? random.nextLong(jitter + 1) : 0);
+    var error = errorRate > 0 && random.nextDouble() < errorRate;
+    scheduler.schedule(
+        () -> {
+          if (error) {
+            failed.increment();
+            respond(exchange, 500, new byte[0]);
+            return;
+          }
+          byte[] body;
+          try {
+            body = body(exchange.getRequestURI().getRawQuery());
+          } catch (final NumberFormatException | DateTimeException exc) {
+            // a malformed geonameid or date
+            respond(exchange, 400, new byte[0]);
+            return;
+          } catch (final RuntimeException exc) {
+            respond(exchange, 500, new byte[0]);
+            return;
+          }
+          exchange.getResponseHeaders().add("Content-Type", "application/json");
+          respond(exchange, 200, body);
+        },
+        delay,
+        TimeUnit.NANOSECONDS);
+  }
+
+  /* a permit is taken without waiting, a request with no permit due is throttled. */
+  private boolean throttled() {
+    if (Objects.isNull(throttle)) {
+      return false;
+    }
+    var permit = throttle.call(() -> CompletableFuture.completedFuture(true));
+    if (!permit.isCompletedExceptionally()) {
+      return false;
+    }
+    throttled.increment();
+    return true;
+  }
+
+  private byte[] body(final String query) {
+    if (Objects.nonNull(fixture)) {
+      return fixture;
+    }
+    var params = new HashMap<String, String>();
+    if (Objects.nonNull(query)) {
+      for (var param : query.split("&")) {
+        var separator = param.indexOf('=');
+        if (separator > 0) {
+          params.put(param.substring(0, separator), param.substring(separator + 1));
+        }
+      }
+    }
+    var geonameid = Integer.parseInt(params.getOrDefault("geonameid", "1"));
+    var request = APIRequest.builder().forGeoId(geonameid);
+    var date = date(params);
+    var response =
+        calculator.calculate(
+            date.isPresent() ? request.template().forDate(date.get()) : request.build(),
+            location(geonameid));
+    try {
+      return json(response);
+    } catch (final IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+  }
+
+  private static Optional<LocalDate> date(final Map<String, String> params) {
+    if (!params.containsKey("gy") || !params.containsKey("gm") || !params.containsKey("gd")) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        LocalDate.of(
+            Integer.parseInt(params.get("gy")),
+            Integer.parseInt(params.get("gm")),
+            Integer.parseInt(params.get("gd"))));
+  }
+
+  /* a synthetic location around one of the zones' cities. */
+  private static APIResponse.Location location(final int geonameid) {
+    var zone = ZONES[Math.floorMod(geonameid, ZONES.length)];
+    var city = "City " + geonameid;
+    return new APIResponse.Location.Builder()
+        .withTitle(city + ", " + zone[0])
+        .withCity(city)
+        .withCountry(zone[0])
+        .withCc(zone[1])
+        .withTzid(zone[2])
+        .withAsciiname(city)
+        .withGeo("geoname")
+        .withGeonameid(geonameid)
+        .withLatitude(Double.parseDouble(zone[3]) + Math.floorMod(geonameid, 100) / 100.0)
+        .withLongitude(Double.parseDouble(zone[4]) + Math.floorMod(geonameid, 97) / 100.0)
+        .build();
+  }
+
+  /* the response in the api's json format, optional values are omitted when empty. */
+  static byte[] json(final APIResponse response) throws IOException {
+    var out = new ByteArrayOutputStream(2048);
+    try (var generator = FACTORY.createGenerator(out)) {
+      generator.writeStartObject();
+      generator.writeStringField("title", response.title);
+      generator.writeStringField("date", response.date);
+      var location = response.location;
+      generator.writeObjectFieldStart("location");
+      generator.writeStringField("title", location.title);
+      generator.writeStringField("city", location.city);
+      optional(generator, "tzid", location.tzid);
+      generator.writeNumberField("latitude", location.latitude);
+      generator.writeNumberField("longitude", location.longitude);
+      optional(generator, "cc", location.cc);
+      generator.writeStringField("country", location.country);
+      optional(generator, "admin1", location.admin1);
+      optional(generator, "asciiname", location.asciiname);
+      generator.writeStringField("geo", location.geo);
+      generator.writeNumberField("geonameid", location.geonameid);
+      generator.writeEndObject();
+      if (response.range.isPresent()) {
+        generator.writeObjectFieldStart("range");
+        generator.writeStringField("start", response.range.get().start.toString());
+        generator.writeStringField("end", response.range.get().end.toString());
+        generator.writeEndObject();
+      }
+      if (response.items.isPresent()) {
+        generator.writeArrayFieldStart("items");
+        for (var item : response.items.get()) {
+          generator.writeStartObject();
+          generator.writeStringField("title", item.title);
+          generator.writeStringField("date", item.date);
+          generator.writeStringField("category", item.category.toString());
+          optional(generator, "subcat", item.subcat);
+          optional(generator, "title_orig", item.titleOrig);
+          optional(generator, "hebrew", item.hebrew);
+          optional(generator, "hdate", item.hdate);
+          optional(generator, "memo", item.memo);
+          optional(generator, "link", item.link);
+          if (Objects.nonNull(item.yomtov)) {
+            generator.writeBooleanField("yomtov", item.yomtov);
+          }
+          generator.writeEndObject();
+        }
+        generator.writeEndArray();
+      }
+      optional(generator, "link", response.link);
+      generator.writeEndObject();
+    }
+    return out.toByteArray();
+  }
+
+  private static void optional(
+      final JsonGenerator generator, final String name, final Optional<String> value)
+      throws IOException {
+    if (value.isPresent()) {
+      generator.writeStringField(name, value.get());
+    }
+  }
+
+  private static void respond(final HttpExchange exchange, final int status, final byte[] body) {
+    try {
+      exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+      if (body.length > 0) {
+        exchange.getResponseBody().write(body);
+      }
+    } catch (final IOException ioe) {
+      // the client went away, i.e. a cancelled call
+    } finally {
+      exchange.close();
+    }
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builder class for {@link StubServer}, calculated responses with no latency, no errors, and no
+   * throttling by default.
+   */
+  static final class Builder {
+    private byte[] fixture;
+    private Duration latency = Duration.ZERO;
+    private Duration jitter = Duration.ZERO;
+    private double errorRate;
+    private double requestsPerSecond;
+    private int burst = 1;
+    private int threads = 4;
+
+    /**
+     * Answer every request with a fixture of the test resources.
+     *
+     * @param name the fixture resource name, i.e. api-responses/real_response.json.
+     * @return the fluent builder instance.
+     * @throws IOException when failed to read the fixture.
+     */
+    Builder withFixture(final String name) throws IOException {
+      this.fixture = ShabbatAPITest.fixture(name);
+      return this;
+    }
+
+    Builder withLatency(final Duration latency, final Duration jitter) {
+      this.latency = Objects.requireNonNull(latency, "Null latency");
+      this.jitter = Objects.requireNonNull(jitter, "Null jitter");
+      return this;
+    }
+
+    /**
+     * Fail a random ratio of the requests with an internal server error status.
+     *
+     * @param errorRate the ratio of failed requests, between 0 and 1.
+     * @return the fluent builder instance.
+     */
+    Builder withErrorRate(final double errorRate) {
+      if (errorRate < 0 || errorRate > 1) {
+        throw new IllegalArgumentException("error rate should be between 0 and 1");
+      }
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    /**
+     * Throttle the requests over a rate with a too many requests status, as the API does.
+     *
+     * @param requestsPerSecond the number of requests per second served.
+     * @param burst the number of requests served right away after an idle period.
+     * @return the fluent builder instance.
+     */
+    Builder withThrottling(final double requestsPerSecond, final int burst) {
+      this.requestsPerSecond = requestsPerSecond;
+      this.burst = burst;
+      return this;
+    }
+
+    Builder withThreads(final int threads) {
+      this.threads = threads;
+      return this;
+    }
+
+    StubServer start() throws IOException {
+      return new StubServer(this);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package info.tomfi.shabbat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+
+class WarmUpTest {
+  private static Clock clockAt(final String instant) {
+    return Clock.fixed(Instant.parse(instant), ZoneOffset.UTC);
+  }
+
+  @Test
+  void requests_are_made_for_every_location_week_by_week_from_the_current_friday() {
+    var warmUp =
+        WarmUp.builder()
+            .forGeoIds(List.of(281184, 293397))
+            .forGeoIds(List.of(281184))
+            .withHorizon(2)
+            .withClock(clockAt("2020-12-30T12:00:00Z"))
+            .build();
+
+    var requests = new ArrayList<APIRequest>();
+    warmUp.requests().forEachRemaining(requests::add);
+
+    assertThat(warmUp.requestCount()).isEqualTo(4);
+    assertThat(requests)
+        .containsExactly(
+            APIRequest.builder().forGeoId(281184).withDate(LocalDate.of(2021, 1, 1)).build(),
+            APIRequest.builder().forGeoId(293397).withDate(LocalDate.of(2021, 1, 1)).build(),
+            APIRequest.builder().forGeoId(281184).withDate(LocalDate.of(2021, 1, 8)).build(),
+            APIRequest.builder().forGeoId(293397).withDate(LocalDate.of(2021, 1, 8)).build());
+  }
+
+  @Test
+  void a_warm_up_on_saturday_starts_at_the_current_shabbat() {
+    var warmUp =
+        WarmUp.builder()
+            .forGeoIds(List.of(281184))
+            .withClock(clockAt("2021-01-02T12:00:00Z"))
+            .build();
+
+    assertThat(warmUp.requests().next())
+        .isEqualTo(
+            APIRequest.builder().forGeoId(281184).withDate(LocalDate.of(2021, 1, 1)).build());
+  }
+
+  @Test
+  void templates_are_warmed_up_with_their_own_parameters() {
+    var warmUp =
+        WarmUp.builder()
+            .forGeoIds(List.of(293397))
+            .forTemplates(
+                List.of(
+                    APIRequest.builder().forGeoId(281184).withMinutesBeforeSunset(40).template()))
+            .withClock(clockAt("2020-12-30T12:00:00Z"))
+            .build();
+
+    var requests = new ArrayList<APIRequest>();
+    warmUp.requests().forEachRemaining(requests::add);
+
+    assertThat(requests)
+        .containsExactly(
+            APIRequest.builder().forGeoId(293397).withDate(LocalDate.of(2021, 1, 1)).build(),
+            APIRequest.builder()
+                .forGeoId(281184)
+                .withMinutesBeforeSunset(40)
+                .withDate(LocalDate.of(2021, 1, 1))
+                .build());
+  }
+
+  @Test
+  void the_current_week_turns_over_at_midnight_in_the_zone_of_the_locations() {
+    // saturday night in utc is already sunday in jerusalem
+    var builder =
+        WarmUp.builder().forGeoIds(List.of(281184)).withClock(clockAt("2021-01-02T22:30:00Z"));
+
+    assertThat(builder.build().requests().next())
+        .isEqualTo(
+            APIRequest.builder().forGeoId(281184).withDate(LocalDate.of(2021, 1, 1)).build());
+    assertThat(builder.withZone(ZoneId.of("Asia/Jerusalem")).build().requests().next())
+        .isEqualTo(
+            APIRequest.builder().forGeoId(281184).withDate(LocalDate.of(2021, 1, 8)).build());
+  }
+
+  @Test
+  void throttled_calls_are_launched_at_least_an_interval_apart()
+      throws InterruptedException, ExecutionException {
+    var interval = Duration.ofMillis(30);
+    var warmUp =
+        WarmUp.builder()
+            .forGeoIds(List.of(1, 2, 3, 4))
+            .withMaxInFlight(4)
+            .withLaunchInterval(interval)
+            .build();
+    var launches = Collections.synchronizedList(new ArrayList<Long>());
+
+    var start = System.nanoTime();
+    var batch =
+        BatchResponse.send(
+            warmUp.requests(),
+            warmUp.maxInFlight(),
+            warmUp.throttle(
+                request -> {
+                  launches.add(System.nanoTime());
+                  return CompletableFuture.failedFuture(new IllegalStateException("dummy"));
+                }));
+    batch.completion().get();
+
+    assertThat(launches).hasSize(4);
+    Collections.sort(launches);
+    // the launch slots are counted from when the throttle was created, after the start
+    for (var i = 0; i < 4; i++) {
+      assertThat(launches.get(i) - start).isGreaterThanOrEqualTo(interval.toNanos() * i);
+    }
+    assertThat(batch.failures()).hasSize(4);
+  }
+
+  @Test
+  void building_a_warm_up_with_illegal_arguments_throws_an_IllegalArgumentException() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> WarmUp.builder().build())
+        .withMessage("warm up should have at least one location");
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> WarmUp.builder().withHorizon(0))
+        .withMessage("horizon should be a positive number of weeks");
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> WarmUp.builder().withMaxInFlight(0))
+        .withMessage("max in flight should be a positive integer");
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> WarmUp.builder().withLaunchInterval(Duration.ZERO))
+        .withMessage("launch interval should be a positive duration");
+  }
+}